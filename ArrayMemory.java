@@ -0,0 +1,63 @@
+package main;
+
+/**
+ * Memory backed by a single array of words, covering one range of addresses,
+ * such as the stack below {@link Interpreter#STACK_TOP}.
+ */
+public class ArrayMemory implements Memory {
+    private final int[] _words;
+    private final int _base;
+
+    /**
+     * Constructor that accepts the range of addresses.
+     * 
+     * @param base The lowest address, a multiple of 4.
+     * @param size The number of bytes, a multiple of 4.
+     */
+    public ArrayMemory(int base, int size) {
+        if ((base & 3) != 0 || (size & 3) != 0 || size < 0) {
+            throw new IllegalArgumentException("The memory must be a whole number of words!");
+        }
+        _base = base;
+        _words = new int[size >>> 2];
+    }
+
+    /**
+     * Get a memory that covers the given number of bytes of stack below
+     * {@link Interpreter#STACK_TOP}.
+     * 
+     * @param size The number of bytes, a multiple of 4.
+     * @return The memory.
+     */
+    public static ArrayMemory stack(int size) {
+        return new ArrayMemory(Interpreter.STACK_TOP + 4 - size, size);
+    }
+
+    @Override
+    public int loadWord(int address) {
+        return _words[index(address)];
+    }
+
+    @Override
+    public void storeWord(int address, int value) {
+        _words[index(address)] = value;
+    }
+
+    /**
+     * Get the index of the word at an address.
+     * 
+     * @param address The address.
+     * @return The index into the words.
+     * @throws IllegalStateException When the address is not aligned or out of
+     *         range.
+     */
+    private int index(int address) {
+        int offset = address - _base;
+        // an address below the base wraps to a large unsigned offset
+        if ((offset & 3) != 0 || Integer.compareUnsigned(offset >>> 2, _words.length) >= 0) {
+            throw new IllegalStateException(
+                    String.format("No word of memory at %08x!", address));
+        }
+        return offset >>> 2;
+    }
+}
@@ -0,0 +1,394 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Assembles MIPS sources. The instruction set is immutable and shared, and all
+ * the state of a run lives in its {@link AssemblyContext}, so a single
+ * assembler can be used by any number of threads at once.
+ */
+public class Assembler {
+    private static final Logger LOGGER = Logger.getLogger(Assembler.class.getName());
+    private final InstructionSet _instructionSet;
+    private final AssemblerMetrics _metrics;
+
+    /**
+     * Default constructor, uses the MIPS instruction set.
+     */
+    public Assembler() {
+        this(InstructionSet.MIPS);
+    }
+
+    /**
+     * Constructor that accepts the instruction set to assemble with.
+     * 
+     * @param instructionSet The instruction set.
+     */
+    public Assembler(InstructionSet instructionSet) {
+        _instructionSet = instructionSet;
+        _metrics = new AssemblerMetrics(instructionSet);
+    }
+
+    /**
+     * Assemble the input file by reading it twice, once to collect the labels
+     * and once to convert the instructions.
+     * 
+     * @param inFile The file containing the MIPS instructions.
+     * @return The context holding the labels and encoded words.
+     * @throws IOException When an error occurs during reading of the file.
+     * @throws IllegalArgumentException When an instruction is not found or the
+     *         syntax is incorrect.
+     */
+    public AssemblyContext assemble(File inFile) throws IOException {
+        long start = System.nanoTime();
+        try (MappedSource source = new MappedSource(inFile)) {
+            return assemble(source, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Assemble a source held in memory, such as text sent by a client.
+     * 
+     * @param text The bytes of the source, from position 0 to the limit.
+     * @return The context holding the labels and encoded words.
+     * @throws IllegalArgumentException When an instruction is not found or the
+     *         syntax is incorrect.
+     */
+    public AssemblyContext assemble(ByteBuffer text) {
+        return assemble(new MappedSource(text), 0);
+    }
+
+    /**
+     * Assemble a source by reading it twice, once to collect the labels and
+     * once to convert the instructions.
+     * 
+     * @param source The source.
+     * @param readNanos The time it took to read the source.
+     * @return The context holding the labels and encoded words.
+     * @throws IllegalArgumentException When an instruction is not found or the
+     *         syntax is incorrect.
+     */
+    private AssemblyContext assemble(MappedSource source, long readNanos) {
+        AssemblyContext context = new AssemblyContext();
+        long start = System.nanoTime();
+        processLabels(source, context);
+        long labels = System.nanoTime();
+        // the second pass reads the same mapping again
+        source.rewind();
+        processInstructions(source, context, 0);
+        _metrics.addNanos(AssemblerMetrics.READ, readNanos);
+        _metrics.addNanos(AssemblerMetrics.LABELS, labels - start);
+        _metrics.addNanos(AssemblerMetrics.ENCODE, System.nanoTime() - labels);
+        _metrics.addJob(context);
+        return context;
+    }
+
+    /**
+     * Assemble the input file by reading it only once, back-patching forward
+     * references to labels at the end.
+     * 
+     * @param inFile The file containing the MIPS instructions.
+     * @return The context holding the labels and encoded words.
+     * @throws IOException When an error occurs during reading of the file.
+     * @throws IllegalArgumentException When an instruction is not found, the
+     *         syntax is incorrect or a label is never defined.
+     */
+    public AssemblyContext assembleSinglePass(File inFile) throws IOException {
+        AssemblyContext context = new AssemblyContext();
+        MappedSource source = null;
+        try {
+            long start = System.nanoTime();
+            source = new MappedSource(inFile);
+            long read = System.nanoTime();
+            processSinglePass(source, context);
+            // labels are collected while encoding, so it is all encoding time
+            _metrics.addNanos(AssemblerMetrics.READ, read - start);
+            _metrics.addNanos(AssemblerMetrics.ENCODE, System.nanoTime() - read);
+            _metrics.addJob(context);
+        }
+        finally {
+            if (source != null) {
+                source.close();
+            }
+        }
+        return context;
+    }
+
+    /**
+     * Get the instruction set this assembler uses.
+     * 
+     * @return The instruction set.
+     */
+    public InstructionSet getInstructionSet() {
+        return _instructionSet;
+    }
+
+    /**
+     * Get the metrics of every job run by this assembler.
+     * 
+     * @return The metrics.
+     */
+    public AssemblerMetrics getMetrics() {
+        return _metrics;
+    }
+
+    /**
+     * Read through the file line by line and store any labels in the context,
+     * along with the memory location (in decimal) assigned to the instruction.
+     * 
+     * @param source The mapped source to read labels from.
+     * @param context The context of the job.
+     * @throws IllegalArgumentException When an instruction is not found, the
+     *         syntax is incorrect or a label is defined twice.
+     */
+    void processLabels(MappedSource source, AssemblyContext context) {
+        processLabels(source, context, 0, null);
+    }
+
+    /**
+     * Lay the file out and store any labels in the context, also splitting
+     * the file into chunks that can be encoded independently. Every chunkLines
+     * lines the position and memory location of the next line are added to
+     * the boundaries. A branch whose label turns out to be out of reach is
+     * given its far form and the file is laid out again, until every branch
+     * reaches. Branches only ever get longer, so this settles.
+     * 
+     * @param source The mapped source to read labels from.
+     * @param context The context of the job.
+     * @param chunkLines The number of lines per chunk.
+     * @param boundaries The list to add the chunk boundaries to, as {position,
+     *        memory location} pairs, or null to not split the file.
+     * @throws IllegalArgumentException When an instruction is not found, the
+     *         syntax is incorrect or a label is defined twice.
+     */
+    void processLabels(MappedSource source, AssemblyContext context, int chunkLines,
+            List<int[]> boundaries) {
+        int[] far = new int[0];
+        while (true) {
+            int[] outOfReach = layout(source, context, chunkLines, boundaries, far);
+            if (outOfReach.length == 0) {
+                return;
+            }
+            LOGGER.fine(String.format("Relaxing %d branches", outOfReach.length));
+            int[] merged = Arrays.copyOf(far, far.length + outOfReach.length);
+            System.arraycopy(outOfReach, 0, merged, far.length, outOfReach.length);
+            Arrays.sort(merged);
+            far = merged;
+            context.clearLabels();
+            source.rewind();
+            if (boundaries != null) {
+                boundaries.clear();
+            }
+        }
+    }
+
+    /**
+     * Read through the file line by line, giving every instruction the
+     * address after the words of the one before it, and store any labels in
+     * the context. Lines without an instruction take no space. Only the
+     * instructions whose size depends on their operands are parsed.
+     * 
+     * @param source The mapped source to read labels from.
+     * @param context The context of the job.
+     * @param chunkLines The number of lines per chunk.
+     * @param boundaries The list to add the chunk boundaries to, or null.
+     * @param far The sorted line positions of the branches to lay out in
+     *        their far form.
+     * @return The line positions of the other branches whose label is out of
+     *         reach.
+     * @throws IllegalArgumentException When an instruction is not found, the
+     *         syntax is incorrect or a label is defined twice.
+     */
+    private int[] layout(MappedSource source, AssemblyContext context, int chunkLines,
+            List<int[]> boundaries, int[] far) {
+        OperandParser parser = context.getParser();
+        Operands ops = context.getOperands();
+        // line position, address, label start, label end and mnemonic of
+        // every branch laid out in its short form
+        int[] branches = new int[5 * 16];
+        int numOfBranches = 0;
+        int prgmCtr = 0;
+        while (true) {
+            // a chunk starts before every chunkLines lines
+            if (boundaries != null && source.getLineNumber() % chunkLines == 0) {
+                boundaries.add(new int[] { source.getNextLineStart(), prgmCtr });
+            }
+            if (!source.nextLine()) {
+                break;
+            }
+            final int lblInd = source.getLabelEnd();
+            // if the line contains a semi-colon, it has a label
+            if (lblInd > 0) {
+                // store label, without beginning or ending whitespace
+                context.defineLabel(source, source.getLineStart(), lblInd, prgmCtr);
+            }
+            final int start = source.getInstructionStart();
+            if (start < 0) {
+                continue;
+            }
+            parser.load(source, start, source.getLineEnd());
+            int mnemonic = parser.parseMnemonic(_instructionSet);
+            int[] steps = _instructionSet.getSteps(mnemonic);
+            if (_instructionSet.isVariableSize(mnemonic)) {
+                parser.parseOperands(_instructionSet.getSyntax(mnemonic), ops);
+                steps = _instructionSet.getSteps(mnemonic, ops.getSlots());
+                if (ops.hasLabel()) {
+                    if (Arrays.binarySearch(far, source.getLineStart()) >= 0) {
+                        steps = _instructionSet.getFarSteps(mnemonic);
+                    }
+                    else {
+                        if (numOfBranches * 5 == branches.length) {
+                            branches = Arrays.copyOf(branches, branches.length * 2);
+                        }
+                        int entry = numOfBranches++ * 5;
+                        branches[entry] = source.getLineStart();
+                        branches[entry + 1] = prgmCtr;
+                        // the parser window starts at the instruction
+                        branches[entry + 2] = start + ops.getLabelStart();
+                        branches[entry + 3] = start + ops.getLabelEnd();
+                        branches[entry + 4] = mnemonic;
+                    }
+                }
+            }
+            // increment program counter
+            prgmCtr += 4 * steps.length;
+        }
+        int[] outOfReach = new int[numOfBranches];
+        int numOutOfReach = 0;
+        for (int entry = 0; entry < numOfBranches * 5; entry += 5) {
+            int target = context.findLabel(source, branches[entry + 2], branches[entry + 3],
+                    branches[entry + 1]);
+            // a label that was never defined is reported by the encoder
+            if (target != SymbolTable.NOT_FOUND && !_instructionSet.reaches(
+                    _instructionSet.getSteps(branches[entry + 4]), target, branches[entry + 1])) {
+                outOfReach[numOutOfReach++] = branches[entry];
+            }
+        }
+        return Arrays.copyOf(outOfReach, numOutOfReach);
+    }
+
+    /**
+     * Select the form an instruction assembles to: the shortest one that can
+     * take its immediate, or the far form of a branch whose label is out of
+     * reach.
+     * 
+     * @param mnemonic The index of the mnemonic.
+     * @param ops The operands of the instruction.
+     * @param target The address of the label, or 0 if there is none.
+     * @param pc The address of the instruction.
+     * @return The indexes of the encoders. Do not modify.
+     * @throws IllegalArgumentException When the label is out of reach.
+     */
+    int[] selectSteps(int mnemonic, Operands ops, int target, int pc) {
+        int[] steps = _instructionSet.getSteps(mnemonic, ops.getSlots());
+        if (ops.hasLabel() && !_instructionSet.reaches(steps, target, pc)) {
+            steps = _instructionSet.getFarSteps(mnemonic);
+            if (steps == null) {
+                throw new IllegalArgumentException(
+                        String.format("The label %s is out of reach!", ops.getLabel()));
+            }
+        }
+        return steps;
+    }
+
+    /**
+     * Read through the file and process each instruction, this time ignoring
+     * labels.
+     * 
+     * @param source The mapped source to read instructions from.
+     * @param context The context of the job, holding the labels.
+     * @param startAddr The memory location of the first instruction of the
+     *        source.
+     * @throws IllegalArgumentException When an instruction is not found or the
+     *         syntax is incorrect.
+     */
+    void processInstructions(MappedSource source, AssemblyContext context, int startAddr) {
+        LOGGER.fine("Starting process instructions");
+        OperandParser parser = context.getParser();
+        Operands ops = context.getOperands();
+        int prgmCtr = startAddr;
+        // while not e.o.f
+        while (source.nextLine()) {
+            final int start = source.getInstructionStart();
+            // see if the line is a label by itself, if so continue reading
+            if (start < 0) {
+                continue;
+            }
+            parser.load(source, start, source.getLineEnd());
+            int mnemonic = parser.parseMnemonic(_instructionSet);
+            parser.parseOperands(_instructionSet.getSyntax(mnemonic), ops);
+            int target = 0;
+            if (ops.hasLabel()) {
+                // if the instruction has a jump label, retrieve the label
+                target = context.getLabelAddress(ops, prgmCtr);
+            }
+            int[] steps = selectSteps(mnemonic, ops, target, prgmCtr);
+            context.countMnemonic(mnemonic, 1, steps.length);
+            for (int step : steps) {
+                InstructionEncoder encoder = _instructionSet.getEncoder(step);
+                context.addWord(encoder.encode(ops.getSlots())
+                        | encoder.encodeTarget(target, prgmCtr), source.getLineNumber());
+                prgmCtr += 4;
+            }
+        }
+        context.setNumOfLines(source.getLineNumber());
+    }
+
+    /**
+     * Read through the file once, storing labels and converting instructions
+     * as they are read. A jump or branch to a label that has not been seen yet
+     * is encoded in its short form without the label target and recorded as a
+     * fixup, and every fixup is back-patched once the whole file has been
+     * read, so such a branch can't be relaxed to its far form.
+     * 
+     * @param source The mapped source to read instructions from.
+     * @param context The context of the job.
+     * @throws IllegalArgumentException When an instruction is not found, the
+     *         syntax is incorrect or a label is never defined or out of reach.
+     */
+    void processSinglePass(MappedSource source, AssemblyContext context) {
+        LOGGER.fine("Starting single pass");
+        OperandParser parser = context.getParser();
+        Operands ops = context.getOperands();
+        int prgmCtr = 0;
+        while (source.nextLine()) {
+            final int lblInd = source.getLabelEnd();
+            if (lblInd > 0) {
+                context.defineLabel(source, source.getLineStart(), lblInd, prgmCtr);
+            }
+            final int start = source.getInstructionStart();
+            if (start >= 0) {
+                parser.load(source, start, source.getLineEnd());
+                int mnemonic = parser.parseMnemonic(_instructionSet);
+                parser.parseOperands(_instructionSet.getSyntax(mnemonic), ops);
+                int target = ops.hasLabel() ? context.findLabel(ops, prgmCtr) : 0;
+                int[] steps = target == SymbolTable.NOT_FOUND
+                        ? _instructionSet.getSteps(mnemonic, ops.getSlots())
+                        : selectSteps(mnemonic, ops, target, prgmCtr);
+                context.countMnemonic(mnemonic, 1, steps.length);
+
+                for (int step : steps) {
+                    InstructionEncoder encoder = _instructionSet.getEncoder(step);
+                    if (target == SymbolTable.NOT_FOUND) {
+                        // forward reference, patch once the label is found
+                        int index = context.addWord(encoder.encode(ops.getSlots()),
+                                source.getLineNumber());
+                        context.addFixup(index, ops.getLabel(), prgmCtr, encoder);
+                    }
+                    else {
+                        context.addWord(encoder.encode(ops.getSlots())
+                                | encoder.encodeTarget(target, prgmCtr), source.getLineNumber());
+                    }
+                    prgmCtr += 4;
+                }
+            }
+        }
+        context.setNumOfLines(source.getLineNumber());
+        context.patchFixups();
+    }
+}
@@ -0,0 +1,107 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Simple wall-clock benchmark comparing the assembly paths of {@link Assembler} on
+ * a given source file. Each path is warmed up before it is timed so the JIT has
+ * compiled the hot loops. The bytes allocated by the benchmark thread are
+ * reported as well.
+ */
+public class AssemblerBenchmark {
+    private static final int DEFAULT_ITERATIONS = 10;
+
+    /**
+     * An assembly path to benchmark.
+     */
+    private interface AssemblyPath {
+        /**
+         * Assemble the input file into the output file.
+         * 
+         * @param inFile The source file.
+         * @param outFile The file to write the result to.
+         * @throws IOException When an error occurs during reading or writing
+         *         of a file.
+         */
+        void assemble(File inFile, File outFile) throws IOException;
+    }
+
+    /**
+     * Main method. Accepts the input file name and optionally the number of
+     * timed iterations.
+     * 
+     * @param args The command line arguments.
+     * @throws Exception When an invalid number of arguments are passed.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args.length > 2) {
+            throw new Exception(
+                    "Invalid arguments! You need to provide the input file and optionally the number of iterations");
+        }
+        File inFile = new File(args[0]);
+        int iterations = args.length == 2 ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+        File outFile = File.createTempFile("benchmark", ".txt");
+        outFile.deleteOnExit();
+        // per instruction logging would dominate the timings
+        Logger.getLogger(Assembler.class.getName()).setLevel(Level.WARNING);
+        final Assembler assembler = new Assembler();
+        final ParallelEncoder parallelEncoder = new ParallelEncoder(assembler);
+
+        // alternate the paths so neither benefits from running after the other
+        // has already warmed up the shared code
+        for (int round = 0; round < 2; round++) {
+            time("two pass", (in, out) -> assembler.assemble(in).writeHex(out), inFile, outFile,
+                    iterations);
+            time("single pass", (in, out) -> assembler.assembleSinglePass(in).writeHex(out),
+                    inFile, outFile, iterations);
+            time("parallel", (in, out) -> parallelEncoder.assemble(in).writeHex(out), inFile,
+                    outFile, iterations);
+        }
+    }
+
+    /**
+     * Warm up and time an assembly path, then print the average time and
+     * allocation per run.
+     * 
+     * @param name The name of the benchmark.
+     * @param path The assembly path.
+     * @param inFile The source file.
+     * @param outFile The file to write the result to.
+     * @param iterations The number of timed iterations.
+     * @throws IOException When an error occurs during reading or writing of a
+     *         file.
+     */
+    private static void time(String name, AssemblyPath path, File inFile, File outFile,
+            int iterations) throws IOException {
+        for (int i = 0; i < iterations; i++) {
+            path.assemble(inFile, outFile);
+        }
+        long startBytes = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            path.assemble(inFile, outFile);
+        }
+        long nanos = System.nanoTime() - start;
+        long bytes = allocatedBytes() - startBytes;
+        System.out.println(String.format("%-12s %10.3f ms/op %12d bytes/op", name,
+                nanos / 1e6 / iterations, bytes / iterations));
+    }
+
+    /**
+     * Get the number of bytes allocated by the current thread so far.
+     * 
+     * @return The allocated bytes, or 0 if the JVM doesn't track them.
+     */
+    static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
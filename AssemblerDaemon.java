@@ -0,0 +1,264 @@
+package main;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Long running assembler that serves requests on a Unix domain socket, so
+ * callers don't pay JVM startup and get the already compiled encoder. Every
+ * client gets its own thread and can send any number of requests, one after
+ * the other. A request is a single line:
+ * 
+ * <pre>
+ * ASSEMBLE path      assemble the source file at path
+ * SOURCE length      assemble the length bytes of source that follow the line
+ * METRICS            get the metrics in the Prometheus text format
+ * </pre>
+ * 
+ * The reply is either OK n followed by n lines, the 8 digit hex words or the
+ * metrics, or a single ERROR line with the diagnostic.
+ */
+public class AssemblerDaemon implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(AssemblerDaemon.class.getName());
+    private static final int MAX_SOURCE_LENGTH = 1 << 26;
+    private static final int MAX_REQUEST_LENGTH = 1 << 12;
+
+    private final Assembler _assembler;
+    private final Path _socketPath;
+    private final int _maxClients;
+    private ServerSocketChannel _server;
+
+    /**
+     * Constructor that accepts the assembler and where to listen.
+     * 
+     * @param assembler The assembler to serve requests with.
+     * @param socketPath The path of the socket file.
+     * @param maxClients The maximum number of clients served at once when
+     *        virtual threads are not available.
+     */
+    public AssemblerDaemon(Assembler assembler, Path socketPath, int maxClients) {
+        _assembler = assembler;
+        _socketPath = socketPath;
+        _maxClients = maxClients;
+    }
+
+    /**
+     * Listen on the socket and serve clients until the daemon is closed. A
+     * socket file left behind by an earlier daemon is replaced.
+     * 
+     * @throws IOException When the socket can't be bound or accepting fails.
+     */
+    public void serve() throws IOException {
+        Files.deleteIfExists(_socketPath);
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(_socketPath));
+        synchronized (this) {
+            _server = server;
+        }
+        LOGGER.info(String.format("Listening on %s", _socketPath));
+        ExecutorService executor = BatchAssembler.newExecutor(_maxClients);
+        try {
+            while (true) {
+                final SocketChannel client = server.accept();
+                executor.execute(() -> serveClient(client));
+            }
+        }
+        catch (ClosedChannelException ex) {
+            // closed, stop accepting
+        }
+        finally {
+            executor.shutdown();
+            server.close();
+            Files.deleteIfExists(_socketPath);
+        }
+    }
+
+    /**
+     * Stop accepting clients and remove the socket file. Clients that are
+     * being served finish their current request.
+     * 
+     * @throws IOException When the socket can't be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (_server != null) {
+            _server.close();
+            Files.deleteIfExists(_socketPath);
+        }
+    }
+
+    /**
+     * Serve the requests of a client until it disconnects.
+     * 
+     * @param client The client connection.
+     */
+    private void serveClient(SocketChannel client) {
+        try (SocketChannel channel = client) {
+            InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+            ImageEmitter emitter = new ImageEmitter.FixedHex();
+            String request;
+            while ((request = readLine(in)) != null) {
+                if (!handleRequest(request, in, channel, emitter)) {
+                    break;
+                }
+            }
+        }
+        catch (IOException ex) {
+            LOGGER.log(Level.WARNING, String.format("Client connection failed: %s", ex.getMessage()));
+        }
+    }
+
+    /**
+     * Handle a single request and send the reply.
+     * 
+     * @param request The request line.
+     * @param in The stream the client sends on.
+     * @param channel The client connection.
+     * @param emitter The emitter to write the words with.
+     * @return True if the connection can take more requests, false if the
+     *         request could not be read or the reply sent completely.
+     * @throws IOException When an error occurs during reading from or writing
+     *         to the client.
+     */
+    private boolean handleRequest(String request, InputStream in, SocketChannel channel,
+            ImageEmitter emitter) throws IOException {
+        AssemblyContext context;
+        try {
+            if (request.startsWith("ASSEMBLE ")) {
+                context = _assembler.assemble(new File(request.substring("ASSEMBLE ".length())));
+            }
+            else if (request.startsWith("SOURCE ")) {
+                int length = Integer.parseInt(request.substring("SOURCE ".length()).trim());
+                if (length < 0 || length > MAX_SOURCE_LENGTH) {
+                    // the body can't be skipped, so the connection is done
+                    reply(channel, String.format("ERROR Invalid source length %d!\n", length));
+                    return false;
+                }
+                context = _assembler.assemble(ByteBuffer.wrap(readFully(in, length)));
+            }
+            else if ("METRICS".equals(request)) {
+                String metrics = _assembler.getMetrics().toPrometheus();
+                int lines = 0;
+                for (int i = 0; i < metrics.length(); i++) {
+                    if (metrics.charAt(i) == '\n') {
+                        lines++;
+                    }
+                }
+                reply(channel, "OK " + lines + "\n" + metrics);
+                return true;
+            }
+            else {
+                reply(channel, String.format("ERROR Unknown request %s!\n", request));
+                return true;
+            }
+        }
+        catch (NumberFormatException ex) {
+            reply(channel, String.format("ERROR Invalid request %s!\n", request));
+            return false;
+        }
+        catch (EOFException ex) {
+            return false;
+        }
+        catch (IOException | IllegalArgumentException ex) {
+            reply(channel, "ERROR " + String.valueOf(ex.getMessage()).replace('\n', ' ') + "\n");
+            return true;
+        }
+        catch (RuntimeException ex) {
+            // a bug rather than a bad source, keep the stack trace
+            LOGGER.log(Level.SEVERE, String.format("Failed to handle %s", request), ex);
+            reply(channel, "ERROR " + String.valueOf(ex.getMessage()).replace('\n', ' ') + "\n");
+            return true;
+        }
+        reply(channel, "OK " + context.getNumOfWords() + "\n");
+        long writeStart = System.nanoTime();
+        try {
+            emitter.emit(context, channel);
+        }
+        catch (RuntimeException ex) {
+            // part of the words may be sent already, so the connection is done
+            LOGGER.log(Level.SEVERE, String.format("Failed to send the words of %s", request), ex);
+            reply(channel, "ERROR " + String.valueOf(ex.getMessage()).replace('\n', ' ') + "\n");
+            return false;
+        }
+        _assembler.getMetrics().addNanos(AssemblerMetrics.WRITE, System.nanoTime() - writeStart);
+        return true;
+    }
+
+    /**
+     * Send text to the client.
+     * 
+     * @param channel The client connection.
+     * @param text The text, which must be ASCII.
+     * @throws IOException When an error occurs during writing to the client.
+     */
+    private static void reply(SocketChannel channel, String text) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Read a request line, without the line ending.
+     * 
+     * @param in The stream the client sends on.
+     * @return The line, or null if the client disconnected.
+     * @throws IOException When an error occurs during reading or the line is
+     *         too long.
+     */
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                return line.size() == 0 ? null : line.toString(StandardCharsets.ISO_8859_1.name());
+            }
+            if (line.size() == MAX_REQUEST_LENGTH) {
+                throw new IOException("The request line is too long");
+            }
+            line.write(b);
+        }
+        String text = line.toString(StandardCharsets.ISO_8859_1.name());
+        return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+    }
+
+    /**
+     * Read an exact number of bytes.
+     * 
+     * @param in The stream the client sends on.
+     * @param length The number of bytes.
+     * @return The bytes.
+     * @throws IOException When an error occurs during reading or the client
+     *         disconnects first.
+     */
+    private static byte[] readFully(InputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int count = in.read(bytes, read, length - read);
+            if (count < 0) {
+                throw new EOFException("The client disconnected before sending the source");
+            }
+            read += count;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,224 @@
+package main;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters and timers of an {@link Assembler}, shared by all its jobs. A job
+ * counts into its own {@link AssemblyContext} and is added here once when it
+ * is done, so nothing is recorded per instruction.
+ */
+public class AssemblerMetrics implements AssemblerMetricsMBean {
+    /** Mapping the source file. */
+    public static final int READ = 0;
+    /** Collecting the labels. */
+    public static final int LABELS = 1;
+    /** Encoding the instructions. */
+    public static final int ENCODE = 2;
+    /** Writing the output file. */
+    public static final int WRITE = 3;
+    private static final String[] PHASE_NAMES = { "read", "labels", "encode", "write" };
+
+    private final InstructionSet _instructionSet;
+    private final LongAdder _files = new LongAdder();
+    private final LongAdder _lines = new LongAdder();
+    private final LongAdder _words = new LongAdder();
+    private final LongAdder[] _phaseNanos = new LongAdder[PHASE_NAMES.length];
+    private final LongAdder[] _mnemonicCounts;
+    private final LongAdder[] _mnemonicWords;
+
+    /**
+     * Constructor that accepts the instruction set whose mnemonics are
+     * counted.
+     * 
+     * @param instructionSet The instruction set.
+     */
+    public AssemblerMetrics(InstructionSet instructionSet) {
+        _instructionSet = instructionSet;
+        for (int i = 0; i < _phaseNanos.length; i++) {
+            _phaseNanos[i] = new LongAdder();
+        }
+        _mnemonicCounts = new LongAdder[instructionSet.getNumOfMnemonics()];
+        _mnemonicWords = new LongAdder[_mnemonicCounts.length];
+        for (int i = 0; i < _mnemonicCounts.length; i++) {
+            _mnemonicCounts[i] = new LongAdder();
+            _mnemonicWords[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Add the counts of a finished job.
+     * 
+     * @param context The context of the job.
+     */
+    public void addJob(AssemblyContext context) {
+        _files.increment();
+        _lines.add(context.getNumOfLines());
+        _words.add(context.getNumOfWords());
+        for (int i = 0; i < _mnemonicCounts.length; i++) {
+            int count = context.getMnemonicCount(i);
+            if (count != 0) {
+                _mnemonicCounts[i].add(count);
+                _mnemonicWords[i].add(context.getMnemonicWords(i));
+            }
+        }
+    }
+
+    /**
+     * Add time spent in a phase.
+     * 
+     * @param phase The phase, READ, LABELS, ENCODE or WRITE.
+     * @param nanos The nanoseconds spent.
+     */
+    public void addNanos(int phase, long nanos) {
+        _phaseNanos[phase].add(nanos);
+    }
+
+    /**
+     * Register the metrics with the platform MBean server.
+     * 
+     * @return The name the metrics were registered under.
+     * @throws JMException When the metrics can't be registered.
+     */
+    public ObjectName register() throws JMException {
+        ObjectName name = new ObjectName("main:type=AssemblerMetrics");
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+        return name;
+    }
+
+    @Override
+    public long getFiles() {
+        return _files.sum();
+    }
+
+    @Override
+    public long getLines() {
+        return _lines.sum();
+    }
+
+    @Override
+    public long getWords() {
+        return _words.sum();
+    }
+
+    @Override
+    public Map<String, Long> getPhaseNanos() {
+        Map<String, Long> nanos = new LinkedHashMap<>();
+        for (int i = 0; i < PHASE_NAMES.length; i++) {
+            nanos.put(PHASE_NAMES[i], _phaseNanos[i].sum());
+        }
+        return nanos;
+    }
+
+    @Override
+    public Map<String, Long> getMnemonicCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int i = 0; i < _mnemonicCounts.length; i++) {
+            counts.put(_instructionSet.getMnemonic(i), _mnemonicCounts[i].sum());
+        }
+        return counts;
+    }
+
+    @Override
+    public String toJson() {
+        StringBuilder sb = new StringBuilder("{");
+        sb.append("\"files\":").append(getFiles());
+        sb.append(",\"lines\":").append(getLines());
+        sb.append(",\"words\":").append(getWords());
+        sb.append(",\"phaseNanos\":{");
+        for (int i = 0; i < PHASE_NAMES.length; i++) {
+            sb.append(i == 0 ? "" : ",").append('"').append(PHASE_NAMES[i]).append("\":")
+                    .append(_phaseNanos[i].sum());
+        }
+        sb.append("},\"mnemonics\":{");
+        String separator = "";
+        for (int i = 0; i < _mnemonicCounts.length; i++) {
+            sb.append(separator).append('"').append(_instructionSet.getMnemonic(i)).append("\":")
+                    .append(_mnemonicCounts[i].sum());
+            separator = ",";
+        }
+        // every use of a pseudo instruction and the words it expanded to
+        sb.append("},\"pseudoExpansions\":{");
+        separator = "";
+        for (int i = 0; i < _mnemonicCounts.length; i++) {
+            if (_instructionSet.isPseudo(i)) {
+                long count = _mnemonicCounts[i].sum();
+                sb.append(separator).append('"').append(_instructionSet.getMnemonic(i))
+                        .append("\":{\"uses\":").append(count).append(",\"words\":")
+                        .append(_mnemonicWords[i].sum()).append('}');
+                separator = ",";
+            }
+        }
+        return sb.append("}}").toString();
+    }
+
+    @Override
+    public String toPrometheus() {
+        StringBuilder sb = new StringBuilder();
+        appendCounter(sb, "mips_asm_files_total", "Files assembled.").append(getFiles())
+                .append('\n');
+        appendCounter(sb, "mips_asm_lines_total", "Source lines read.").append(getLines())
+                .append('\n');
+        appendCounter(sb, "mips_asm_words_total", "Words encoded.").append(getWords())
+                .append('\n');
+        sb.append("# HELP mips_asm_phase_seconds_total Time spent in each phase.\n");
+        sb.append("# TYPE mips_asm_phase_seconds_total counter\n");
+        for (int i = 0; i < PHASE_NAMES.length; i++) {
+            sb.append("mips_asm_phase_seconds_total{phase=\"").append(PHASE_NAMES[i])
+                    .append("\"} ").append(_phaseNanos[i].sum() / 1e9).append('\n');
+        }
+        sb.append("# HELP mips_asm_instructions_total Uses of each mnemonic.\n");
+        sb.append("# TYPE mips_asm_instructions_total counter\n");
+        for (int i = 0; i < _mnemonicCounts.length; i++) {
+            sb.append("mips_asm_instructions_total{mnemonic=\"")
+                    .append(_instructionSet.getMnemonic(i)).append("\"} ")
+                    .append(_mnemonicCounts[i].sum()).append('\n');
+        }
+        sb.append("# HELP mips_asm_pseudo_words_total Words pseudo instructions expanded to.\n");
+        sb.append("# TYPE mips_asm_pseudo_words_total counter\n");
+        for (int i = 0; i < _mnemonicCounts.length; i++) {
+            if (_instructionSet.isPseudo(i)) {
+                sb.append("mips_asm_pseudo_words_total{mnemonic=\"")
+                        .append(_instructionSet.getMnemonic(i)).append("\"} ")
+                        .append(_mnemonicWords[i].sum())
+                        .append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void reset() {
+        _files.reset();
+        _lines.reset();
+        _words.reset();
+        for (LongAdder nanos : _phaseNanos) {
+            nanos.reset();
+        }
+        for (LongAdder count : _mnemonicCounts) {
+            count.reset();
+        }
+        for (LongAdder words : _mnemonicWords) {
+            words.reset();
+        }
+    }
+
+    /**
+     * Append the help and type lines of a counter without labels, followed by
+     * its name.
+     * 
+     * @param sb The text to append to.
+     * @param name The name of the counter.
+     * @param help The description of the counter.
+     * @return The text, ready for the value.
+     */
+    private static StringBuilder appendCounter(StringBuilder sb, String name, String help) {
+        return sb.append("# HELP ").append(name).append(' ').append(help).append('\n')
+                .append("# TYPE ").append(name).append(" counter\n").append(name).append(' ');
+    }
+}
@@ -0,0 +1,63 @@
+package main;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link AssemblerMetrics}, for reading the metrics
+ * over JMX.
+ */
+public interface AssemblerMetricsMBean {
+    /**
+     * Get the number of files assembled.
+     * 
+     * @return The number of files.
+     */
+    long getFiles();
+
+    /**
+     * Get the number of source lines read.
+     * 
+     * @return The number of lines.
+     */
+    long getLines();
+
+    /**
+     * Get the number of words encoded.
+     * 
+     * @return The number of words.
+     */
+    long getWords();
+
+    /**
+     * Get the nanoseconds spent in each phase, by phase name.
+     * 
+     * @return The nanoseconds of each phase.
+     */
+    Map<String, Long> getPhaseNanos();
+
+    /**
+     * Get the number of uses of each mnemonic, by mnemonic.
+     * 
+     * @return The uses of each mnemonic.
+     */
+    Map<String, Long> getMnemonicCounts();
+
+    /**
+     * Get the metrics as a JSON object.
+     * 
+     * @return The JSON text.
+     */
+    String toJson();
+
+    /**
+     * Get the metrics in the Prometheus text exposition format.
+     * 
+     * @return The Prometheus text.
+     */
+    String toPrometheus();
+
+    /**
+     * Set every metric back to 0.
+     */
+    void reset();
+}
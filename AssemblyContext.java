@@ -0,0 +1,384 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * The state of a single assembly job: the labels, the operand parser and
+ * record, the pending fixups and the encoded words. Every job gets its own
+ * context, so any number of jobs can share one {@link Assembler}.
+ */
+public class AssemblyContext {
+    private final SymbolTable _symbols;
+    private final OperandParser _parser = new OperandParser();
+    private final Operands _operands = new Operands();
+    private final FixupTable _fixups = new FixupTable();
+    private byte[] _labelBuffer = new byte[64];
+    private int[] _words = new int[256];
+    // the source line of every word, 0 if unknown
+    private int[] _lines = new int[256];
+    private int _numOfWords = 0;
+    private int _numOfLines = 0;
+    private int[] _mnemonicCounts = new int[16];
+    private int[] _mnemonicWords = new int[16];
+
+    /**
+     * Default constructor, for a new job.
+     */
+    public AssemblyContext() {
+        _symbols = new SymbolTable();
+    }
+
+    /**
+     * Constructor for encoding part of a job on another thread. The labels
+     * are shared with the job, and must not be changed while the part is
+     * encoded, while the parser, operands and words are the part's own.
+     * 
+     * @param job The context of the job.
+     */
+    public AssemblyContext(AssemblyContext job) {
+        _symbols = job._symbols;
+    }
+
+    /**
+     * Define a label.
+     * 
+     * @param label The label.
+     * @param address The address of the instruction the label marks.
+     * @throws IllegalArgumentException When the label is already defined.
+     */
+    public void defineLabel(String label, int address) {
+        _symbols.define(label, address);
+    }
+
+    /**
+     * Define a label held in a source, without building a String. Trailing
+     * whitespace before the colon is not part of the label.
+     * 
+     * @param source The source holding the label.
+     * @param start The position of the first byte of the label.
+     * @param end The position of the colon after the label.
+     * @param address The address of the instruction the label marks.
+     * @throws IllegalArgumentException When the label is already defined.
+     */
+    public void defineLabel(MappedSource source, int start, int end, int address) {
+        int length = copyLabel(source, start, end);
+        _symbols.define(_labelBuffer, 0, length, address);
+    }
+
+    /**
+     * Find the address of a label held in a source, without building a
+     * String.
+     * 
+     * @param source The source holding the label.
+     * @param start The position of the first byte of the label.
+     * @param end The position after the last byte of the label.
+     * @param address The address of the referencing instruction.
+     * @return The address of the label, or SymbolTable.NOT_FOUND if it hasn't
+     *         been defined.
+     */
+    public int findLabel(MappedSource source, int start, int end, int address) {
+        int length = copyLabel(source, start, end);
+        return _symbols.find(_labelBuffer, 0, length, address);
+    }
+
+    /**
+     * Remove every label, so the source can be laid out again.
+     */
+    public void clearLabels() {
+        _symbols.clear();
+    }
+
+    /**
+     * Find the address of the label operand of an instruction.
+     * 
+     * @param operands The operands, holding a label.
+     * @param address The address of the instruction.
+     * @return The address of the label, or SymbolTable.NOT_FOUND if it hasn't
+     *         been defined.
+     */
+    public int findLabel(Operands operands, int address) {
+        return _symbols.find(operands.getLabelWindow(), operands.getLabelStart(),
+                operands.getLabelEnd(), address);
+    }
+
+    /**
+     * Get the address of the label operand of an instruction.
+     * 
+     * @param operands The operands, holding a label.
+     * @param address The address of the instruction.
+     * @return The address of the label.
+     * @throws IllegalArgumentException When the label was never defined.
+     */
+    public int getLabelAddress(Operands operands, int address) {
+        int target = findLabel(operands, address);
+        if (target == SymbolTable.NOT_FOUND) {
+            throw new IllegalArgumentException(
+                    String.format("The label %s was never defined!", operands.getLabel()));
+        }
+        return target;
+    }
+
+    /**
+     * Get the address of a label.
+     * 
+     * @param label The label.
+     * @param address The address of the referencing instruction, which local
+     *        labels such as 1f are resolved from.
+     * @return The address of the label.
+     * @throws IllegalArgumentException When the label was never defined.
+     */
+    public int getLabelAddress(String label, int address) {
+        int target = _symbols.find(label, address);
+        if (target == SymbolTable.NOT_FOUND) {
+            throw new IllegalArgumentException(
+                    String.format("The label %s was never defined!", label));
+        }
+        return target;
+    }
+
+    /**
+     * Get the named labels and their addresses.
+     * 
+     * @return An unmodifiable copy of the labels.
+     */
+    public Map<String, Integer> getLabelMap() {
+        return Collections.unmodifiableMap(_symbols.toMap());
+    }
+
+    /**
+     * Copy a label from a source into the label buffer, without trailing
+     * whitespace.
+     * 
+     * @param source The source holding the label.
+     * @param start The position of the first byte of the label.
+     * @param end The position after the last byte of the label.
+     * @return The length of the label.
+     */
+    private int copyLabel(MappedSource source, int start, int end) {
+        while (end > start && source.byteAt(end - 1) <= ' ') {
+            end--;
+        }
+        int length = end - start;
+        if (length > _labelBuffer.length) {
+            _labelBuffer = new byte[Math.max(length, _labelBuffer.length * 2)];
+        }
+        source.getBytes(start, _labelBuffer, length);
+        return length;
+    }
+
+    /**
+     * Get the operand parser of this job.
+     * 
+     * @return The operand parser.
+     */
+    public OperandParser getParser() {
+        return _parser;
+    }
+
+    /**
+     * Get the operand record of this job.
+     * 
+     * @return The operand record.
+     */
+    public Operands getOperands() {
+        return _operands;
+    }
+
+    /**
+     * Append an encoded word.
+     * 
+     * @param word The encoded word.
+     * @return The index of the word.
+     */
+    public int addWord(int word) {
+        return addWord(word, 0);
+    }
+
+    /**
+     * Append an encoded word along with the source line it came from.
+     * 
+     * @param word The encoded word.
+     * @param line The line number, counted from 1.
+     * @return The index of the word.
+     */
+    public int addWord(int word, int line) {
+        if (_numOfWords == _words.length) {
+            _words = Arrays.copyOf(_words, _words.length * 2);
+            _lines = Arrays.copyOf(_lines, _words.length);
+        }
+        _words[_numOfWords] = word;
+        _lines[_numOfWords] = line;
+        return _numOfWords++;
+    }
+
+    /**
+     * Append the words encoded by another context, e.g. one part of a job.
+     * The lines of the part follow the lines appended so far.
+     * 
+     * @param part The context to append the words of.
+     */
+    public void addWords(AssemblyContext part) {
+        if (_numOfWords + part._numOfWords > _words.length) {
+            _words = Arrays.copyOf(_words,
+                    Math.max(_words.length * 2, _numOfWords + part._numOfWords));
+            _lines = Arrays.copyOf(_lines, _words.length);
+        }
+        System.arraycopy(part._words, 0, _words, _numOfWords, part._numOfWords);
+        for (int i = 0; i < part._numOfWords; i++) {
+            int line = part._lines[i];
+            _lines[_numOfWords + i] = line == 0 ? 0 : _numOfLines + line;
+        }
+        _numOfWords += part._numOfWords;
+        _numOfLines += part._numOfLines;
+        for (int i = 0; i < part._mnemonicCounts.length; i++) {
+            if (part._mnemonicCounts[i] != 0) {
+                countMnemonic(i, part._mnemonicCounts[i], part._mnemonicWords[i]);
+            }
+        }
+    }
+
+    /**
+     * Count the uses of a mnemonic and the words they assembled to.
+     * 
+     * @param mnemonic The index of the mnemonic.
+     * @param count The number of uses to add.
+     * @param words The number of words to add.
+     */
+    public void countMnemonic(int mnemonic, int count, int words) {
+        if (mnemonic >= _mnemonicCounts.length) {
+            int length = Math.max(_mnemonicCounts.length * 2, mnemonic + 1);
+            _mnemonicCounts = Arrays.copyOf(_mnemonicCounts, length);
+            _mnemonicWords = Arrays.copyOf(_mnemonicWords, length);
+        }
+        _mnemonicCounts[mnemonic] += count;
+        _mnemonicWords[mnemonic] += words;
+    }
+
+    /**
+     * Get the number of uses of a mnemonic.
+     * 
+     * @param mnemonic The index of the mnemonic.
+     * @return The number of uses.
+     */
+    public int getMnemonicCount(int mnemonic) {
+        return mnemonic < _mnemonicCounts.length ? _mnemonicCounts[mnemonic] : 0;
+    }
+
+    /**
+     * Get the number of words the uses of a mnemonic assembled to.
+     * 
+     * @param mnemonic The index of the mnemonic.
+     * @return The number of words.
+     */
+    public int getMnemonicWords(int mnemonic) {
+        return mnemonic < _mnemonicWords.length ? _mnemonicWords[mnemonic] : 0;
+    }
+
+    /**
+     * Record a word that references a label that has not been defined yet.
+     * 
+     * @param wordIndex The index of the word to patch.
+     * @param label The label the word references.
+     * @param address The address of the word.
+     * @param encoder The encoder of the word.
+     */
+    public void addFixup(int wordIndex, String label, int address, InstructionEncoder encoder) {
+        _fixups.add(wordIndex, label, address, encoder);
+    }
+
+    /**
+     * Back-patch every recorded fixup.
+     * 
+     * @throws IllegalArgumentException When a label was never defined or is
+     *         out of reach.
+     */
+    public void patchFixups() {
+        _fixups.patch(_words, _symbols);
+    }
+
+    /**
+     * Get the number of encoded words.
+     * 
+     * @return The number of encoded words.
+     */
+    public int getNumOfWords() {
+        return _numOfWords;
+    }
+
+    /**
+     * Get the number of source lines that were assembled.
+     * 
+     * @return The number of source lines.
+     */
+    public int getNumOfLines() {
+        return _numOfLines;
+    }
+
+    /**
+     * Set the number of source lines that were assembled.
+     * 
+     * @param numOfLines The number of source lines.
+     */
+    public void setNumOfLines(int numOfLines) {
+        _numOfLines = numOfLines;
+    }
+
+    /**
+     * Get an encoded word.
+     * 
+     * @param index The index of the word.
+     * @return The encoded word.
+     */
+    public int getWord(int index) {
+        return _words[index];
+    }
+
+    /**
+     * Get a copy of the encoded words.
+     * 
+     * @return The encoded words.
+     */
+    public int[] getWords() {
+        return Arrays.copyOf(_words, _numOfWords);
+    }
+
+    /**
+     * Get the source lines of the encoded words.
+     * 
+     * @return The line number of each word, 0 if unknown.
+     */
+    public int[] getLines() {
+        return Arrays.copyOf(_lines, _numOfWords);
+    }
+
+    /**
+     * Replace the encoded words and move the labels to match, e.g. after an
+     * optimization pass.
+     * 
+     * @param words The new encoded words.
+     * @param lines The source line of each new word.
+     * @param addresses The mapping from old to new addresses, which must keep
+     *        addresses in order.
+     */
+    public void relocate(int[] words, int[] lines, IntUnaryOperator addresses) {
+        _words = words.length == 0 ? new int[1] : words;
+        _lines = lines.length == 0 ? new int[1] : lines;
+        _numOfWords = words.length;
+        _symbols.relocate(addresses);
+    }
+
+    /**
+     * Write the encoded words to a file, one 8 digit hex word per line.
+     * 
+     * @param outFile The file to write the hex instructions to.
+     * @throws IOException When an error occurs during writing of the file.
+     */
+    public void writeHex(File outFile) throws IOException {
+        new ImageEmitter.FixedHex().emit(this, outFile);
+    }
+}
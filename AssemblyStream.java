@@ -0,0 +1,309 @@
+package main;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Assembles a source into a stream of encoded words for embedding the
+ * assembler in a test harness or simulator, without going through files. The
+ * labels are collected up front, since any instruction can jump forward, and
+ * the instructions are then encoded lazily a batch of lines at a time, as the
+ * consumer asks for them. Every iterator, stream and subscription reads the
+ * source on its own, so they can be used from different threads.
+ */
+public final class AssemblyStream {
+    /** Number of source lines encoded at a time. */
+    public static final int BATCH_LINES = 1024;
+    private static final Assembler DEFAULT_ASSEMBLER = new Assembler();
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+
+    private final Assembler _assembler;
+    private final MappedSource _source;
+    private final AssemblyContext _job = new AssemblyContext();
+    private final List<int[]> _boundaries = new ArrayList<>();
+
+    /**
+     * Constructor that collects the labels of a source and splits it into
+     * batches.
+     * 
+     * @param assembler The assembler to encode with.
+     * @param source The source.
+     * @throws IllegalArgumentException When a label is defined twice.
+     */
+    private AssemblyStream(Assembler assembler, MappedSource source) {
+        _assembler = assembler;
+        _source = source;
+        assembler.processLabels(source, _job, BATCH_LINES, _boundaries);
+        _boundaries.add(new int[] { source.getLimit(), 0 });
+    }
+
+    /**
+     * Create a stream of a source file. The file is mapped, so it is not
+     * copied.
+     * 
+     * @param assembler The assembler to encode with.
+     * @param path The source file.
+     * @return The stream.
+     * @throws IOException When an error occurs during reading of the file.
+     * @throws IllegalArgumentException When a label is defined twice.
+     */
+    public static AssemblyStream of(Assembler assembler, Path path) throws IOException {
+        // the mapping stays valid after the file is closed
+        try (MappedSource source = new MappedSource(path.toFile())) {
+            return new AssemblyStream(assembler, source);
+        }
+    }
+
+    /**
+     * Create a stream of a source file, using the MIPS instruction set.
+     * 
+     * @param path The source file.
+     * @return The stream.
+     * @throws IOException When an error occurs during reading of the file.
+     * @throws IllegalArgumentException When a label is defined twice.
+     */
+    public static AssemblyStream of(Path path) throws IOException {
+        return of(DEFAULT_ASSEMBLER, path);
+    }
+
+    /**
+     * Create a stream of source text.
+     * 
+     * @param assembler The assembler to encode with.
+     * @param text The source text.
+     * @return The stream.
+     * @throws IllegalArgumentException When a label is defined twice.
+     */
+    public static AssemblyStream of(Assembler assembler, CharSequence text) {
+        return new AssemblyStream(assembler, new MappedSource(
+                ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.ISO_8859_1))));
+    }
+
+    /**
+     * Create a stream of source text, using the MIPS instruction set.
+     * 
+     * @param text The source text.
+     * @return The stream.
+     * @throws IllegalArgumentException When a label is defined twice.
+     */
+    public static AssemblyStream of(CharSequence text) {
+        return of(DEFAULT_ASSEMBLER, text);
+    }
+
+    /**
+     * Create a stream of a source read from a channel. The channel is read
+     * to the end, but not closed.
+     * 
+     * @param assembler The assembler to encode with.
+     * @param channel The channel to read the source from.
+     * @return The stream.
+     * @throws IOException When an error occurs during reading of the channel.
+     * @throws IllegalArgumentException When a label is defined twice.
+     */
+    public static AssemblyStream of(Assembler assembler, ReadableByteChannel channel)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        while (channel.read(buffer) >= 0) {
+            if (!buffer.hasRemaining()) {
+                ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+        buffer.flip();
+        return new AssemblyStream(assembler, new MappedSource(buffer));
+    }
+
+    /**
+     * Create a stream of a source read from a channel, using the MIPS
+     * instruction set. The channel is read to the end, but not closed.
+     * 
+     * @param channel The channel to read the source from.
+     * @return The stream.
+     * @throws IOException When an error occurs during reading of the channel.
+     * @throws IllegalArgumentException When a label is defined twice.
+     */
+    public static AssemblyStream of(ReadableByteChannel channel) throws IOException {
+        return of(DEFAULT_ASSEMBLER, channel);
+    }
+
+    /**
+     * Get the labels of the source and their addresses.
+     * 
+     * @return The labels.
+     */
+    public Map<String, Integer> getLabels() {
+        return _job.getLabelMap();
+    }
+
+    /**
+     * Get an iterator over the encoded words. An error in the source is
+     * thrown by the call that reaches it.
+     * 
+     * @return The iterator.
+     */
+    public PrimitiveIterator.OfInt iterator() {
+        return new WordIterator();
+    }
+
+    /**
+     * Get a sequential stream of the encoded words. An error in the source is
+     * thrown by the operation that reaches it.
+     * 
+     * @return The stream.
+     */
+    public IntStream words() {
+        return StreamSupport.intStream(Spliterators.spliteratorUnknownSize(iterator(),
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Get a publisher of the encoded words, in batches of the words of up to
+     * BATCH_LINES lines. A batch is only encoded when the subscriber has
+     * requested it, and is delivered on the thread that requested it. An
+     * error in the source is signalled with onError.
+     * 
+     * @return The publisher.
+     */
+    public Flow.Publisher<IntBuffer> publisher() {
+        return subscriber -> subscriber.onSubscribe(new BatchSubscription(subscriber));
+    }
+
+    /**
+     * Get the number of batches the source is split into.
+     * 
+     * @return The number of batches.
+     */
+    private int getNumOfBatches() {
+        return _boundaries.size() - 1;
+    }
+
+    /**
+     * Encode a batch of lines.
+     * 
+     * @param batch The index of the batch.
+     * @return The encoded words, which may be empty.
+     * @throws IllegalArgumentException When an instruction is not found, the
+     *         syntax is incorrect or a label is never defined.
+     */
+    private IntBuffer encodeBatch(int batch) {
+        int[] first = _boundaries.get(batch);
+        AssemblyContext part = new AssemblyContext(_job);
+        _assembler.processInstructions(_source.slice(first[0], _boundaries.get(batch + 1)[0]), part,
+                first[1]);
+        return IntBuffer.wrap(part.getWords());
+    }
+
+    /**
+     * Iterator that encodes a batch whenever the previous one is used up.
+     */
+    private final class WordIterator implements PrimitiveIterator.OfInt {
+        private IntBuffer _words = IntBuffer.allocate(0);
+        private int _batch = 0;
+
+        @Override
+        public boolean hasNext() {
+            while (!_words.hasRemaining() && _batch < getNumOfBatches()) {
+                _words = encodeBatch(_batch++);
+            }
+            return _words.hasRemaining();
+        }
+
+        @Override
+        public int nextInt() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return _words.get();
+        }
+    }
+
+    /**
+     * Subscription that encodes a batch for every unit of demand. Requests
+     * made from within onNext add to the demand of the running delivery loop
+     * instead of starting another one.
+     */
+    private final class BatchSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super IntBuffer> _subscriber;
+        private final AtomicLong _demand = new AtomicLong();
+        private final AtomicInteger _pending = new AtomicInteger();
+        private volatile boolean _done = false;
+        private int _batch = 0;
+
+        /**
+         * Constructor that accepts the subscriber.
+         * 
+         * @param subscriber The subscriber.
+         */
+        BatchSubscription(Flow.Subscriber<? super IntBuffer> subscriber) {
+            _subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                _done = true;
+                _subscriber.onError(
+                        new IllegalArgumentException("The number of batches requested must be positive!"));
+                return;
+            }
+            _demand.getAndUpdate(demand -> demand + n < 0 ? Long.MAX_VALUE : demand + n);
+            deliver();
+        }
+
+        @Override
+        public void cancel() {
+            _done = true;
+        }
+
+        /**
+         * Deliver batches while there is demand, unless another call is
+         * already delivering.
+         */
+        private void deliver() {
+            if (_pending.getAndIncrement() != 0) {
+                return;
+            }
+            do {
+                while (!_done && _demand.get() > 0 && _batch < getNumOfBatches()) {
+                    IntBuffer words;
+                    try {
+                        words = encodeBatch(_batch++);
+                    }
+                    catch (IllegalArgumentException ex) {
+                        _done = true;
+                        _subscriber.onError(ex);
+                        return;
+                    }
+                    // lines without instructions don't use up demand
+                    if (words.hasRemaining()) {
+                        _demand.decrementAndGet();
+                        _subscriber.onNext(words);
+                    }
+                }
+                if (!_done && _batch == getNumOfBatches()) {
+                    _done = true;
+                    _subscriber.onComplete();
+                }
+            }
+            while (_pending.decrementAndGet() != 0);
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package main;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Assembles many sources in one JVM. Inputs can be source files, directories
+ * (searched recursively for .s and .asm files), globs such as src/**&#47;*.s,
+ * or manifests given as @file listing one input per line. Every source is
+ * assembled on its own virtual thread when the JVM has them, or on a pool of
+ * platform threads otherwise, with at most the configured number running at
+ * once.
+ */
+public class BatchAssembler {
+    private static final Logger LOGGER = Logger.getLogger(BatchAssembler.class.getName());
+
+    /**
+     * A source file to assemble, along with its path relative to the input it
+     * was found through, which is where its output goes in the output
+     * directory.
+     */
+    public static class Source {
+        private final Path _file;
+        private final Path _relative;
+
+        /**
+         * Constructor that accepts the source file and its relative path.
+         * 
+         * @param file The source file.
+         * @param relative The path relative to the input it was found through.
+         */
+        public Source(Path file, Path relative) {
+            _file = file;
+            _relative = relative;
+        }
+
+        /**
+         * Get the source file.
+         * 
+         * @return The source file.
+         */
+        public Path getFile() {
+            return _file;
+        }
+
+        /**
+         * Get the path relative to the input the source was found through.
+         * 
+         * @return The relative path.
+         */
+        public Path getRelative() {
+            return _relative;
+        }
+    }
+
+    private final Assembler _assembler;
+    private final int _maxJobs;
+    private final Path _outDir;
+    private final OutputFormat _format;
+    private final BuildCache _cache;
+    private final boolean _optimize;
+
+    /**
+     * Constructor that accepts the assembler, the concurrency cap, the output
+     * directory and the output format.
+     * 
+     * @param assembler The assembler shared by every job.
+     * @param maxJobs The maximum number of sources assembled at once.
+     * @param outDir The directory to write outputs to, or null to write each
+     *        output next to its source.
+     * @param format The format to write the outputs in.
+     */
+    public BatchAssembler(Assembler assembler, int maxJobs, Path outDir, OutputFormat format) {
+        this(assembler, maxJobs, outDir, format, null);
+    }
+
+    /**
+     * Constructor that also accepts a build cache, so sources that were
+     * assembled before are copied from the cache instead.
+     * 
+     * @param assembler The assembler shared by every job.
+     * @param maxJobs The maximum number of sources assembled at once.
+     * @param outDir The directory to write outputs to, or null to write each
+     *        output next to its source.
+     * @param format The format to write the outputs in.
+     * @param cache The build cache, or null to always assemble.
+     */
+    public BatchAssembler(Assembler assembler, int maxJobs, Path outDir, OutputFormat format,
+            BuildCache cache) {
+        this(assembler, maxJobs, outDir, format, cache, false);
+    }
+
+    /**
+     * Constructor that also accepts whether to run the optimization passes,
+     * which schedule the words and fill the delay slots of jumps and
+     * branches.
+     * 
+     * @param assembler The assembler shared by every job.
+     * @param maxJobs The maximum number of sources assembled at once.
+     * @param outDir The directory to write outputs to, or null to write each
+     *        output next to its source.
+     * @param format The format to write the outputs in.
+     * @param cache The build cache, or null to always assemble.
+     * @param optimize Whether to optimize the outputs.
+     */
+    public BatchAssembler(Assembler assembler, int maxJobs, Path outDir, OutputFormat format,
+            BuildCache cache, boolean optimize) {
+        if (maxJobs < 1) {
+            throw new IllegalArgumentException("The number of jobs must be at least 1!");
+        }
+        _assembler = assembler;
+        _maxJobs = maxJobs;
+        _outDir = outDir;
+        _format = format;
+        _cache = cache;
+        _optimize = optimize;
+    }
+
+    /**
+     * Expand the inputs into the list of sources to assemble.
+     * 
+     * @param inputs The source files, directories, globs and @manifests.
+     * @return The sources.
+     * @throws IOException When a directory or manifest can't be read.
+     */
+    public List<Source> collectSources(List<String> inputs) throws IOException {
+        List<Source> sources = new ArrayList<>();
+        for (String input : inputs) {
+            collectSources(input, null, sources);
+        }
+        return sources;
+    }
+
+    /**
+     * Expand a single input, adding its sources to the list.
+     * 
+     * @param input The source file, directory, glob or @manifest.
+     * @param baseDir The directory relative inputs are resolved against, or
+     *        null for the working directory.
+     * @param sources The list to add the sources to.
+     * @throws IOException When a directory or manifest can't be read.
+     */
+    private void collectSources(String input, Path baseDir, List<Source> sources)
+            throws IOException {
+        if (input.startsWith("@")) {
+            Path manifest = resolve(baseDir, input.substring(1));
+            Path manifestDir = manifest.toAbsolutePath().getParent();
+            for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    collectSources(line, manifestDir, sources);
+                }
+            }
+            return;
+        }
+        int globStart = indexOfGlob(input);
+        if (globStart >= 0) {
+            // walk the directory in front of the first wildcard
+            int sep = Math.max(input.lastIndexOf('/', globStart), input.lastIndexOf('\\', globStart));
+            Path root = resolve(baseDir, sep < 0 ? "." : input.substring(0, sep + 1));
+            String pattern = sep < 0 ? input : input.substring(sep + 1);
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+            for (Path file : walk(root)) {
+                Path relative = root.relativize(file);
+                if (matcher.matches(relative)) {
+                    sources.add(new Source(file, relative));
+                }
+            }
+            return;
+        }
+        Path path = resolve(baseDir, input);
+        if (Files.isDirectory(path)) {
+            for (Path file : walk(path)) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".s") || name.endsWith(".asm")) {
+                    sources.add(new Source(file, path.relativize(file)));
+                }
+            }
+        }
+        else {
+            sources.add(new Source(path, path.getFileName()));
+        }
+    }
+
+    /**
+     * Assemble every source, writing each output as it is finished. Sources
+     * that would be written to the same output fail, unless they are the same
+     * file, which is assembled once.
+     * 
+     * @param sources The sources, as returned by collectSources.
+     * @return The number of sources that failed to assemble.
+     * @throws InterruptedException When interrupted while waiting for the jobs.
+     */
+    public int assemble(List<Source> sources) throws InterruptedException {
+        final Semaphore permits = new Semaphore(_maxJobs);
+        final AtomicLong numOfLines = new AtomicLong();
+        final AtomicLong numOfWords = new AtomicLong();
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicLong cyclesSaved = new AtomicLong();
+        final AtomicLong filledSlots = new AtomicLong();
+        final AtomicLong slots = new AtomicLong();
+        long start = System.nanoTime();
+        Map<Path, Source> outputs = new HashMap<>();
+        Set<Path> clashes = new HashSet<>();
+        for (Source source : sources) {
+            Source first = outputs.putIfAbsent(normalize(getOutputPath(source)), source);
+            if (first != null && !normalize(first.getFile()).equals(normalize(source.getFile()))) {
+                clashes.add(normalize(getOutputPath(source)));
+            }
+        }
+        ExecutorService executor = newExecutor(_maxJobs);
+        try {
+            for (final Source source : sources) {
+                Path output = normalize(getOutputPath(source));
+                if (clashes.contains(output)) {
+                    // which one would be left is a race, so none is written
+                    failures.incrementAndGet();
+                    LOGGER.log(Level.SEVERE, String.format(
+                            "Failed to assemble %s: another source is also written to %s",
+                            source.getFile(), output));
+                    continue;
+                }
+                if (outputs.get(output) != source) {
+                    // the same file found through two inputs is assembled once
+                    continue;
+                }
+                executor.execute(() -> {
+                    try {
+                        permits.acquire();
+                        try {
+                            Path outFile = getOutputPath(source);
+                            if (outFile.getParent() != null) {
+                                Files.createDirectories(outFile.getParent());
+                            }
+                            String key = null;
+                            if (_cache != null) {
+                                key = _cache.key(source.getFile().toFile(), _format, _optimize);
+                                if (_cache.copyTo(key, outFile.toFile())) {
+                                    return;
+                                }
+                            }
+                            AssemblyContext context = _assembler.assemble(source.getFile().toFile());
+                            if (_optimize) {
+                                InstructionScheduler scheduler = new InstructionScheduler();
+                                scheduler.schedule(context);
+                                cyclesSaved.addAndGet(scheduler.getCyclesSaved());
+                                DelaySlotFiller filler = new DelaySlotFiller();
+                                filler.fill(context);
+                                filledSlots.addAndGet(filler.getFilled());
+                                slots.addAndGet(filler.getSlots());
+                            }
+                            long writeStart = System.nanoTime();
+                            _format.write(context, outFile.toFile());
+                            _assembler.getMetrics().addNanos(AssemblerMetrics.WRITE,
+                                    System.nanoTime() - writeStart);
+                            if (_cache != null) {
+                                _cache.publish(key, outFile.toFile());
+                            }
+                            numOfLines.addAndGet(context.getNumOfLines());
+                            numOfWords.addAndGet(context.getNumOfWords());
+                        }
+                        finally {
+                            permits.release();
+                        }
+                    }
+                    catch (IOException | IllegalArgumentException ex) {
+                        failures.incrementAndGet();
+                        LOGGER.log(Level.SEVERE, String.format("Failed to assemble %s: %s",
+                                source.getFile(), ex.getMessage()));
+                    }
+                    catch (RuntimeException ex) {
+                        // a bug rather than a bad source, keep the stack trace
+                        failures.incrementAndGet();
+                        LOGGER.log(Level.SEVERE,
+                                String.format("Failed to assemble %s", source.getFile()), ex);
+                    }
+                    catch (InterruptedException ex) {
+                        failures.incrementAndGet();
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        LOGGER.info(String.format(
+                "Assembled %d of %d files, %d lines, %d words in %.3f s (%.0f lines/s)",
+                sources.size() - failures.get(), sources.size(), numOfLines.get(),
+                numOfWords.get(), seconds, numOfLines.get() / Math.max(seconds, 1e-9)));
+        if (_optimize) {
+            LOGGER.info(String.format(
+                    "An estimated %d cycles saved by scheduling, filled %d of %d delay slots",
+                    cyclesSaved.get(), filledSlots.get(), slots.get()));
+        }
+        if (_cache != null) {
+            LOGGER.info(String.format("Build cache: %d hits, %d misses", _cache.getHits(),
+                    _cache.getMisses()));
+        }
+        return failures.get();
+    }
+
+    /**
+     * Get the path to write the output of a source to.
+     * 
+     * @param source The source.
+     * @return The output path.
+     */
+    private Path getOutputPath(Source source) {
+        Path base = _outDir == null ? source.getFile() : _outDir.resolve(source.getRelative());
+        String name = base.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            name = name.substring(0, dot);
+        }
+        return base.resolveSibling(name + _format.getExtension());
+    }
+
+    /**
+     * Make a path absolute and drop its . and .. parts, so paths to the same
+     * file compare equal.
+     * 
+     * @param path The path.
+     * @return The normalized path.
+     */
+    private static Path normalize(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Create the executor the jobs run on. A virtual thread per job is used
+     * when the JVM supports them, the semaphore in assemble caps how many run
+     * at once. Otherwise a fixed pool of platform threads is used.
+     * 
+     * @param maxJobs The maximum number of jobs run at once.
+     * @return The executor.
+     */
+    static ExecutorService newExecutor(int maxJobs) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        }
+        catch (ReflectiveOperationException ex) {
+            return Executors.newFixedThreadPool(maxJobs);
+        }
+    }
+
+    /**
+     * List the regular files under a directory.
+     * 
+     * @param root The directory.
+     * @return The files, sorted.
+     * @throws IOException When the directory can't be read.
+     */
+    private static List<Path> walk(Path root) throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            return files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Resolve an input against a base directory.
+     * 
+     * @param baseDir The base directory, or null for the working directory.
+     * @param input The input.
+     * @return The path.
+     */
+    private static Path resolve(Path baseDir, String input) {
+        return baseDir == null ? Paths.get(input) : baseDir.resolve(input);
+    }
+
+    /**
+     * Find the first glob wildcard in an input.
+     * 
+     * @param input The input.
+     * @return The position of the first wildcard, or -1 if it isn't a glob.
+     */
+    private static int indexOfGlob(String input) {
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '{') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
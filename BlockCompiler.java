@@ -0,0 +1,831 @@
+package main;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Translates basic blocks of encoded words into JVM bytecode for the tiered
+ * mode of the {@link Interpreter}. Each block becomes a hidden class with one
+ * method that reads and writes the register array directly, so HotSpot
+ * compiles it like any other hot method, with no decode or dispatch left.
+ * <p>
+ * The class files are written by hand, with no bytecode library. They are
+ * version 49, which the JVM still verifies by type inference, so no stack map
+ * frames are needed for the branches of slti, beq and bne. A word that can fail
+ * (addi, lw and sw) first stores its index in the block in a local, and a
+ * single handler copies that index to the register array before rethrowing,
+ * so the interpreter can report the address of the failing word.
+ */
+class BlockCompiler {
+    private static final Logger LOGGER = Logger.getLogger(BlockCompiler.class.getName());
+    /** Most words translated into one block. */
+    static final int MAX_WORDS = 128;
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final int CLASS_VERSION = 49;
+    private static final int MAX_STACK = 8;
+    private static final int MAX_LOCALS = 8;
+
+    // locals of the run method
+    private static final int REGS = 1;
+    private static final int MEMORY = 2;
+    private static final int FAILING = 3;
+    private static final int TARGET = 4;
+    private static final int PRODUCT = 5;
+    private static final int EXCEPTION = 7;
+
+    // the opcodes used
+    private static final int ICONST_0 = 0x03;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC_W = 0x13;
+    private static final int ILOAD = 0x15;
+    private static final int LLOAD = 0x16;
+    private static final int ALOAD = 0x19;
+    private static final int IALOAD = 0x2e;
+    private static final int ISTORE = 0x36;
+    private static final int LSTORE = 0x37;
+    private static final int ASTORE = 0x3a;
+    private static final int IASTORE = 0x4f;
+    private static final int POP = 0x57;
+    private static final int IADD = 0x60;
+    private static final int LMUL = 0x69;
+    private static final int ISHL = 0x78;
+    private static final int LUSHR = 0x7d;
+    private static final int IOR = 0x80;
+    private static final int I2L = 0x85;
+    private static final int L2I = 0x88;
+    private static final int IFEQ = 0x99;
+    private static final int IF_ICMPEQ = 0x9f;
+    private static final int IF_ICMPNE = 0xa0;
+    private static final int IF_ICMPGE = 0xa2;
+    private static final int GOTO = 0xa7;
+    private static final int IRETURN = 0xac;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int INVOKEINTERFACE = 0xb9;
+    private static final int ATHROW = 0xbf;
+
+    private final int[] _code;
+    private final boolean _delaySlots;
+    private int _compiled = 0;
+
+    /**
+     * Constructor that accepts the encoded words of the program.
+     * 
+     * @param code The encoded words, loaded at address 0.
+     * @param delaySlots Whether every jump and branch has a delay slot.
+     */
+    BlockCompiler(int[] code, boolean delaySlots) {
+        _code = code;
+        _delaySlots = delaySlots;
+    }
+
+    /**
+     * Get the number of words of the block starting at a word. A block ends
+     * after its first jump or branch, and its delay slot when there is one,
+     * or before the first word that can't be translated.
+     * 
+     * @param index The index of the first word.
+     * @return The number of words, or 0 if no block can start there.
+     */
+    int measure(int index) {
+        int end = index;
+        while (end < _code.length && end - index < MAX_WORDS && isSupported(_code[end])) {
+            end++;
+            if (InstructionWord.isControlTransfer(_code[end - 1])) {
+                if (!_delaySlots) {
+                    return end - index;
+                }
+                // the slot can't be cut off, nor be a jump or branch itself
+                if (end < _code.length && isSupported(_code[end])
+                        && !InstructionWord.isControlTransfer(_code[end])) {
+                    return end + 1 - index;
+                }
+                return 0;
+            }
+        }
+        return end - index;
+    }
+
+    /**
+     * Translate a block into a hidden class.
+     * 
+     * @param index The index of the first word.
+     * @param length The number of words, as returned by measure.
+     * @return The block, or null if the class could not be defined.
+     */
+    CompiledBlock compile(int index, int length) {
+        try {
+            byte[] bytes = writeClass(index, length);
+            Class<?> blockClass = LOOKUP.defineHiddenClass(bytes, true).lookupClass();
+            CompiledBlock block = (CompiledBlock) blockClass.getDeclaredConstructor().newInstance();
+            _compiled++;
+            LOGGER.fine(String.format("Compiled the block at %08x, %d words", index << 2, length));
+            return block;
+        }
+        catch (IOException | ReflectiveOperationException | LinkageError ex) {
+            LOGGER.log(Level.WARNING, String.format("Failed to compile the block at %08x", index << 2),
+                    ex);
+            return null;
+        }
+    }
+
+    /**
+     * Get the number of blocks translated so far.
+     * 
+     * @return The number of blocks.
+     */
+    int getCompiled() {
+        return _compiled;
+    }
+
+    /**
+     * Write the class file of a block.
+     * 
+     * @param index The index of the first word.
+     * @param length The number of words.
+     * @return The class file.
+     * @throws IOException Never, the bytes are written to memory.
+     */
+    private byte[] writeClass(int index, int length) throws IOException {
+        ConstantPool pool = new ConstantPool();
+        int thisClass = pool.classRef(String.format("main/Block_%08x", index << 2));
+        int superClass = pool.classRef("java/lang/Object");
+        int blockInterface = pool.classRef("main/CompiledBlock");
+        int initName = pool.utf8("<init>");
+        int initType = pool.utf8("()V");
+        int runName = pool.utf8("run");
+        int runType = pool.utf8("([ILmain/Memory;)I");
+        int codeName = pool.utf8("Code");
+
+        Code constructor = new Code(pool);
+        constructor.op(ALOAD, 0);
+        constructor.invoke(INVOKESPECIAL, "java/lang/Object", "<init>", "()V");
+        constructor.op(RETURN);
+        Code run = translate(pool, index, length);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xcafebabe);
+        out.writeShort(0);
+        out.writeShort(CLASS_VERSION);
+        pool.write(out);
+        // final, super
+        out.writeShort(0x0030);
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(1);
+        out.writeShort(blockInterface);
+        out.writeShort(0);
+        out.writeShort(2);
+        constructor.writeMethod(out, initName, initType, codeName);
+        run.writeMethod(out, runName, runType, codeName);
+        out.writeShort(0);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Translate the words of a block into the body of the run method.
+     * 
+     * @param pool The constant pool of the class.
+     * @param index The index of the first word.
+     * @param length The number of words.
+     * @return The code of the run method.
+     */
+    private Code translate(ConstantPool pool, int index, int length) {
+        Code code = new Code(pool);
+        code.push(0);
+        code.op(ISTORE, FAILING);
+        code.beginTry();
+        int end = index + length;
+        int link = _delaySlots ? 4 : 0;
+        for (int i = index; i < end; i++) {
+            int word = _code[i];
+            int pc = i << 2;
+            if (!InstructionWord.isControlTransfer(word)) {
+                translateWord(code, word, i - index);
+                continue;
+            }
+            int rs = InstructionWord.rs(word);
+            int rt = InstructionWord.rt(word);
+            int slot = _delaySlots ? i + 1 : -1;
+            switch (InstructionWord.opCode(word)) {
+                case InstructionWord.J:
+                    translateSlot(code, slot, index);
+                    code.push(InstructionWord.getTarget(word, pc));
+                    break;
+                case InstructionWord.JAL:
+                    code.beginStore(Interpreter.RA);
+                    code.push(pc + 4 + link);
+                    code.endStore(Interpreter.RA);
+                    translateSlot(code, slot, index);
+                    code.push(InstructionWord.getTarget(word, pc));
+                    break;
+                case InstructionWord.BEQ:
+                case InstructionWord.BNE:
+                    // 1 in the target local if the branch is taken
+                    code.load(rs);
+                    code.load(rt);
+                    int notTaken = code.jump(InstructionWord.opCode(word) == InstructionWord.BEQ
+                            ? IF_ICMPNE : IF_ICMPEQ);
+                    code.push(1);
+                    int done = code.jump(GOTO);
+                    code.land(notTaken);
+                    code.push(0);
+                    code.land(done);
+                    code.op(ISTORE, TARGET);
+                    translateSlot(code, slot, index);
+                    code.op(ILOAD, TARGET);
+                    int fallThrough = code.jump(IFEQ);
+                    code.push(InstructionWord.getTarget(word, pc));
+                    code.op(IRETURN);
+                    code.land(fallThrough);
+                    code.push(pc + 4 + link);
+                    break;
+                default:
+                    // jr and jalr, the target is read before the link is written
+                    code.load(rs);
+                    code.op(ISTORE, TARGET);
+                    if (InstructionWord.funcCode(word) == InstructionWord.FUNCT_JALR) {
+                        int rd = InstructionWord.rd(word);
+                        code.beginStore(rd);
+                        code.push(pc + 4 + link);
+                        code.endStore(rd);
+                    }
+                    translateSlot(code, slot, index);
+                    code.op(ILOAD, TARGET);
+                    break;
+            }
+            code.op(IRETURN);
+            code.endTry();
+            return code;
+        }
+        code.push(end << 2);
+        code.op(IRETURN);
+        code.endTry();
+        return code;
+    }
+
+    /**
+     * Translate the delay slot of a jump or branch, if it has one.
+     * 
+     * @param code The code of the run method.
+     * @param slot The index of the word in the slot, or -1 if there is none.
+     * @param index The index of the first word of the block.
+     */
+    private void translateSlot(Code code, int slot, int index) {
+        if (slot >= 0) {
+            translateWord(code, _code[slot], slot - index);
+        }
+    }
+
+    /**
+     * Translate a word that isn't a jump or branch.
+     * 
+     * @param code The code of the run method.
+     * @param word The encoded word.
+     * @param offset The index of the word in the block.
+     */
+    private static void translateWord(Code code, int word, int offset) {
+        int rs = InstructionWord.rs(word);
+        int rt = InstructionWord.rt(word);
+        int rd = InstructionWord.rd(word);
+        int imm = (short) word;
+        switch (InstructionWord.opCode(word)) {
+            case InstructionWord.SPECIAL:
+                switch (InstructionWord.funcCode(word)) {
+                    case 0: // sll
+                        if (rd != 0) {
+                            code.beginStore(rd);
+                            code.load(rt);
+                            code.push((word >>> 6) & 0x1f);
+                            code.op(ISHL);
+                            code.endStore(rd);
+                        }
+                        break;
+                    case InstructionWord.FUNCT_MFHI:
+                    case InstructionWord.FUNCT_MFLO:
+                        code.beginStore(rd);
+                        code.load(InstructionWord.funcCode(word) == InstructionWord.FUNCT_MFHI
+                                ? InstructionWord.HI : InstructionWord.LO);
+                        code.endStore(rd);
+                        break;
+                    default: // mult
+                        code.load(rs);
+                        code.op(I2L);
+                        code.load(rt);
+                        code.op(I2L);
+                        code.op(LMUL);
+                        code.op(LSTORE, PRODUCT);
+                        code.beginStore(InstructionWord.HI);
+                        code.op(LLOAD, PRODUCT);
+                        code.push(32);
+                        code.op(LUSHR);
+                        code.op(L2I);
+                        code.endStore(InstructionWord.HI);
+                        code.beginStore(InstructionWord.LO);
+                        code.op(LLOAD, PRODUCT);
+                        code.op(L2I);
+                        code.endStore(InstructionWord.LO);
+                        break;
+                }
+                break;
+            case InstructionWord.ADDI:
+                code.fails(offset);
+                code.beginStore(rt);
+                code.load(rs);
+                code.push(imm);
+                code.invoke(INVOKESTATIC, "java/lang/Math", "addExact", "(II)I");
+                code.endStore(rt);
+                break;
+            case InstructionWord.ADDIU:
+                if (rt != 0) {
+                    code.beginStore(rt);
+                    code.load(rs);
+                    code.push(imm);
+                    code.op(IADD);
+                    code.endStore(rt);
+                }
+                break;
+            case InstructionWord.SLTI:
+                if (rt != 0) {
+                    code.beginStore(rt);
+                    code.load(rs);
+                    code.push(imm);
+                    int notLess = code.jump(IF_ICMPGE);
+                    code.push(1);
+                    int done = code.jump(GOTO);
+                    code.land(notLess);
+                    code.push(0);
+                    code.land(done);
+                    code.endStore(rt);
+                }
+                break;
+            case InstructionWord.ORI:
+                if (rt != 0) {
+                    code.beginStore(rt);
+                    code.load(rs);
+                    code.push(word & 0xffff);
+                    code.op(IOR);
+                    code.endStore(rt);
+                }
+                break;
+            case InstructionWord.LUI:
+                if (rt != 0) {
+                    code.beginStore(rt);
+                    code.push(word << 16);
+                    code.endStore(rt);
+                }
+                break;
+            case InstructionWord.LW:
+                code.fails(offset);
+                code.beginStore(rt);
+                code.op(ALOAD, MEMORY);
+                code.load(rs);
+                code.push(imm);
+                code.op(IADD);
+                code.invoke(INVOKEINTERFACE, "main/Memory", "loadWord", "(I)I");
+                code.endStore(rt);
+                break;
+            default: // sw
+                code.fails(offset);
+                code.op(ALOAD, MEMORY);
+                code.load(rs);
+                code.push(imm);
+                code.op(IADD);
+                code.load(rt);
+                code.invoke(INVOKEINTERFACE, "main/Memory", "storeWord", "(II)V");
+                break;
+        }
+    }
+
+    /**
+     * Determine if a word can be translated, which are the words the
+     * interpreter runs.
+     * 
+     * @param word The encoded word.
+     * @return True if the word can be translated.
+     */
+    private static boolean isSupported(int word) {
+        switch (InstructionWord.opCode(word)) {
+            case InstructionWord.SPECIAL:
+                switch (InstructionWord.funcCode(word)) {
+                    case 0:
+                    case InstructionWord.FUNCT_JR:
+                    case InstructionWord.FUNCT_JALR:
+                    case InstructionWord.FUNCT_MFHI:
+                    case InstructionWord.FUNCT_MFLO:
+                    case InstructionWord.FUNCT_MULT:
+                        return true;
+                    default:
+                        return false;
+                }
+            case InstructionWord.J:
+            case InstructionWord.JAL:
+            case InstructionWord.BEQ:
+            case InstructionWord.BNE:
+            case InstructionWord.ADDI:
+            case InstructionWord.ADDIU:
+            case InstructionWord.SLTI:
+            case InstructionWord.ORI:
+            case InstructionWord.LUI:
+            case InstructionWord.LW:
+            case InstructionWord.SW:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * The constant pool of a class file being written.
+     */
+    private static class ConstantPool {
+        private final ByteArrayOutputStream _bytes = new ByteArrayOutputStream();
+        private final DataOutputStream _out = new DataOutputStream(_bytes);
+        private final Map<String, Integer> _entries = new HashMap<>();
+        private int _count = 1;
+
+        /**
+         * Get the entry of a string.
+         * 
+         * @param value The string.
+         * @return The index of the entry.
+         */
+        int utf8(String value) {
+            Integer entry = _entries.get("U" + value);
+            if (entry != null) {
+                return entry;
+            }
+            append(out -> {
+                out.writeByte(1);
+                out.writeUTF(value);
+            });
+            return add("U" + value);
+        }
+
+        /**
+         * Get the entry of a class.
+         * 
+         * @param name The internal name of the class.
+         * @return The index of the entry.
+         */
+        int classRef(String name) {
+            Integer entry = _entries.get("C" + name);
+            if (entry != null) {
+                return entry;
+            }
+            int nameEntry = utf8(name);
+            append(out -> {
+                out.writeByte(7);
+                out.writeShort(nameEntry);
+            });
+            return add("C" + name);
+        }
+
+        /**
+         * Get the entry of an int constant.
+         * 
+         * @param value The constant.
+         * @return The index of the entry.
+         */
+        int integer(int value) {
+            Integer entry = _entries.get("I" + value);
+            if (entry != null) {
+                return entry;
+            }
+            append(out -> {
+                out.writeByte(3);
+                out.writeInt(value);
+            });
+            return add("I" + value);
+        }
+
+        /**
+         * Get the entry of a method.
+         * 
+         * @param tag 10 for a method of a class, 11 for one of an interface.
+         * @param owner The internal name of the class or interface.
+         * @param name The name of the method.
+         * @param type The descriptor of the method.
+         * @return The index of the entry.
+         */
+        int memberRef(int tag, String owner, String name, String type) {
+            String key = "M" + owner + "." + name + type;
+            Integer entry = _entries.get(key);
+            if (entry != null) {
+                return entry;
+            }
+            int ownerEntry = classRef(owner);
+            int nameEntry = utf8(name);
+            int typeEntry = utf8(type);
+            append(out -> {
+                out.writeByte(12);
+                out.writeShort(nameEntry);
+                out.writeShort(typeEntry);
+            });
+            int nameAndType = _count++;
+            append(out -> {
+                out.writeByte(tag);
+                out.writeShort(ownerEntry);
+                out.writeShort(nameAndType);
+            });
+            return add(key);
+        }
+
+        /**
+         * Write the pool, preceded by its count.
+         * 
+         * @param out The class file.
+         * @throws IOException When the class file can't be written.
+         */
+        void write(DataOutputStream out) throws IOException {
+            out.writeShort(_count);
+            _bytes.writeTo(out);
+        }
+
+        /**
+         * Write an entry.
+         * 
+         * @param entry Writes the bytes of the entry.
+         */
+        private void append(EntryWriter entry) {
+            try {
+                entry.write(_out);
+            }
+            catch (IOException ex) {
+                // the bytes go to memory
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        /**
+         * Remember the entry just written.
+         * 
+         * @param key The key of the entry.
+         * @return The index of the entry.
+         */
+        private int add(String key) {
+            _entries.put(key, _count);
+            return _count++;
+        }
+    }
+
+    /**
+     * Writes the bytes of a constant pool entry.
+     */
+    private interface EntryWriter {
+        /**
+         * Write the entry.
+         * 
+         * @param out The constant pool bytes.
+         * @throws IOException When the bytes can't be written.
+         */
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * The code of a method being written, along with its exception handler.
+     */
+    private static class Code {
+        private final ConstantPool _pool;
+        private byte[] _bytes = new byte[256];
+        private int _length = 0;
+        private int _tryStart = -1;
+        private int _tryEnd = -1;
+        private boolean _fails = false;
+
+        /**
+         * Constructor that accepts the constant pool of the class.
+         * 
+         * @param pool The constant pool.
+         */
+        Code(ConstantPool pool) {
+            _pool = pool;
+        }
+
+        /**
+         * Write a byte.
+         * 
+         * @param value The byte.
+         */
+        void u1(int value) {
+            if (_length == _bytes.length) {
+                _bytes = Arrays.copyOf(_bytes, _length * 2);
+            }
+            _bytes[_length++] = (byte) value;
+        }
+
+        /**
+         * Write 2 bytes, big-endian.
+         * 
+         * @param value The value.
+         */
+        void u2(int value) {
+            u1(value >>> 8);
+            u1(value);
+        }
+
+        /**
+         * Write an opcode.
+         * 
+         * @param opCode The opcode.
+         */
+        void op(int opCode) {
+            u1(opCode);
+        }
+
+        /**
+         * Write an opcode that takes a local.
+         * 
+         * @param opCode The opcode.
+         * @param local The index of the local.
+         */
+        void op(int opCode, int local) {
+            u1(opCode);
+            u1(local);
+        }
+
+        /**
+         * Call a method. Only int arguments are counted, which is all the
+         * methods called take.
+         * 
+         * @param opCode The invoke opcode.
+         * @param owner The internal name of the class or interface.
+         * @param name The name of the method.
+         * @param type The descriptor of the method.
+         */
+        void invoke(int opCode, String owner, String name, String type) {
+            u1(opCode);
+            u2(_pool.memberRef(opCode == INVOKEINTERFACE ? 11 : 10, owner, name, type));
+            if (opCode == INVOKEINTERFACE) {
+                // the receiver and the int arguments, one per letter
+                u1(type.indexOf(')'));
+                u1(0);
+            }
+        }
+
+        /**
+         * Push an int constant.
+         * 
+         * @param value The constant.
+         */
+        void push(int value) {
+            if (value >= -1 && value <= 5) {
+                u1(ICONST_0 + value);
+            }
+            else if (value == (byte) value) {
+                u1(BIPUSH);
+                u1(value);
+            }
+            else if (value == (short) value) {
+                u1(SIPUSH);
+                u2(value);
+            }
+            else {
+                u1(LDC_W);
+                u2(_pool.integer(value));
+            }
+        }
+
+        /**
+         * Push the value of a register, or of HI or LO. $zero is always 0.
+         * 
+         * @param reg The register number.
+         */
+        void load(int reg) {
+            if (reg == 0) {
+                push(0);
+                return;
+            }
+            op(ALOAD, REGS);
+            push(reg);
+            u1(IALOAD);
+        }
+
+        /**
+         * Start writing a register, the value is pushed next. A write to
+         * $zero is dropped.
+         * 
+         * @param reg The register number.
+         */
+        void beginStore(int reg) {
+            if (reg != 0) {
+                op(ALOAD, REGS);
+                push(reg);
+            }
+        }
+
+        /**
+         * Finish writing a register.
+         * 
+         * @param reg The register number.
+         */
+        void endStore(int reg) {
+            u1(reg != 0 ? IASTORE : POP);
+        }
+
+        /**
+         * Note that the next word can fail, so the handler knows which one
+         * did.
+         * 
+         * @param offset The index of the word in the block.
+         */
+        void fails(int offset) {
+            push(offset);
+            op(ISTORE, FAILING);
+            _fails = true;
+        }
+
+        /**
+         * Write a forward jump, to be landed later.
+         * 
+         * @param opCode The jump or compare and branch opcode.
+         * @return The position of the jump.
+         */
+        int jump(int opCode) {
+            int at = _length;
+            u1(opCode);
+            u2(0);
+            return at;
+        }
+
+        /**
+         * Make an earlier forward jump land here.
+         * 
+         * @param at The position of the jump.
+         */
+        void land(int at) {
+            int offset = _length - at;
+            _bytes[at + 1] = (byte) (offset >>> 8);
+            _bytes[at + 2] = (byte) offset;
+        }
+
+        /**
+         * Start the code the handler covers.
+         */
+        void beginTry() {
+            _tryStart = _length;
+        }
+
+        /**
+         * End the code the handler covers, and write the handler if any word
+         * can fail: it leaves the index of the failing word after the
+         * registers and rethrows.
+         */
+        void endTry() {
+            if (!_fails || _tryEnd >= 0) {
+                return;
+            }
+            _tryEnd = _length;
+            op(ASTORE, EXCEPTION);
+            op(ALOAD, REGS);
+            push(Interpreter.FAILED);
+            op(ILOAD, FAILING);
+            op(IASTORE);
+            op(ALOAD, EXCEPTION);
+            op(ATHROW);
+        }
+
+        /**
+         * Write the method holding the code.
+         * 
+         * @param out The class file.
+         * @param name The entry of the name of the method.
+         * @param type The entry of the descriptor of the method.
+         * @param codeName The entry of the Code attribute name.
+         * @throws IOException When the class file can't be written.
+         */
+        void writeMethod(DataOutputStream out, int name, int type, int codeName)
+                throws IOException {
+            boolean handler = _tryEnd >= 0;
+            // public
+            out.writeShort(0x0001);
+            out.writeShort(name);
+            out.writeShort(type);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(12 + _length + (handler ? 8 : 0));
+            out.writeShort(MAX_STACK);
+            out.writeShort(MAX_LOCALS);
+            out.writeInt(_length);
+            out.write(_bytes, 0, _length);
+            out.writeShort(handler ? 1 : 0);
+            if (handler) {
+                out.writeShort(_tryStart);
+                out.writeShort(_tryEnd);
+                out.writeShort(_tryEnd);
+                out.writeShort(0);
+            }
+            out.writeShort(0);
+        }
+    }
+}
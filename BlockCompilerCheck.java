@@ -0,0 +1,204 @@
+package main;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Differential check of {@link BlockCompiler} against the {@link Interpreter}.
+ * Every program is run interpreted and with every block translated the first
+ * time it is entered, both as assembled and after the -O passes with delay
+ * slots, and the runs must end the same way: the same error if any, the same
+ * words run, pc, registers, HI and LO, and the same memory pages. Besides the
+ * sources given, it runs programs that overflow in addi, fault on an
+ * unaligned lw and run out of pages in sw, each inside a translated block,
+ * so the index a failing word leaves in the register array is checked too.
+ */
+public class BlockCompilerCheck {
+    private static final long RUN_LIMIT = 1L << 24;
+    /** Pages the programs are allowed, enough for the stack and 2 more. */
+    private static final int MAX_PAGES = 3;
+    private static final String FACT = String.join("\n",
+            "main:   addi $sp, $sp, -4",
+            "        sw   $ra, 0($sp)",
+            "        li   $s0, 50",
+            "again:  li   $a0, 12",
+            "        jal  fact",
+            "        addi $s0, $s0, -1",
+            "        slti $t0, $s0, 1",
+            "        beq  $t0, $zero, again",
+            "        lw   $ra, 0($sp)",
+            "        addi $sp, $sp, 4",
+            "        jr   $ra",
+            "fact:   addi $sp, $sp, -8",
+            "        sw   $ra, 4($sp)",
+            "        sw   $a0, 0($sp)",
+            "        slti $t0, $a0, 1",
+            "        beq  $t0, $zero, loop",
+            "        addi $v0, $zero, 1",
+            "        addi $sp, $sp, 8",
+            "        jr   $ra",
+            "loop:   addi $a0, $a0, -1",
+            "        jal  fact",
+            "        lw   $a0, 0($sp)",
+            "        lw   $ra, 4($sp)",
+            "        addi $sp, $sp, 8",
+            "        mul  $v0, $a0, $v0",
+            "        jr   $ra",
+            "");
+    private static final String OVERFLOW = String.join("\n",
+            "        lui  $t0, 0x7fff",
+            "loop:   addi $t1, $t1, 1",
+            "        sw   $t1, 0($sp)",
+            "        addi $t0, $t0, 8192",
+            "        beq  $zero, $zero, loop",
+            "");
+    private static final String UNALIGNED = String.join("\n",
+            "        addi $t2, $sp, -64",
+            "loop:   addi $t3, $t3, 1",
+            "        lw   $t4, 0($t2)",
+            "        sw   $t3, 4($t2)",
+            "        addi $t2, $t2, 2",
+            "        beq  $zero, $zero, loop",
+            "");
+    private static final String OUT_OF_PAGES = String.join("\n",
+            "        addi $t2, $sp, 0",
+            "loop:   addi $t3, $t3, 1",
+            "        sw   $t3, 0($t2)",
+            "        lw   $t4, 0($t2)",
+            "        addi $t2, $t2, -4096",
+            "        beq  $zero, $zero, loop",
+            "");
+
+    /**
+     * How a run ended.
+     */
+    private static class Outcome {
+        private final String _error;
+        private final boolean _halted;
+        private final long _executed;
+        private final int _pc;
+        private final int[] _registers = new int[34];
+        private final PagedMemory.Snapshot _memory;
+        private final int _compiledBlocks;
+
+        /**
+         * Constructor that accepts the interpreter after the run.
+         * 
+         * @param interpreter The interpreter.
+         * @param memory Its memory.
+         * @param error The message of the error the run failed with, or null.
+         */
+        Outcome(Interpreter interpreter, PagedMemory memory, String error) {
+            _error = error;
+            _halted = interpreter.isHalted();
+            _executed = interpreter.getExecuted();
+            _pc = interpreter.getPc();
+            for (int reg = 0; reg < 32; reg++) {
+                _registers[reg] = interpreter.getRegister(reg);
+            }
+            _registers[32] = interpreter.getHi();
+            _registers[33] = interpreter.getLo();
+            _memory = memory.snapshot();
+            _compiledBlocks = interpreter.getCompiledBlocks();
+        }
+
+        /**
+         * Describe how the run ended.
+         * 
+         * @return The description.
+         */
+        @Override
+        public String toString() {
+            return String.format("%s after %d words at %08x, registers %s, %d pages",
+                    _error == null ? (_halted ? "halted" : "stopped") : _error, _executed, _pc,
+                    Arrays.toString(_registers), _memory.getPages());
+        }
+    }
+
+    /**
+     * Main method. Accepts the source files to check, sample.txt if none are
+     * given.
+     * 
+     * @param args The command line arguments.
+     * @throws Exception When a source can't be read or assembled.
+     * @throws IllegalStateException When a translated run doesn't end the
+     *         same way as the interpreted one.
+     */
+    public static void main(String[] args) throws Exception {
+        Logger.getLogger(Assembler.class.getName()).setLevel(Level.WARNING);
+        List<String> names = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        for (String fileName : args.length > 0 ? args : new String[] { "sample.txt" }) {
+            names.add(fileName);
+            texts.add(new String(Files.readAllBytes(Paths.get(fileName)),
+                    StandardCharsets.ISO_8859_1));
+        }
+        names.addAll(Arrays.asList("fact", "overflow", "unaligned", "out-of-pages"));
+        texts.addAll(Arrays.asList(FACT, OVERFLOW, UNALIGNED, OUT_OF_PAGES));
+
+        Assembler assembler = new Assembler();
+        for (int i = 0; i < names.size(); i++) {
+            byte[] bytes = texts.get(i).getBytes(StandardCharsets.ISO_8859_1);
+            int[] plain = assembler.assemble(ByteBuffer.wrap(bytes)).getWords();
+            AssemblyContext optimized = assembler.assemble(ByteBuffer.wrap(bytes));
+            new InstructionScheduler().schedule(optimized);
+            new DelaySlotFiller().fill(optimized);
+            check(names.get(i), plain, false);
+            check(names.get(i) + " -O", optimized.getWords(), true);
+        }
+    }
+
+    /**
+     * Run a program interpreted and translated, and compare how they ended.
+     * 
+     * @param name The name of the program.
+     * @param code The encoded words.
+     * @param delaySlots Whether the words have delay slots.
+     * @throws IllegalStateException When the runs ended differently.
+     */
+    private static void check(String name, int[] code, boolean delaySlots) {
+        Outcome interpreted = run(code, delaySlots, 0);
+        Outcome translated = run(code, delaySlots, 1);
+        if (!interpreted.toString().equals(translated.toString())
+                || !interpreted._memory.equals(translated._memory)) {
+            throw new IllegalStateException(String.format(
+                    "%s differs!%n  interpreted: %s%n  translated:  %s", name, interpreted,
+                    translated));
+        }
+        System.out.println(String.format("%-20s OK, %s, %d blocks translated", name,
+                interpreted._error == null ? "halted" : interpreted._error,
+                translated._compiledBlocks));
+    }
+
+    /**
+     * Run a program from its first word.
+     * 
+     * @param code The encoded words.
+     * @param delaySlots Whether the words have delay slots.
+     * @param compileThreshold The entries before a block is translated, or 0
+     *        to only interpret.
+     * @return How the run ended.
+     */
+    private static Outcome run(int[] code, boolean delaySlots, int compileThreshold) {
+        PagedMemory memory = new PagedMemory();
+        memory.setMaxPages(MAX_PAGES);
+        Interpreter interpreter = new Interpreter(code, memory);
+        interpreter.setDelaySlots(delaySlots);
+        interpreter.setCompileThreshold(compileThreshold);
+        String error = null;
+        try {
+            interpreter.run(RUN_LIMIT);
+        }
+        catch (IllegalStateException ex) {
+            error = ex.getMessage();
+        }
+        return new Outcome(interpreter, memory, error);
+    }
+}
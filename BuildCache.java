@@ -0,0 +1,340 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Content addressed cache of assembled outputs on disk. An entry is keyed by
+ * a 128 bit hash of the source bytes, the version of the instruction tables
+ * and the output format, so an identical source is never assembled twice,
+ * whichever branch or agent it comes from. Entries are written to a temporary
+ * file and published with an atomic rename, so any number of threads and
+ * processes can share one cache directory. The modification time of an entry
+ * is its last use, and the least recently used entries are removed when the
+ * cache grows past its size bound.
+ */
+public class BuildCache {
+    private static final Logger LOGGER = Logger.getLogger(BuildCache.class.getName());
+    /** Version of the cache layout and of the assembler output, bump it when either changes. */
+    private static final int CACHE_VERSION = 3;
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private final Path _dir;
+    private final long _maxBytes;
+    private final long _instructionSetVersion;
+    private final AtomicLong _size = new AtomicLong();
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+
+    /**
+     * Constructor that accepts the cache directory and its size bound. The
+     * directory is created if needed.
+     * 
+     * @param dir The cache directory.
+     * @param maxBytes The size the entries are trimmed to.
+     * @param instructionSet The instruction set the outputs are assembled
+     *        with.
+     * @throws IOException When the directory can't be created or read.
+     */
+    public BuildCache(Path dir, long maxBytes, InstructionSet instructionSet) throws IOException {
+        _dir = dir;
+        _maxBytes = maxBytes;
+        _instructionSetVersion = instructionSet.getVersion();
+        Files.createDirectories(dir);
+        long size = 0;
+        for (Path entry : listEntries()) {
+            size += sizeOf(entry);
+        }
+        _size.set(size);
+    }
+
+    /**
+     * Get the key of a source assembled to a format.
+     * 
+     * @param source The source file.
+     * @param format The output format.
+     * @return The key.
+     * @throws IOException When an error occurs during reading of the file.
+     */
+    public String key(File source, OutputFormat format) throws IOException {
+        return key(source, format, false);
+    }
+
+    /**
+     * Get the key of a source assembled to a format, with or without the
+     * optimization passes.
+     * 
+     * @param source The source file.
+     * @param format The output format.
+     * @param optimize Whether the output is optimized.
+     * @return The key.
+     * @throws IOException When an error occurs during reading of the file.
+     */
+    public String key(File source, OutputFormat format, boolean optimize) throws IOException {
+        long[] hash;
+        try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            hash = size == 0 ? hash(ByteBuffer.allocate(0))
+                    : hash(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+        return String.format("%016x%016x-%016x-%d%s.%s", hash[0], hash[1], _instructionSetVersion,
+                CACHE_VERSION, optimize ? "-O" : "", format.getName());
+    }
+
+    /**
+     * Copy the cached output of a key to a file, if there is one. The entry
+     * is mapped and written to the file in one go, and marked as used.
+     * 
+     * @param key The key.
+     * @param outFile The file to write the output to.
+     * @return True on a hit, false if the key is not cached.
+     * @throws IOException When an error occurs during reading or writing.
+     */
+    public boolean copyTo(String key, File outFile) throws IOException {
+        Path entry = entryPath(key);
+        try (FileChannel in = FileChannel.open(entry, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            try (FileChannel out = FileChannel.open(outFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (mapped.hasRemaining()) {
+                    out.write(mapped);
+                }
+            }
+        }
+        catch (NoSuchFileException ex) {
+            _misses.increment();
+            return false;
+        }
+        _hits.increment();
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        }
+        catch (NoSuchFileException ex) {
+            // evicted in the meantime, the copy is still good
+        }
+        return true;
+    }
+
+    /**
+     * Store an output in the cache. The output is copied to a temporary file
+     * first and then renamed into place, so other readers see either no
+     * entry or the whole entry.
+     * 
+     * @param key The key.
+     * @param outFile The output file to store.
+     * @throws IOException When an error occurs during copying.
+     */
+    public void publish(String key, File outFile) throws IOException {
+        Path entry = entryPath(key);
+        Files.createDirectories(entry.getParent());
+        Path temp = Files.createTempFile(entry.getParent(), key, ".tmp");
+        try {
+            Files.copy(outFile.toPath(), temp, StandardCopyOption.REPLACE_EXISTING);
+            try {
+                Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+        if (_size.addAndGet(sizeOf(entry)) > _maxBytes) {
+            evict();
+        }
+    }
+
+    /**
+     * Get the number of lookups that found an entry.
+     * 
+     * @return The number of hits.
+     */
+    public long getHits() {
+        return _hits.sum();
+    }
+
+    /**
+     * Get the number of lookups that found no entry.
+     * 
+     * @return The number of misses.
+     */
+    public long getMisses() {
+        return _misses.sum();
+    }
+
+    /**
+     * Remove the least recently used entries until the cache is back under
+     * its size bound. The size is recounted from the directory, since other
+     * processes may share it.
+     * 
+     * @throws IOException When the directory can't be read.
+     */
+    private synchronized void evict() throws IOException {
+        if (_size.get() <= _maxBytes) {
+            return;
+        }
+        List<Path> entries = listEntries();
+        final List<FileTime> times = new ArrayList<>(entries.size());
+        final List<Long> sizes = new ArrayList<>(entries.size());
+        List<Integer> order = new ArrayList<>(entries.size());
+        long size = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(entries.get(i), BasicFileAttributes.class);
+            }
+            catch (NoSuchFileException ex) {
+                attributes = null;
+            }
+            times.add(attributes == null ? FileTime.fromMillis(0) : attributes.lastModifiedTime());
+            sizes.add(attributes == null ? 0L : attributes.size());
+            size += sizes.get(i);
+            order.add(i);
+        }
+        order.sort(Comparator.comparing(times::get));
+        // trim below the bound so eviction doesn't run on every publish
+        long target = _maxBytes - _maxBytes / 4;
+        for (int i = 0; i < order.size() && size > target; i++) {
+            int index = order.get(i);
+            try {
+                Files.deleteIfExists(entries.get(index));
+                size -= sizes.get(index);
+            }
+            catch (IOException ex) {
+                LOGGER.log(Level.WARNING, String.format("Failed to evict %s: %s",
+                        entries.get(index), ex.getMessage()));
+            }
+        }
+        _size.set(size);
+    }
+
+    /**
+     * List every entry of the cache, skipping temporary files.
+     * 
+     * @return The entries.
+     * @throws IOException When the directory can't be read.
+     */
+    private List<Path> listEntries() throws IOException {
+        List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> shards = Files.newDirectoryStream(_dir, Files::isDirectory)) {
+            for (Path shard : shards) {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(shard,
+                        path -> !path.getFileName().toString().endsWith(".tmp"))) {
+                    for (Path file : files) {
+                        entries.add(file);
+                    }
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Get the path of the entry of a key, in a subdirectory named after the
+     * first 2 characters of the key so no directory gets too large.
+     * 
+     * @param key The key.
+     * @return The path of the entry.
+     */
+    private Path entryPath(String key) {
+        return _dir.resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    /**
+     * Get the size of an entry.
+     * 
+     * @param entry The entry.
+     * @return The size, or 0 if the entry is gone.
+     * @throws IOException When the size can't be read.
+     */
+    private static long sizeOf(Path entry) throws IOException {
+        try {
+            return Files.size(entry);
+        }
+        catch (NoSuchFileException ex) {
+            return 0;
+        }
+    }
+
+    /**
+     * Hash bytes with the 128 bit x64 variant of MurmurHash3, seed 0.
+     * 
+     * @param buffer The bytes, from the position to the limit.
+     * @return The hash, as 2 longs.
+     */
+    static long[] hash(ByteBuffer buffer) {
+        ByteBuffer bytes = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int length = bytes.remaining();
+        long h1 = 0;
+        long h2 = 0;
+        while (bytes.remaining() >= 16) {
+            long k1 = bytes.getLong();
+            long k2 = bytes.getLong();
+            h1 ^= Long.rotateLeft(k1 * C1, 31) * C2;
+            h1 = (Long.rotateLeft(h1, 27) + h2) * 5 + 0x52dce729;
+            h2 ^= Long.rotateLeft(k2 * C2, 33) * C1;
+            h2 = (Long.rotateLeft(h2, 31) + h1) * 5 + 0x38495ab5;
+        }
+        long k1 = 0;
+        long k2 = 0;
+        int tail = bytes.remaining();
+        for (int i = tail - 1; i >= 8; i--) {
+            k2 = (k2 << 8) | (bytes.get(bytes.position() + i) & 0xff);
+        }
+        for (int i = Math.min(tail, 8) - 1; i >= 0; i--) {
+            k1 = (k1 << 8) | (bytes.get(bytes.position() + i) & 0xff);
+        }
+        if (tail > 8) {
+            h2 ^= Long.rotateLeft(k2 * C2, 33) * C1;
+        }
+        if (tail > 0) {
+            h1 ^= Long.rotateLeft(k1 * C1, 31) * C2;
+        }
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+        return new long[] { h1, h2 };
+    }
+
+    /**
+     * Final avalanche of MurmurHash3.
+     * 
+     * @param k The value to mix.
+     * @return The mixed value.
+     */
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        return k ^ (k >>> 33);
+    }
+}
@@ -0,0 +1,155 @@
+package main;
+
+import java.util.Arrays;
+
+/**
+ * Timing model of a set-associative cache with least recently used
+ * replacement. Only hits and misses are tracked, the data itself stays in the
+ * {@link Memory}. The line of the last access is remembered, so the runs of
+ * accesses to one line that instruction fetch makes skip the set search.
+ */
+public class CacheModel {
+    private final int _size;
+    private final int _ways;
+    private final int _lineBytes;
+    private final int _lineBits;
+    private final int _setMask;
+    // line number + 1 of every way, 0 when empty
+    private final int[] _tags;
+    private final long[] _lastUse;
+    private int _lastLine = -1;
+    private long _clock = 0;
+    private long _accesses = 0;
+    private long _misses = 0;
+
+    /**
+     * Constructor that accepts the geometry of the cache.
+     * 
+     * @param size The number of bytes, a power of 2.
+     * @param ways The number of lines in a set.
+     * @param lineBytes The number of bytes in a line, a power of 2 and at
+     *        least 4.
+     * @throws IllegalArgumentException When the geometry is not valid.
+     */
+    public CacheModel(int size, int ways, int lineBytes) {
+        if (Integer.bitCount(size) != 1 || Integer.bitCount(lineBytes) != 1 || lineBytes < 4
+                || ways < 1 || size % (ways * lineBytes) != 0
+                || Integer.bitCount(size / (ways * lineBytes)) != 1) {
+            throw new IllegalArgumentException(
+                    String.format("Invalid cache of %d bytes, %d ways and %d byte lines!", size,
+                            ways, lineBytes));
+        }
+        _size = size;
+        _ways = ways;
+        _lineBytes = lineBytes;
+        _lineBits = Integer.numberOfTrailingZeros(lineBytes);
+        int sets = size / (ways * lineBytes);
+        _setMask = sets - 1;
+        _tags = new int[sets * ways];
+        _lastUse = new long[sets * ways];
+    }
+
+    /**
+     * Parse a cache given as size:ways:line, in bytes, such as 4096:2:32.
+     * 
+     * @param spec The cache.
+     * @return The cache.
+     * @throws IllegalArgumentException When the cache is not valid.
+     */
+    public static CacheModel parse(String spec) {
+        String[] parts = spec.split(":");
+        try {
+            if (parts.length == 3) {
+                return new CacheModel(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]),
+                        Integer.parseInt(parts[2]));
+            }
+        }
+        catch (NumberFormatException ex) {
+            // reported below
+        }
+        throw new IllegalArgumentException(
+                String.format("Invalid cache %s, expected size:ways:line in bytes!", spec));
+    }
+
+    /**
+     * Access a word, bringing its line into the cache.
+     * 
+     * @param address The address of the word.
+     * @return True on a hit.
+     */
+    public boolean access(int address) {
+        _accesses++;
+        int line = address >>> _lineBits;
+        if (line == _lastLine) {
+            // already the most recently used line of its set
+            return true;
+        }
+        _lastLine = line;
+        long clock = ++_clock;
+        int tag = line + 1;
+        int first = (line & _setMask) * _ways;
+        int victim = first;
+        for (int i = first; i < first + _ways; i++) {
+            if (_tags[i] == tag) {
+                _lastUse[i] = clock;
+                return true;
+            }
+            if (_lastUse[i] < _lastUse[victim]) {
+                victim = i;
+            }
+        }
+        _tags[victim] = tag;
+        _lastUse[victim] = clock;
+        _misses++;
+        return false;
+    }
+
+    /**
+     * Empty the cache and clear its counters.
+     */
+    public void reset() {
+        Arrays.fill(_tags, 0);
+        Arrays.fill(_lastUse, 0);
+        _lastLine = -1;
+        _clock = 0;
+        _accesses = 0;
+        _misses = 0;
+    }
+
+    /**
+     * Get the number of accesses.
+     * 
+     * @return The number of accesses.
+     */
+    public long getAccesses() {
+        return _accesses;
+    }
+
+    /**
+     * Get the number of misses.
+     * 
+     * @return The number of misses.
+     */
+    public long getMisses() {
+        return _misses;
+    }
+
+    /**
+     * Get the share of accesses that missed.
+     * 
+     * @return The miss rate, 0 when there were no accesses.
+     */
+    public double getMissRate() {
+        return _accesses == 0 ? 0 : (double) _misses / _accesses;
+    }
+
+    /**
+     * Get the geometry of the cache.
+     * 
+     * @return The size, ways and line size.
+     */
+    @Override
+    public String toString() {
+        return String.format("%d bytes, %d-way, %d byte lines", _size, _ways, _lineBytes);
+    }
+}
@@ -0,0 +1,18 @@
+package main;
+
+/**
+ * A basic block of encoded words translated into JVM bytecode by
+ * {@link BlockCompiler}, working on the register array of the
+ * {@link Interpreter} directly.
+ */
+interface CompiledBlock {
+    /**
+     * Run every word of the block.
+     * 
+     * @param regs The 32 registers, then HI, LO and the slot a failing word
+     *        leaves its index in the block in.
+     * @param memory The data memory.
+     * @return The address of the next word to run.
+     */
+    int run(int[] regs, Memory memory);
+}
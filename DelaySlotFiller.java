@@ -0,0 +1,175 @@
+package main;
+
+import java.util.Arrays;
+
+/**
+ * Optimization pass that gives every jump and branch the delay slot MIPS
+ * hardware executes after it. The assembled words are split into basic blocks
+ * at labels, jump and branch targets and the words after jumps and branches.
+ * Each jump or branch that ends a block is followed by the latest earlier word
+ * of its block that can move past everything after it, including the jump or
+ * branch itself, and only gets a nop when there is no such word. Targets and
+ * labels are then moved to the new addresses.
+ */
+public class DelaySlotFiller {
+    private int _filled = 0;
+    private int _slots = 0;
+
+    /**
+     * Fill the delay slots of the words of a job.
+     * 
+     * @param context The context of the job, holding the labels and encoded
+     *        words, which are replaced.
+     * @throws IllegalArgumentException When a branch is out of reach of its
+     *         label after the nops are inserted.
+     */
+    public void fill(AssemblyContext context) {
+        int[] words = context.getWords();
+        int[] lines = context.getLines();
+        int length = words.length;
+        boolean[] leaders = findLeaders(words, context);
+
+        int[] filled = new int[length * 2];
+        int[] filledLines = new int[length * 2];
+        // new index of every word, and of the end
+        int[] moved = new int[length + 1];
+        int size = 0;
+        int blockStart = 0;
+        for (int i = 0; i < length; i++) {
+            if (leaders[i]) {
+                // a block that falls through into the next keeps its words
+                for (int j = blockStart; j < i; j++) {
+                    moved[j] = size;
+                    filledLines[size] = lines[j];
+                    filled[size++] = words[j];
+                }
+                blockStart = i;
+            }
+            if (!InstructionWord.isControlTransfer(words[i])) {
+                continue;
+            }
+            int candidate = findCandidate(words, leaders, blockStart, i);
+            for (int j = blockStart; j <= i; j++) {
+                if (j != candidate) {
+                    moved[j] = size;
+                    filledLines[size] = lines[j];
+                    filled[size++] = words[j];
+                }
+            }
+            _slots++;
+            if (candidate >= 0) {
+                moved[candidate] = size;
+                filledLines[size] = lines[candidate];
+                filled[size++] = words[candidate];
+                _filled++;
+            }
+            else {
+                // the nop belongs to the jump or branch
+                filledLines[size] = lines[i];
+                filled[size++] = InstructionWord.NOP;
+            }
+            blockStart = i + 1;
+        }
+        for (int j = blockStart; j < length; j++) {
+            moved[j] = size;
+            filledLines[size] = lines[j];
+            filled[size++] = words[j];
+        }
+        moved[length] = size;
+
+        for (int i = 0; i < length; i++) {
+            if (InstructionWord.hasTarget(words[i])) {
+                int target = InstructionWord.getTarget(words[i], i << 2);
+                int index = target >> 2;
+                // targets outside the program are left where they are
+                if ((target & 3) == 0 && index >= 0 && index <= length) {
+                    filled[moved[i]] = InstructionWord.setTarget(words[i], moved[i] << 2,
+                            moved[index] << 2);
+                }
+            }
+        }
+        context.relocate(Arrays.copyOf(filled, size), Arrays.copyOf(filledLines, size),
+                address -> {
+                    int index = address >> 2;
+                    return (address & 3) == 0 && index >= 0 && index <= length
+                            ? moved[index] << 2 : address;
+                });
+    }
+
+    /**
+     * Get the number of delay slots filled with a word from before the jump
+     * or branch.
+     * 
+     * @return The number of filled delay slots.
+     */
+    public int getFilled() {
+        return _filled;
+    }
+
+    /**
+     * Get the number of delay slots, filled or given a nop.
+     * 
+     * @return The number of delay slots.
+     */
+    public int getSlots() {
+        return _slots;
+    }
+
+    /**
+     * Find the words that start a basic block: the first word, every label,
+     * every jump or branch target and every word after a jump or branch.
+     * 
+     * @param words The encoded words.
+     * @param context The context of the job, holding the labels.
+     * @return Whether each word starts a block.
+     */
+    static boolean[] findLeaders(int[] words, AssemblyContext context) {
+        boolean[] leaders = new boolean[words.length + 1];
+        leaders[0] = true;
+        for (int address : context.getLabelMap().values()) {
+            if (address >= 0 && address >> 2 <= words.length) {
+                leaders[address >> 2] = true;
+            }
+        }
+        for (int i = 0; i < words.length; i++) {
+            if (InstructionWord.isControlTransfer(words[i])) {
+                leaders[i + 1] = true;
+            }
+            if (InstructionWord.hasTarget(words[i])) {
+                int index = InstructionWord.getTarget(words[i], i << 2) >> 2;
+                if (index >= 0 && index <= words.length) {
+                    leaders[index] = true;
+                }
+            }
+        }
+        return leaders;
+    }
+
+    /**
+     * Find the latest word of a block that can move into the delay slot of
+     * the jump or branch ending the block. The word can't start the block,
+     * since jumps to the block must still run it, and can't depend on any
+     * word after it.
+     * 
+     * @param words The encoded words.
+     * @param leaders Whether each word starts a block.
+     * @param blockStart The index of the first word of the block.
+     * @param branch The index of the jump or branch.
+     * @return The index of the word, or -1 if there is none.
+     */
+    private static int findCandidate(int[] words, boolean[] leaders, int blockStart, int branch) {
+        for (int candidate = branch - 1; candidate >= blockStart; candidate--) {
+            if (leaders[candidate]) {
+                return -1;
+            }
+            boolean independent = true;
+            for (int j = candidate + 1; j <= branch && independent; j++) {
+                independent = !InstructionWord.dependsOn(words[candidate], words[j]);
+            }
+            if (independent) {
+                return candidate;
+            }
+        }
+        return -1;
+    }
+}
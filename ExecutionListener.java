@@ -0,0 +1,18 @@
+package main;
+
+/**
+ * Receives every word the {@link Interpreter} runs, in order, such as a
+ * timing model that works out the cycles the words take.
+ */
+public interface ExecutionListener {
+    /**
+     * Called after a word has run.
+     * 
+     * @param pc The address of the word.
+     * @param word The encoded word.
+     * @param address The address lw or sw accessed, undefined for other
+     *        words.
+     * @param taken Whether the word is a jump or branch that was taken.
+     */
+    void executed(int pc, int word, int address, boolean taken);
+}
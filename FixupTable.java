@@ -0,0 +1,75 @@
+package main;
+
+import java.util.Arrays;
+
+/**
+ * Table of forward references to labels. Each entry records the index of an
+ * already encoded word, the label it jumps or branches to, its address and its
+ * encoder, so the label target field can be back-patched once the label has
+ * been defined.
+ */
+public class FixupTable {
+    private int[] _wordIndexes = new int[16];
+    private String[] _labels = new String[16];
+    private int[] _addresses = new int[16];
+    private InstructionEncoder[] _encoders = new InstructionEncoder[16];
+    private int _size = 0;
+
+    /**
+     * Record a word that references a label that has not been defined yet.
+     * 
+     * @param wordIndex The index of the word to patch.
+     * @param label The label the word references.
+     * @param address The address of the word.
+     * @param encoder The encoder of the word.
+     */
+    public void add(int wordIndex, String label, int address, InstructionEncoder encoder) {
+        if (_size == _wordIndexes.length) {
+            _wordIndexes = Arrays.copyOf(_wordIndexes, _size * 2);
+            _labels = Arrays.copyOf(_labels, _size * 2);
+            _addresses = Arrays.copyOf(_addresses, _size * 2);
+            _encoders = Arrays.copyOf(_encoders, _size * 2);
+        }
+        _wordIndexes[_size] = wordIndex;
+        _labels[_size] = label;
+        _addresses[_size] = address;
+        _encoders[_size] = encoder;
+        _size++;
+    }
+
+    /**
+     * Get the number of fixups in the table.
+     * 
+     * @return The number of fixups.
+     */
+    public int size() {
+        return _size;
+    }
+
+    /**
+     * Patch every recorded word with the address of its label. The words were
+     * encoded with an empty label target field, so the target is or'ed in.
+     * 
+     * @param words The encoded words.
+     * @param symbols The labels and their addresses.
+     * @throws IllegalArgumentException When a label was never defined or is
+     *         out of reach.
+     */
+    public void patch(int[] words, SymbolTable symbols) {
+        for (int i = 0; i < _size; i++) {
+            int addr = symbols.find(_labels[i], _addresses[i]);
+            if (addr == SymbolTable.NOT_FOUND) {
+                throw new IllegalArgumentException(
+                        String.format("The label %s was never defined!", _labels[i]));
+            }
+            if (!_encoders[i].reaches(addr, _addresses[i])) {
+                throw new IllegalArgumentException(
+                        String.format("The label %s is out of reach!", _labels[i]));
+            }
+            words[_wordIndexes[i]] |= _encoders[i].encodeTarget(addr, _addresses[i]);
+        }
+        Arrays.fill(_labels, 0, _size, null);
+        Arrays.fill(_encoders, 0, _size, null);
+        _size = 0;
+    }
+}
@@ -0,0 +1,354 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes encoded words as a memory image for a simulator or FPGA toolchain.
+ * Text is formatted with a precomputed nibble table into a reusable byte
+ * buffer, which is written to the file or channel in bulk whenever it fills up. Each
+ * format only decides what goes around and between the words.
+ */
+public abstract class ImageEmitter {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte[] LOWER_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] UPPER_DIGITS = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+    private final byte[] _buffer = new byte[BUFFER_SIZE];
+    private final ByteBuffer _byteBuffer = ByteBuffer.wrap(_buffer);
+    private final byte[] _digits;
+    private WritableByteChannel _channel;
+    private int _pos = 0;
+
+    /**
+     * Constructor that accepts the case of the hex digits.
+     * 
+     * @param upperCase Whether to write hex digits in upper case.
+     */
+    protected ImageEmitter(boolean upperCase) {
+        _digits = upperCase ? UPPER_DIGITS : LOWER_DIGITS;
+    }
+
+    /**
+     * Write the image of the encoded words to a file.
+     * 
+     * @param context The context holding the encoded words.
+     * @param outFile The file to write to.
+     * @throws IOException When an error occurs during writing of the file.
+     */
+    public void emit(AssemblyContext context, File outFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(outFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            emit(context, channel);
+        }
+    }
+
+    /**
+     * Write the image of the encoded words to a channel, such as a socket.
+     * The channel is left open.
+     * 
+     * @param context The context holding the encoded words.
+     * @param channel The channel to write to.
+     * @throws IOException When an error occurs during writing to the channel.
+     */
+    public void emit(AssemblyContext context, WritableByteChannel channel) throws IOException {
+        _channel = channel;
+        _pos = 0;
+        try {
+            emitWords(context);
+            flush();
+        }
+        finally {
+            _channel = null;
+        }
+    }
+
+    /**
+     * Put the image of the encoded words into the buffer.
+     * 
+     * @param context The context holding the encoded words.
+     * @throws IOException When an error occurs during writing of the file.
+     */
+    protected abstract void emitWords(AssemblyContext context) throws IOException;
+
+    /**
+     * Make sure the buffer has room for the given number of bytes.
+     * 
+     * @param length The number of bytes about to be put.
+     * @throws IOException When an error occurs during writing of the file.
+     */
+    protected final void reserve(int length) throws IOException {
+        if (_pos + length > _buffer.length) {
+            flush();
+        }
+    }
+
+    /**
+     * Put a word as 8 hex digits. The caller must have reserved the room.
+     * 
+     * @param word The word.
+     */
+    protected final void putWord(int word) {
+        for (int shift = 28; shift >= 0; shift -= 4) {
+            _buffer[_pos++] = _digits[(word >>> shift) & 0xf];
+        }
+    }
+
+    /**
+     * Put a word as hex digits without leading zeros. The caller must have
+     * reserved the room.
+     * 
+     * @param word The word.
+     */
+    protected final void putWordTrimmed(int word) {
+        int shift = 28;
+        while (shift > 0 && (word >>> shift) == 0) {
+            shift -= 4;
+        }
+        for (; shift >= 0; shift -= 4) {
+            _buffer[_pos++] = _digits[(word >>> shift) & 0xf];
+        }
+    }
+
+    /**
+     * Put a byte as 2 hex digits. The caller must have reserved the room.
+     * 
+     * @param b The byte.
+     */
+    protected final void putByte(int b) {
+        _buffer[_pos++] = _digits[(b >>> 4) & 0xf];
+        _buffer[_pos++] = _digits[b & 0xf];
+    }
+
+    /**
+     * Put a single character. The caller must have reserved the room.
+     * 
+     * @param c The character, which must be ASCII.
+     */
+    protected final void putChar(char c) {
+        _buffer[_pos++] = (byte) c;
+    }
+
+    /**
+     * Put an ASCII string, reserving the room for it.
+     * 
+     * @param s The string.
+     * @throws IOException When an error occurs during writing of the file.
+     */
+    protected final void putString(String s) throws IOException {
+        reserve(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            _buffer[_pos++] = (byte) s.charAt(i);
+        }
+    }
+
+    /**
+     * Write the buffer to the file and empty it.
+     * 
+     * @throws IOException When an error occurs during writing of the file.
+     */
+    private void flush() throws IOException {
+        _byteBuffer.clear().limit(_pos);
+        while (_byteBuffer.hasRemaining()) {
+            _channel.write(_byteBuffer);
+        }
+        _pos = 0;
+    }
+
+    /**
+     * One 8 digit hex word per line.
+     */
+    public static final class FixedHex extends ImageEmitter {
+        /**
+         * Default constructor, lower case digits.
+         */
+        public FixedHex() {
+            super(false);
+        }
+
+        @Override
+        protected void emitWords(AssemblyContext context) throws IOException {
+            int numOfWords = context.getNumOfWords();
+            for (int i = 0; i < numOfWords; i++) {
+                reserve(9);
+                putWord(context.getWord(i));
+                putChar('\n');
+            }
+        }
+    }
+
+    /**
+     * Intel HEX, 16 data bytes per record with big-endian words, an extended
+     * linear address record whenever the upper 16 address bits change, and an
+     * end of file record.
+     */
+    public static final class IntelHex extends ImageEmitter {
+        private static final int WORDS_PER_RECORD = 4;
+
+        /**
+         * Default constructor, upper case digits.
+         */
+        public IntelHex() {
+            super(true);
+        }
+
+        @Override
+        protected void emitWords(AssemblyContext context) throws IOException {
+            int numOfWords = context.getNumOfWords();
+            int upper = 0;
+            for (int i = 0; i < numOfWords; i += WORDS_PER_RECORD) {
+                int address = i * 4;
+                if (address >>> 16 != upper) {
+                    upper = address >>> 16;
+                    putRecord(0, 4, new int[] { upper << 16 }, 0, 2);
+                }
+                int count = Math.min(WORDS_PER_RECORD, numOfWords - i);
+                reserve(11 + count * 8);
+                int checksum = count * 4 + (address >>> 8 & 0xff) + (address & 0xff);
+                putChar(':');
+                putByte(count * 4);
+                putByte(address >>> 8);
+                putByte(address);
+                putByte(0);
+                for (int j = 0; j < count; j++) {
+                    int word = context.getWord(i + j);
+                    putWord(word);
+                    checksum += (word >>> 24) + (word >>> 16 & 0xff) + (word >>> 8 & 0xff)
+                            + (word & 0xff);
+                }
+                putByte(-checksum);
+                putChar('\n');
+            }
+            putString(":00000001FF\n");
+        }
+
+        /**
+         * Put a record holding the leading bytes of a word, used for the
+         * extended linear address record.
+         * 
+         * @param address The 16 bit record address.
+         * @param type The record type.
+         * @param words The word holding the data.
+         * @param index The index of the word.
+         * @param length The number of leading bytes of the word to put.
+         * @throws IOException When an error occurs during writing of the file.
+         */
+        private void putRecord(int address, int type, int[] words, int index, int length)
+                throws IOException {
+            reserve(11 + length * 2);
+            int checksum = length + (address >>> 8 & 0xff) + (address & 0xff) + type;
+            putChar(':');
+            putByte(length);
+            putByte(address >>> 8);
+            putByte(address);
+            putByte(type);
+            for (int i = 0; i < length; i++) {
+                int b = words[index] >>> (24 - i * 8) & 0xff;
+                putByte(b);
+                checksum += b;
+            }
+            putByte(-checksum);
+            putChar('\n');
+        }
+    }
+
+    /**
+     * Logisim "v2.0 raw" memory image, 8 entries per line, with runs of the
+     * same word written as count*word.
+     */
+    public static final class LogisimRaw extends ImageEmitter {
+        private static final int ENTRIES_PER_LINE = 8;
+
+        /**
+         * Default constructor, lower case digits.
+         */
+        public LogisimRaw() {
+            super(false);
+        }
+
+        @Override
+        protected void emitWords(AssemblyContext context) throws IOException {
+            putString("v2.0 raw\n");
+            int numOfWords = context.getNumOfWords();
+            int entries = 0;
+            int i = 0;
+            while (i < numOfWords) {
+                int word = context.getWord(i);
+                int run = 1;
+                while (i + run < numOfWords && context.getWord(i + run) == word) {
+                    run++;
+                }
+                if (run > 1) {
+                    putString(Integer.toString(run));
+                    reserve(1);
+                    putChar('*');
+                }
+                reserve(9);
+                putWordTrimmed(word);
+                i += run;
+                putChar(++entries % ENTRIES_PER_LINE == 0 || i == numOfWords ? '\n' : ' ');
+            }
+        }
+    }
+
+    /**
+     * Altera memory initialization file, one word per address.
+     */
+    public static final class Mif extends ImageEmitter {
+        /**
+         * Default constructor, upper case digits.
+         */
+        public Mif() {
+            super(true);
+        }
+
+        @Override
+        protected void emitWords(AssemblyContext context) throws IOException {
+            int numOfWords = context.getNumOfWords();
+            // a memory can't be empty, so an empty program is a single 0
+            putString(String.format("DEPTH = %d;\nWIDTH = 32;\nADDRESS_RADIX = HEX;\n"
+                    + "DATA_RADIX = HEX;\nCONTENT\nBEGIN\n", Math.max(numOfWords, 1)));
+            for (int i = 0; i < Math.max(numOfWords, 1); i++) {
+                reserve(21);
+                putWord(i);
+                putChar(' ');
+                putChar(':');
+                putChar(' ');
+                putWord(i < numOfWords ? context.getWord(i) : 0);
+                putChar(';');
+                putChar('\n');
+            }
+            putString("END;\n");
+        }
+    }
+
+    /**
+     * Xilinx coefficient file, one word per line separated by commas.
+     */
+    public static final class Coe extends ImageEmitter {
+        /**
+         * Default constructor, lower case digits.
+         */
+        public Coe() {
+            super(false);
+        }
+
+        @Override
+        protected void emitWords(AssemblyContext context) throws IOException {
+            int numOfWords = context.getNumOfWords();
+            putString("memory_initialization_radix=16;\nmemory_initialization_vector=\n");
+            // a memory can't be empty, so an empty program is a single 0
+            for (int i = 0; i < Math.max(numOfWords, 1); i++) {
+                reserve(10);
+                putWord(i < numOfWords ? context.getWord(i) : 0);
+                putChar(i + 1 < numOfWords ? ',' : ';');
+                putChar('\n');
+            }
+        }
+    }
+}
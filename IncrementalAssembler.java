@@ -0,0 +1,202 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reassembles a source that changes a little between runs, such as a file
+ * being edited. The encoded words of every line are cached, keyed by the hash
+ * of the line. A line without a label operand encodes the same at any
+ * address, so it is reused wherever it moves. A jump or branch is also keyed
+ * by its address, and is only reused while its target label stays at the
+ * same address. Only the lines that changed and the jumps and branches whose
+ * target moved are encoded again. The labels are always collected again,
+ * since every line after an edit may have moved.
+ */
+public class IncrementalAssembler {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long ADDRESS_MIX = 0x9e3779b97f4a7c15L;
+
+    private final Assembler _assembler;
+    private Map<Long, CachedLine> _cache = new HashMap<>();
+    private int _encodedLines = 0;
+    private int _cachedLines = 0;
+
+    /**
+     * The encoded words of a line.
+     */
+    private static final class CachedLine {
+        private final byte[] _text;
+        private final int _mnemonic;
+        private final String _label;
+        private final int _address;
+        private final int _target;
+        private final int[] _words;
+
+        /**
+         * Constructor that accepts the line and its encoding.
+         * 
+         * @param text The instruction text of the line.
+         * @param mnemonic The index of the mnemonic.
+         * @param label The label operand, or null.
+         * @param address The address the line was encoded at.
+         * @param target The address of the label operand, or 0.
+         * @param words The encoded words.
+         */
+        CachedLine(byte[] text, int mnemonic, String label, int address, int target, int[] words) {
+            _text = text;
+            _mnemonic = mnemonic;
+            _label = label;
+            _address = address;
+            _target = target;
+            _words = words;
+        }
+    }
+
+    /**
+     * Constructor that accepts the assembler to encode with.
+     * 
+     * @param assembler The assembler.
+     */
+    public IncrementalAssembler(Assembler assembler) {
+        _assembler = assembler;
+    }
+
+    /**
+     * Assemble the input file, encoding only the lines that are not cached
+     * from the previous run. If the file has an error the cache is left as it
+     * was.
+     * 
+     * @param inFile The file containing the MIPS instructions.
+     * @return The context holding the labels and encoded words.
+     * @throws IOException When an error occurs during reading of the file.
+     * @throws IllegalArgumentException When an instruction is not found or the
+     *         syntax is incorrect.
+     */
+    public AssemblyContext assemble(File inFile) throws IOException {
+        AssemblerMetrics metrics = _assembler.getMetrics();
+        InstructionSet instructionSet = _assembler.getInstructionSet();
+        AssemblyContext context = new AssemblyContext();
+        Map<Long, CachedLine> cache = new HashMap<>(Math.max(16, _cache.size() * 2));
+        int encodedLines = 0;
+        int cachedLines = 0;
+        long start = System.nanoTime();
+        try (MappedSource source = new MappedSource(inFile)) {
+            long read = System.nanoTime();
+            _assembler.processLabels(source, context);
+            long labels = System.nanoTime();
+            source.rewind();
+            OperandParser parser = context.getParser();
+            Operands ops = context.getOperands();
+            byte[] text = new byte[256];
+            int prgmCtr = 0;
+            while (source.nextLine()) {
+                final int instructionStart = source.getInstructionStart();
+                if (instructionStart < 0) {
+                    continue;
+                }
+                int length = source.getLineEnd() - instructionStart;
+                if (length > text.length) {
+                    text = new byte[Math.max(length, text.length * 2)];
+                }
+                source.getBytes(instructionStart, text, length);
+                long hash = hash(text, length);
+                long addressKey = hash ^ (prgmCtr * ADDRESS_MIX);
+
+                CachedLine line = _cache.get(hash);
+                if (line == null || line._label != null || !matches(line, text, length)) {
+                    line = _cache.get(addressKey);
+                    if (line != null && (line._address != prgmCtr || !matches(line, text, length)
+                            || context.getLabelAddress(line._label, prgmCtr) != line._target)) {
+                        line = null;
+                    }
+                }
+                if (line == null) {
+                    parser.load(source, instructionStart, source.getLineEnd());
+                    int mnemonic = parser.parseMnemonic(instructionSet);
+                    parser.parseOperands(instructionSet.getSyntax(mnemonic), ops);
+                    String label = ops.getLabel();
+                    int target = label == null ? 0 : context.getLabelAddress(ops, prgmCtr);
+                    int[] steps = _assembler.selectSteps(mnemonic, ops, target, prgmCtr);
+                    int[] words = new int[steps.length];
+                    for (int i = 0; i < steps.length; i++) {
+                        InstructionEncoder encoder = instructionSet.getEncoder(steps[i]);
+                        words[i] = encoder.encode(ops.getSlots())
+                                | encoder.encodeTarget(target, prgmCtr + 4 * i);
+                    }
+                    line = new CachedLine(Arrays.copyOf(text, length), mnemonic, label, prgmCtr,
+                            target, words);
+                    encodedLines++;
+                }
+                else {
+                    cachedLines++;
+                }
+                cache.put(line._label == null ? hash : addressKey, line);
+                context.countMnemonic(line._mnemonic, 1, line._words.length);
+                for (int word : line._words) {
+                    context.addWord(word, source.getLineNumber());
+                }
+                prgmCtr += 4 * line._words.length;
+            }
+            context.setNumOfLines(source.getLineNumber());
+            metrics.addNanos(AssemblerMetrics.READ, read - start);
+            metrics.addNanos(AssemblerMetrics.LABELS, labels - read);
+            metrics.addNanos(AssemblerMetrics.ENCODE, System.nanoTime() - labels);
+            metrics.addJob(context);
+        }
+        // only the lines of this run are kept, so the cache follows the file
+        _cache = cache;
+        _encodedLines = encodedLines;
+        _cachedLines = cachedLines;
+        return context;
+    }
+
+    /**
+     * Get the number of lines encoded by the last run.
+     * 
+     * @return The number of lines encoded.
+     */
+    public int getEncodedLines() {
+        return _encodedLines;
+    }
+
+    /**
+     * Get the number of lines taken from the cache by the last run.
+     * 
+     * @return The number of lines reused.
+     */
+    public int getCachedLines() {
+        return _cachedLines;
+    }
+
+    /**
+     * Check if a cached line has the given instruction text.
+     * 
+     * @param line The cached line.
+     * @param text The buffer holding the instruction text.
+     * @param length The length of the instruction text.
+     * @return True if the text is the same.
+     */
+    private static boolean matches(CachedLine line, byte[] text, int length) {
+        return Arrays.equals(line._text, 0, line._text.length, text, 0, length);
+    }
+
+    /**
+     * Hash instruction text with 64 bit FNV-1a.
+     * 
+     * @param text The buffer holding the instruction text.
+     * @param length The length of the instruction text.
+     * @return The hash.
+     */
+    private static long hash(byte[] text, int length) {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ (text[i] & 0xff)) * FNV_PRIME;
+        }
+        return hash;
+    }
+}
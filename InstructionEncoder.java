@@ -0,0 +1,294 @@
+package main;
+
+/**
+ * Compiled encoder for a single machine instruction. The operation code and
+ * function code are stored pre-shifted into place, and each register and
+ * immediate field is read from an operand slot, so an instruction is encoded
+ * with shifts and masks instead of checking which fields it has. An
+ * immediate that doesn't fit its field is an error rather than being cut to
+ * 16 bits.
+ */
+public final class InstructionEncoder {
+    /** Operand slot that always holds 0, used for fields an instruction doesn't have. */
+    public static final int NONE = 3;
+    /** Number of operand slots, including the NONE slot. */
+    public static final int NUM_OF_SLOTS = 4;
+
+    private final String _name;
+    private final int _base;
+    private final int _rsSlot;
+    private final int _rtSlot;
+    private final int _rdSlot;
+    private final int _immSlot;
+    private final int _immShift;
+    private final int _immMask;
+    private final int _immMin;
+    // max - min, compared unsigned, so -1 accepts every immediate
+    private final int _immRange;
+    private final int _targetMask;
+    private final int _pcRelative;
+
+    /**
+     * Constructor that accepts every field of the encoder. Use the format
+     * factory methods instead.
+     * 
+     * @param name The name of the instruction.
+     * @param base The pre-shifted operation code and function code.
+     * @param rsSlot The operand slot of the rs register.
+     * @param rtSlot The operand slot of the rt register.
+     * @param rdSlot The operand slot of the rd register.
+     * @param immSlot The operand slot of the immediate.
+     * @param immShift How far to shift the immediate right before masking.
+     * @param immMask The mask of the immediate field.
+     * @param immMin The smallest immediate accepted.
+     * @param immMax The largest immediate accepted.
+     * @param targetMask The mask of the label target field.
+     * @param pcRelative Whether the label target is relative to the next
+     *        instruction.
+     */
+    private InstructionEncoder(String name, int base, int rsSlot, int rtSlot, int rdSlot,
+            int immSlot, int immShift, int immMask, int immMin, int immMax, int targetMask,
+            boolean pcRelative) {
+        _name = name;
+        _base = base;
+        _rsSlot = rsSlot;
+        _rtSlot = rtSlot;
+        _rdSlot = rdSlot;
+        _immSlot = immSlot;
+        _immShift = immShift;
+        _immMask = immMask;
+        _immMin = immMin;
+        _immRange = immMax - immMin;
+        _targetMask = targetMask;
+        _pcRelative = pcRelative ? -1 : 0;
+    }
+
+    /**
+     * Create an R-format encoder, op code 0 with a function code.
+     * 
+     * @param name The name of the instruction.
+     * @param funcCode The function code.
+     * @param rsSlot The operand slot of the rs register.
+     * @param rtSlot The operand slot of the rt register.
+     * @param rdSlot The operand slot of the rd register.
+     * @return The encoder.
+     */
+    public static InstructionEncoder rFormat(String name, int funcCode, int rsSlot, int rtSlot,
+            int rdSlot) {
+        return new InstructionEncoder(name, funcCode & 0x3f, rsSlot, rtSlot, rdSlot, NONE, 0, 0,
+                0, 0, 0, false);
+    }
+
+    /**
+     * Create an I-format encoder with a 16 bit signed immediate, from -32768
+     * to 32767.
+     * 
+     * @param name The name of the instruction.
+     * @param opCode The operation code.
+     * @param rsSlot The operand slot of the rs register.
+     * @param rtSlot The operand slot of the rt register.
+     * @param immSlot The operand slot of the immediate.
+     * @return The encoder.
+     */
+    public static InstructionEncoder iFormat(String name, int opCode, int rsSlot, int rtSlot,
+            int immSlot) {
+        return new InstructionEncoder(name, opCode << 26, rsSlot, rtSlot, NONE, immSlot, 0, 0xffff,
+                Short.MIN_VALUE, Short.MAX_VALUE, 0, false);
+    }
+
+    /**
+     * Create an I-format encoder with a 16 bit unsigned immediate, from 0 to
+     * 65535, e.g. ori and lui.
+     * 
+     * @param name The name of the instruction.
+     * @param opCode The operation code.
+     * @param rsSlot The operand slot of the rs register.
+     * @param rtSlot The operand slot of the rt register.
+     * @param immSlot The operand slot of the immediate.
+     * @return The encoder.
+     */
+    public static InstructionEncoder iFormatUnsigned(String name, int opCode, int rsSlot,
+            int rtSlot, int immSlot) {
+        return new InstructionEncoder(name, opCode << 26, rsSlot, rtSlot, NONE, immSlot, 0, 0xffff,
+                0, 0xffff, 0, false);
+    }
+
+    /**
+     * Create an I-format encoder that takes the lower 16 bits of a 32 bit
+     * immediate, e.g. the ori half of li.
+     * 
+     * @param name The name of the instruction.
+     * @param opCode The operation code.
+     * @param rsSlot The operand slot of the rs register.
+     * @param rtSlot The operand slot of the rt register.
+     * @param immSlot The operand slot of the immediate.
+     * @return The encoder.
+     */
+    public static InstructionEncoder iFormatLow(String name, int opCode, int rsSlot, int rtSlot,
+            int immSlot) {
+        return new InstructionEncoder(name, opCode << 26, rsSlot, rtSlot, NONE, immSlot, 0, 0xffff,
+                Integer.MIN_VALUE, Integer.MAX_VALUE, 0, false);
+    }
+
+    /**
+     * Create an I-format encoder that takes the upper 16 bits of a 32 bit
+     * immediate, e.g. the lui half of li.
+     * 
+     * @param name The name of the instruction.
+     * @param opCode The operation code.
+     * @param rsSlot The operand slot of the rs register.
+     * @param rtSlot The operand slot of the rt register.
+     * @param immSlot The operand slot of the immediate.
+     * @return The encoder.
+     */
+    public static InstructionEncoder iFormatHigh(String name, int opCode, int rsSlot, int rtSlot,
+            int immSlot) {
+        return new InstructionEncoder(name, opCode << 26, rsSlot, rtSlot, NONE, immSlot, 16,
+                0xffff, Integer.MIN_VALUE, Integer.MAX_VALUE, 0, false);
+    }
+
+    /**
+     * Create an I-format branch encoder, where the immediate is the word
+     * offset from the next instruction to the label.
+     * 
+     * @param name The name of the instruction.
+     * @param opCode The operation code.
+     * @param rsSlot The operand slot of the rs register.
+     * @param rtSlot The operand slot of the rt register.
+     * @return The encoder.
+     */
+    public static InstructionEncoder branch(String name, int opCode, int rsSlot, int rtSlot) {
+        return new InstructionEncoder(name, opCode << 26, rsSlot, rtSlot, NONE, NONE, 0, 0, 0, 0,
+                0xffff, true);
+    }
+
+    /**
+     * Create an I-format branch encoder that skips the next instruction, used
+     * to branch around a jump when the label is out of reach of a branch.
+     * 
+     * @param name The name of the instruction.
+     * @param opCode The operation code.
+     * @param rsSlot The operand slot of the rs register.
+     * @param rtSlot The operand slot of the rt register.
+     * @return The encoder.
+     */
+    public static InstructionEncoder branchOver(String name, int opCode, int rsSlot, int rtSlot) {
+        return new InstructionEncoder(name, opCode << 26 | 1, rsSlot, rtSlot, NONE, NONE, 0, 0, 0,
+                0, 0, false);
+    }
+
+    /**
+     * Create a J-format encoder, where the 26 bit field is the word address of
+     * the label.
+     * 
+     * @param name The name of the instruction.
+     * @param opCode The operation code.
+     * @return The encoder.
+     */
+    public static InstructionEncoder jFormat(String name, int opCode) {
+        return new InstructionEncoder(name, opCode << 26, NONE, NONE, NONE, NONE, 0, 0, 0, 0,
+                0x3ffffff, false);
+    }
+
+    /**
+     * Encode every field except the label target.
+     * 
+     * @param ops The operand slots. The NONE slot must hold 0.
+     * @return The encoded instruction.
+     * @throws IllegalArgumentException When the immediate is out of range.
+     */
+    public int encode(int[] ops) {
+        int imm = ops[_immSlot];
+        if (Integer.compareUnsigned(imm - _immMin, _immRange) > 0) {
+            throw new IllegalArgumentException(String.format(
+                    "The immediate %d is out of range of %s, %d to %d!", imm, _name, _immMin,
+                    _immMin + _immRange));
+        }
+        return _base | ops[_rsSlot] << 21 | ops[_rtSlot] << 16 | ops[_rdSlot] << 11
+                | (imm >> _immShift) & _immMask;
+    }
+
+    /**
+     * Get the smallest immediate accepted.
+     * 
+     * @return The smallest immediate.
+     */
+    public int getMinImmediate() {
+        return _immMin;
+    }
+
+    /**
+     * Get the largest immediate accepted.
+     * 
+     * @return The largest immediate.
+     */
+    public int getMaxImmediate() {
+        return _immMin + _immRange;
+    }
+
+    /**
+     * Encode the label target field. Instructions without a label target
+     * always encode to 0, so the result can be or'ed in unconditionally.
+     * 
+     * @param target The address of the label.
+     * @param pc The address of the instruction.
+     * @return The encoded label target field.
+     */
+    public int encodeTarget(int target, int pc) {
+        return ((target >> 2) - (_pcRelative & ((pc + 4) >> 2))) & _targetMask;
+    }
+
+    /**
+     * Determine if the label target field can hold a label: a branch offset
+     * must fit in 16 signed bits, and a jump must stay in the 256 MB region of
+     * the next instruction.
+     * 
+     * @param target The address of the label.
+     * @param pc The address of the instruction.
+     * @return True if the label is in reach, or the instruction has no label
+     *         target.
+     */
+    public boolean reaches(int target, int pc) {
+        if (_targetMask == 0) {
+            return true;
+        }
+        if (_pcRelative != 0) {
+            int offset = (target >> 2) - ((pc + 4) >> 2);
+            return offset == (short) offset;
+        }
+        return ((target ^ (pc + 4)) & 0xf0000000) == 0;
+    }
+
+    /**
+     * Determine if the instruction has a label target.
+     * 
+     * @return True if the instruction has a label target.
+     */
+    public boolean hasTarget() {
+        return _targetMask != 0;
+    }
+
+    /**
+     * Get the instruction name.
+     * 
+     * @return The instruction name.
+     */
+    public String getName() {
+        return _name;
+    }
+
+    /**
+     * Get a fingerprint of every field of the encoder, which changes whenever
+     * the encoding it produces changes.
+     * 
+     * @return The fingerprint.
+     */
+    public long fingerprint() {
+        long hash = _name.hashCode();
+        for (int field : new int[] { _base, _rsSlot, _rtSlot, _rdSlot, _immSlot, _immShift,
+            _immMask, _immMin, _immRange, _targetMask, _pcRelative }) {
+            hash = hash * 0x100000001b3L + field;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,232 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Optimization pass that reorders the words of every basic block to hide the
+ * latency of loads and of mult, which a classic 5-stage pipeline stalls on
+ * when the next words use the result. A dependency graph is built from the
+ * registers, HI/LO and memory each word reads and writes, and the words are
+ * list scheduled, picking the ready word with the longest path to the end of
+ * the block. A jump or branch stays at the end of its block, so no address
+ * changes. A block is only changed when the estimate says it gets faster.
+ */
+public class InstructionScheduler {
+    private static final Logger LOGGER = Logger.getLogger(InstructionScheduler.class.getName());
+    /** Cycles from a load to a word that uses the loaded register. */
+    static final int LOAD_LATENCY = 2;
+    /** Cycles from mult to a word that reads HI or LO. */
+    static final int MULT_LATENCY = 5;
+    /** Largest number of words scheduled together, longer blocks are split. */
+    private static final int MAX_WINDOW = 64;
+    private static final long HI_LO = 1L << InstructionWord.HI | 1L << InstructionWord.LO;
+
+    private final List<int[]> _savings = new ArrayList<>();
+    private int _blocks = 0;
+    private int _cyclesSaved = 0;
+
+    /**
+     * Schedule the words of a job.
+     * 
+     * @param context The context of the job, holding the labels and encoded
+     *        words, which are replaced.
+     */
+    public void schedule(AssemblyContext context) {
+        int[] words = context.getWords();
+        int[] lines = context.getLines();
+        boolean[] leaders = DelaySlotFiller.findLeaders(words, context);
+        int start = 0;
+        for (int i = 0; i < words.length; i++) {
+            if (leaders[i] && i > start) {
+                scheduleBlock(words, lines, start, i, false);
+                start = i;
+            }
+            if (InstructionWord.isControlTransfer(words[i])) {
+                scheduleBlock(words, lines, start, i + 1, true);
+                start = i + 1;
+            }
+        }
+        scheduleBlock(words, lines, start, words.length, false);
+        // words only move inside their block, so every address stays
+        context.relocate(words, lines, address -> address);
+    }
+
+    /**
+     * Get the number of blocks that were reordered.
+     * 
+     * @return The number of blocks.
+     */
+    public int getBlocks() {
+        return _blocks;
+    }
+
+    /**
+     * Get the estimated number of cycles saved in every block.
+     * 
+     * @return The estimated number of cycles saved.
+     */
+    public int getCyclesSaved() {
+        return _cyclesSaved;
+    }
+
+    /**
+     * Get the blocks that were reordered, as {address, cycles before, cycles
+     * after} estimates.
+     * 
+     * @return The savings of each block.
+     */
+    public List<int[]> getSavings() {
+        return _savings;
+    }
+
+    /**
+     * Schedule a block, in windows of at most MAX_WINDOW words.
+     * 
+     * @param words The encoded words, which are reordered in place.
+     * @param lines The source lines of the words, reordered along with them.
+     * @param from The index of the first word of the block.
+     * @param to The index after the last word of the block.
+     * @param pinLast Whether the last word is a jump or branch that must stay
+     *        last.
+     */
+    private void scheduleBlock(int[] words, int[] lines, int from, int to, boolean pinLast) {
+        for (int start = from; start < to; start += MAX_WINDOW) {
+            int end = Math.min(to, start + MAX_WINDOW);
+            scheduleWindow(words, lines, start, end, pinLast && end == to);
+        }
+    }
+
+    /**
+     * List schedule a window of a block.
+     * 
+     * @param words The encoded words, which are reordered in place.
+     * @param lines The source lines of the words, reordered along with them.
+     * @param from The index of the first word of the window.
+     * @param to The index after the last word of the window.
+     * @param pinLast Whether the last word must stay last.
+     */
+    private void scheduleWindow(int[] words, int[] lines, int from, int to, boolean pinLast) {
+        int length = to - from;
+        if ((pinLast ? length - 1 : length) < 2) {
+            return;
+        }
+        int[][] latencies = new int[length][length];
+        int[] numOfPreds = new int[length];
+        for (int i = 0; i < length; i++) {
+            for (int j = i + 1; j < length; j++) {
+                latencies[i][j] = latency(words[from + i], words[from + j]);
+                if (latencies[i][j] > 0) {
+                    numOfPreds[j]++;
+                }
+            }
+        }
+        // longest path from each word to the end of the window
+        int[] heights = new int[length];
+        for (int i = length - 1; i >= 0; i--) {
+            for (int j = i + 1; j < length; j++) {
+                if (latencies[i][j] > 0) {
+                    heights[i] = Math.max(heights[i], latencies[i][j] + heights[j]);
+                }
+            }
+        }
+
+        int[] order = new int[length];
+        int[] readyAt = new int[length];
+        boolean[] scheduled = new boolean[length];
+        int cycle = 0;
+        for (int k = 0; k < length; k++) {
+            int best = -1;
+            for (int i = 0; i < length; i++) {
+                if (scheduled[i] || numOfPreds[i] > 0
+                        || pinLast && i == length - 1 && k < length - 1) {
+                    continue;
+                }
+                if (best < 0 || Math.max(readyAt[i], cycle) < Math.max(readyAt[best], cycle)
+                        || Math.max(readyAt[i], cycle) == Math.max(readyAt[best], cycle)
+                                && heights[i] > heights[best]) {
+                    best = i;
+                }
+            }
+            order[k] = best;
+            scheduled[best] = true;
+            int issue = Math.max(readyAt[best], cycle);
+            cycle = issue + 1;
+            for (int j = best + 1; j < length; j++) {
+                if (latencies[best][j] > 0) {
+                    numOfPreds[j]--;
+                    readyAt[j] = Math.max(readyAt[j], issue + latencies[best][j]);
+                }
+            }
+        }
+
+        int[] identity = new int[length];
+        Arrays.setAll(identity, i -> i);
+        int before = estimate(latencies, identity);
+        int after = estimate(latencies, order);
+        if (after >= before) {
+            return;
+        }
+        int[] window = Arrays.copyOfRange(words, from, to);
+        int[] windowLines = Arrays.copyOfRange(lines, from, to);
+        for (int k = 0; k < length; k++) {
+            words[from + k] = window[order[k]];
+            lines[from + k] = windowLines[order[k]];
+        }
+        _blocks++;
+        _cyclesSaved += before - after;
+        _savings.add(new int[] { from << 2, before, after });
+        LOGGER.fine(String.format("Block at %08x: %d cycles instead of %d", from << 2, after,
+                before));
+    }
+
+    /**
+     * Estimate the cycles a window takes in a given order, issuing one word a
+     * cycle and stalling until the results it uses are ready.
+     * 
+     * @param latencies The latency between every pair of words, 0 if they
+     *        are independent.
+     * @param order The order of the words.
+     * @return The estimated number of cycles.
+     */
+    private static int estimate(int[][] latencies, int[] order) {
+        int[] issued = new int[order.length];
+        int cycle = 0;
+        for (int k = 0; k < order.length; k++) {
+            int issue = cycle;
+            for (int p = 0; p < k; p++) {
+                // only the original order has dependencies, from earlier to later
+                if (order[p] < order[k] && latencies[order[p]][order[k]] > 0) {
+                    issue = Math.max(issue, issued[p] + latencies[order[p]][order[k]]);
+                }
+            }
+            issued[k] = issue;
+            cycle = issue + 1;
+        }
+        return cycle;
+    }
+
+    /**
+     * Get the latency between two words, the cycles from the first one issuing
+     * to the second one being able to issue.
+     * 
+     * @param first The word that comes first.
+     * @param second The word that comes second.
+     * @return The latency, or 0 if the words are independent.
+     */
+    private static int latency(int first, int second) {
+        if (!InstructionWord.dependsOn(first, second)) {
+            return 0;
+        }
+        long used = InstructionWord.writes(first) & InstructionWord.reads(second);
+        if ((used & HI_LO) != 0) {
+            return MULT_LATENCY;
+        }
+        if (InstructionWord.isLoad(first) && used != 0) {
+            return LOAD_LATENCY;
+        }
+        return 1;
+    }
+}
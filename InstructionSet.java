@@ -0,0 +1,481 @@
+package main;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The instructions understood by the assembler, compiled into dense arrays.
+ * Each mnemonic, core or pseudo, resolves once to an index. The index gives the
+ * operand syntax of the mnemonic and the encoders of the machine instructions
+ * it assembles to. The instruction set can't be changed once it is built, so a
+ * single instance is shared by every assembly job.
+ */
+public final class InstructionSet {
+    /** Operand syntax: register, register, immediate, e.g. addi $t0, $t1, 4. */
+    public static final int REG_REG_IMM = 0;
+    /** Operand syntax: register, offset(base), e.g. lw $t0, 4($sp). */
+    public static final int REG_OFFSET_BASE = 1;
+    /** Operand syntax: label, e.g. jal fact. */
+    public static final int LABEL = 2;
+    /** Operand syntax: register, e.g. jr $ra. */
+    public static final int REG = 3;
+    /** Operand syntax: register, register, label, e.g. beq $t0, $zero, loop. */
+    public static final int REG_REG_LABEL = 4;
+    /** Operand syntax: register, immediate, e.g. lui $t0, 4. */
+    public static final int REG_IMM = 5;
+    /** Operand syntax: register, register, e.g. mult $t0, $t1. */
+    public static final int REG_REG = 6;
+    /** Operand syntax: register, register, register, e.g. mul $t0, $t1, $t2. */
+    public static final int REG_REG_REG = 7;
+    /** Short form condition: the immediate fits in 16 signed bits. */
+    public static final int FITS_SIGNED = 0;
+    /** Short form condition: the immediate fits in 16 unsigned bits. */
+    public static final int FITS_UNSIGNED = 1;
+    /** Short form condition: the lower 16 bits of the immediate are 0. */
+    public static final int FITS_UPPER = 2;
+
+    /** The MIPS instructions implemented by this project. */
+    public static final InstructionSet MIPS = buildMips();
+
+    private final List<InstructionEncoder> _encoderList = new ArrayList<>();
+    private final Map<String, Integer> _mnemonics = new HashMap<>();
+    private final List<Integer> _syntaxList = new ArrayList<>();
+    private final List<int[]> _stepList = new ArrayList<>();
+    private final Map<Integer, List<int[]>> _shortFormList = new HashMap<>();
+    private final Map<Integer, int[]> _farStepList = new HashMap<>();
+    private InstructionEncoder[] _encoders;
+    private int[] _syntax;
+    private int[][] _steps;
+    private int[][][] _shortForms;
+    private int[][] _shortConditions;
+    private int[][] _farSteps;
+    private boolean[] _variableSize;
+    private byte[][] _names;
+    private int[] _hashTable;
+    private int _numOfCore;
+    private long _version;
+
+    /**
+     * Private constructor, the instruction set is built by buildMips.
+     */
+    private InstructionSet() {
+    }
+
+    /**
+     * Build the MIPS instruction set, first the core instructions and then
+     * the pseudo instructions made out of them.
+     * 
+     * @return The instruction set.
+     */
+    private static InstructionSet buildMips() {
+        InstructionSet set = new InstructionSet();
+        set.buildCoreInstructions();
+        set._numOfCore = set._syntaxList.size();
+        set.buildPseudoInstructions();
+        set.compile();
+        return set;
+    }
+
+    /**
+     * Add the core instructions. Operand slots are numbered in the order the
+     * operands are written, except lw and sw which put the base register in
+     * slot 1 and the offset in slot 2.
+     */
+    private void buildCoreInstructions() {
+        final int none = InstructionEncoder.NONE;
+        // add immediate instruction
+        addMnemonic("addi", REG_REG_IMM, addEncoder(InstructionEncoder.iFormat("addi", 8, 1, 0, 2)));
+        // load word instruction
+        addMnemonic("lw", REG_OFFSET_BASE,
+                addEncoder(InstructionEncoder.iFormat("lw", 0x23, 1, 0, 2)));
+        // store word instruction
+        addMnemonic("sw", REG_OFFSET_BASE,
+                addEncoder(InstructionEncoder.iFormat("sw", 0x2b, 1, 0, 2)));
+        // jump and link instruction
+        addMnemonic("jal", LABEL, addEncoder(InstructionEncoder.jFormat("jal", 3)));
+        // jump register instruction
+        addMnemonic("jr", REG, addEncoder(InstructionEncoder.rFormat("jr", 8, 0, none, none)));
+        // set less than immediate instruction
+        addMnemonic("slti", REG_REG_IMM,
+                addEncoder(InstructionEncoder.iFormat("slti", 0xa, 1, 0, 2)));
+        // branch on equal instruction, when the label is out of reach of the
+        // 16 bit offset it becomes bne over a jump to the label
+        addMnemonic("beq", REG_REG_LABEL, addEncoder(InstructionEncoder.branch("beq", 4, 0, 1)));
+        addFarForm("beq", addEncoder(InstructionEncoder.branchOver("bne", 5, 0, 1)),
+                addEncoder(InstructionEncoder.jFormat("j", 2)));
+        // load upper immediate instruction
+        addMnemonic("lui", REG_IMM,
+                addEncoder(InstructionEncoder.iFormatUnsigned("lui", 0xf, none, 0, 1)));
+        // or immediate instruction
+        addMnemonic("ori", REG_REG_IMM,
+                addEncoder(InstructionEncoder.iFormatUnsigned("ori", 0xd, 1, 0, 2)));
+        // multiply instruction
+        addMnemonic("mult", REG_REG,
+                addEncoder(InstructionEncoder.rFormat("mult", 0x18, 0, 1, none)));
+        // move from lo instruction
+        addMnemonic("mflo", REG, addEncoder(InstructionEncoder.rFormat("mflo", 0x12, none, none, 0)));
+    }
+
+    /**
+     * Add the pseudo instructions. Each one gets its own encoders, so the
+     * operand slots can be mapped to the fields the expansion needs.
+     */
+    private void buildPseudoInstructions() {
+        final int none = InstructionEncoder.NONE;
+        // move instruction, addi rt, rs, 0
+        addMnemonic("move", REG_REG,
+                addEncoder(InstructionEncoder.iFormat("addi", 8, 1, 0, none)));
+        // load immediate instruction, lui the upper half then ori the lower half
+        addMnemonic("li", REG_IMM,
+                addEncoder(InstructionEncoder.iFormatHigh("lui", 0xf, none, 0, 1)),
+                addEncoder(InstructionEncoder.iFormatLow("ori", 0xd, 0, 0, 1)));
+        // a single instruction when the immediate allows, addi can't overflow
+        // when adding to $zero
+        addShortForm("li", FITS_SIGNED,
+                addEncoder(InstructionEncoder.iFormat("addi", 8, none, 0, 1)));
+        addShortForm("li", FITS_UNSIGNED,
+                addEncoder(InstructionEncoder.iFormatUnsigned("ori", 0xd, none, 0, 1)));
+        addShortForm("li", FITS_UPPER,
+                addEncoder(InstructionEncoder.iFormatHigh("lui", 0xf, none, 0, 1)));
+        // multiply instruction, mult rs, rt then mflo rd
+        addMnemonic("mul", REG_REG_REG,
+                addEncoder(InstructionEncoder.rFormat("mult", 0x18, 1, 2, none)),
+                addEncoder(InstructionEncoder.rFormat("mflo", 0x12, none, none, 0)));
+    }
+
+    /**
+     * Add an encoder to the table.
+     * 
+     * @param encoder The encoder to add.
+     * @return The index of the encoder.
+     */
+    private int addEncoder(InstructionEncoder encoder) {
+        _encoderList.add(encoder);
+        return _encoderList.size() - 1;
+    }
+
+    /**
+     * Add a mnemonic to the table.
+     * 
+     * @param mnemonic The mnemonic.
+     * @param syntax The operand syntax.
+     * @param steps The indexes of the encoders the mnemonic assembles to.
+     */
+    private void addMnemonic(String mnemonic, int syntax, int... steps) {
+        _mnemonics.put(mnemonic, _syntaxList.size());
+        _syntaxList.add(syntax);
+        _stepList.add(steps);
+    }
+
+    /**
+     * Add a shorter form of a mnemonic, used when its immediate allows.
+     * Forms are tried in the order they are added. The immediate is the last
+     * operand, in slot 1.
+     * 
+     * @param mnemonic The mnemonic, which must already be added.
+     * @param condition The condition on the immediate, e.g. FITS_SIGNED.
+     * @param steps The indexes of the encoders of the form.
+     */
+    private void addShortForm(String mnemonic, int condition, int... steps) {
+        int[] form = new int[steps.length + 1];
+        form[0] = condition;
+        System.arraycopy(steps, 0, form, 1, steps.length);
+        _shortFormList.computeIfAbsent(_mnemonics.get(mnemonic), m -> new ArrayList<>()).add(form);
+    }
+
+    /**
+     * Add the far form of a branch, used when its label is out of reach.
+     * 
+     * @param mnemonic The mnemonic, which must already be added.
+     * @param steps The indexes of the encoders of the form.
+     */
+    private void addFarForm(String mnemonic, int... steps) {
+        _farStepList.put(_mnemonics.get(mnemonic), steps);
+    }
+
+    /**
+     * Copy the tables into dense arrays. The lists used while building are
+     * emptied, only the arrays are read afterwards.
+     */
+    private void compile() {
+        _encoders = _encoderList.toArray(new InstructionEncoder[0]);
+        _syntax = new int[_syntaxList.size()];
+        for (int i = 0; i < _syntax.length; i++) {
+            _syntax[i] = _syntaxList.get(i);
+        }
+        _steps = _stepList.toArray(new int[0][]);
+        _shortForms = new int[_syntax.length][][];
+        _shortConditions = new int[_syntax.length][];
+        _farSteps = new int[_syntax.length][];
+        _variableSize = new boolean[_syntax.length];
+        for (int i = 0; i < _syntax.length; i++) {
+            List<int[]> forms = _shortFormList.getOrDefault(i, new ArrayList<>());
+            _shortForms[i] = new int[forms.size()][];
+            _shortConditions[i] = new int[forms.size()];
+            for (int j = 0; j < forms.size(); j++) {
+                int[] form = forms.get(j);
+                _shortConditions[i][j] = form[0];
+                _shortForms[i][j] = Arrays.copyOfRange(form, 1, form.length);
+            }
+            _farSteps[i] = _farStepList.get(i);
+            _variableSize[i] = _shortForms[i].length > 0 || _farSteps[i] != null;
+        }
+        // open addressing table of mnemonic indexes, for lookups straight
+        // from the bytes of the source
+        _names = new byte[_syntax.length][];
+        _hashTable = new int[Integer.highestOneBit(_syntax.length * 4)];
+        Arrays.fill(_hashTable, -1);
+        for (Map.Entry<String, Integer> entry : _mnemonics.entrySet()) {
+            byte[] name = entry.getKey().getBytes(StandardCharsets.ISO_8859_1);
+            _names[entry.getValue()] = name;
+            int slot = hash(name, 0, name.length) & (_hashTable.length - 1);
+            while (_hashTable[slot] >= 0) {
+                slot = (slot + 1) & (_hashTable.length - 1);
+            }
+            _hashTable[slot] = entry.getValue();
+        }
+        // fingerprint of the tables, so anything derived from them can tell
+        // when they change
+        long version = _numOfCore;
+        for (int i = 0; i < _syntax.length; i++) {
+            version = version * 31 + Arrays.hashCode(_names[i]);
+            version = version * 31 + _syntax[i];
+            for (int step : _steps[i]) {
+                version = version * 0x100000001b3L + _encoders[step].fingerprint();
+            }
+            for (int j = 0; j < _shortForms[i].length; j++) {
+                version = version * 31 + _shortConditions[i][j];
+                version = version * 31 + Arrays.hashCode(_shortForms[i][j]);
+            }
+            if (_farSteps[i] != null) {
+                version = version * 31 + Arrays.hashCode(_farSteps[i]);
+            }
+        }
+        // every encoder, including those only used by short and far forms
+        for (InstructionEncoder encoder : _encoders) {
+            version = version * 0x100000001b3L + encoder.fingerprint();
+        }
+        _version = version;
+        _encoderList.clear();
+        _syntaxList.clear();
+        _stepList.clear();
+        _shortFormList.clear();
+        _farStepList.clear();
+    }
+
+    /**
+     * Hash a mnemonic.
+     * 
+     * @param bytes The bytes holding the mnemonic.
+     * @param start The position of the first byte.
+     * @param end The position after the last byte.
+     * @return The hash.
+     */
+    private static int hash(byte[] bytes, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = hash * 31 + bytes[i];
+        }
+        return hash ^ (hash >>> 7);
+    }
+
+    /**
+     * Resolve a mnemonic to its index.
+     * 
+     * @param mnemonic The mnemonic.
+     * @return The index of the mnemonic.
+     * @throws IllegalArgumentException When the instruction is not found.
+     */
+    public int resolve(String mnemonic) {
+        Integer index = _mnemonics.get(mnemonic);
+        if (index == null) {
+            throw new IllegalArgumentException(
+                    "The instruction was not found or is not implemented in this project!");
+        }
+        return index;
+    }
+
+    /**
+     * Resolve a mnemonic to its index without building a String.
+     * 
+     * @param bytes The bytes holding the mnemonic.
+     * @param start The position of the first byte.
+     * @param end The position after the last byte.
+     * @return The index of the mnemonic.
+     * @throws IllegalArgumentException When the instruction is not found.
+     */
+    public int resolve(byte[] bytes, int start, int end) {
+        int slot = hash(bytes, start, end) & (_hashTable.length - 1);
+        while (_hashTable[slot] >= 0) {
+            int index = _hashTable[slot];
+            if (Arrays.equals(_names[index], 0, _names[index].length, bytes, start, end)) {
+                return index;
+            }
+            slot = (slot + 1) & (_hashTable.length - 1);
+        }
+        throw new IllegalArgumentException(
+                "The instruction was not found or is not implemented in this project!");
+    }
+
+    /**
+     * Get the operand syntax of a mnemonic.
+     * 
+     * @param mnemonic The index of the mnemonic.
+     * @return The operand syntax.
+     */
+    public int getSyntax(int mnemonic) {
+        return _syntax[mnemonic];
+    }
+
+    /**
+     * Get the encoders a mnemonic assembles to in its general form, which
+     * takes any immediate.
+     * 
+     * @param mnemonic The index of the mnemonic.
+     * @return The indexes of the encoders, in order. Do not modify.
+     */
+    public int[] getSteps(int mnemonic) {
+        return _steps[mnemonic];
+    }
+
+    /**
+     * Get the encoders of the shortest form of a mnemonic that can take its
+     * operands, e.g. a single addi for li of a small immediate.
+     * 
+     * @param mnemonic The index of the mnemonic.
+     * @param slots The operand slots.
+     * @return The indexes of the encoders, in order. Do not modify.
+     */
+    public int[] getSteps(int mnemonic, int[] slots) {
+        int[][] forms = _shortForms[mnemonic];
+        for (int i = 0; i < forms.length; i++) {
+            if (fits(_shortConditions[mnemonic][i], slots[1])) {
+                return forms[i];
+            }
+        }
+        return _steps[mnemonic];
+    }
+
+    /**
+     * Get the encoders of the far form of a branch, which reaches any label.
+     * 
+     * @param mnemonic The index of the mnemonic.
+     * @return The indexes of the encoders, in order, or null if the mnemonic
+     *         has no far form. Do not modify.
+     */
+    public int[] getFarSteps(int mnemonic) {
+        return _farSteps[mnemonic];
+    }
+
+    /**
+     * Determine if the number of words of a mnemonic depends on its operands
+     * or on the distance to its label.
+     * 
+     * @param mnemonic The index of the mnemonic.
+     * @return True if the mnemonic has short or far forms.
+     */
+    public boolean isVariableSize(int mnemonic) {
+        return _variableSize[mnemonic];
+    }
+
+    /**
+     * Determine if every label target of a form can be encoded, e.g. that a
+     * branch offset fits in 16 bits.
+     * 
+     * @param steps The indexes of the encoders of the form.
+     * @param target The address of the label.
+     * @param pc The address of the first word of the form.
+     * @return True if the label is in reach.
+     */
+    public boolean reaches(int[] steps, int target, int pc) {
+        for (int i = 0; i < steps.length; i++) {
+            if (!_encoders[steps[i]].reaches(target, pc + 4 * i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check an immediate against a short form condition.
+     * 
+     * @param condition The condition, e.g. FITS_SIGNED.
+     * @param imm The immediate.
+     * @return True if the immediate meets the condition.
+     */
+    private static boolean fits(int condition, int imm) {
+        switch (condition) {
+            case FITS_SIGNED:
+                return imm == (short) imm;
+            case FITS_UNSIGNED:
+                return (imm & 0xffff0000) == 0;
+            default:
+                return (imm & 0xffff) == 0;
+        }
+    }
+
+    /**
+     * Get an encoder.
+     * 
+     * @param index The index of the encoder.
+     * @return The encoder.
+     */
+    public InstructionEncoder getEncoder(int index) {
+        return _encoders[index];
+    }
+
+    /**
+     * Get the version of the instruction tables, a fingerprint that changes
+     * whenever a mnemonic or its encoding changes.
+     * 
+     * @return The version.
+     */
+    public long getVersion() {
+        return _version;
+    }
+
+    /**
+     * Get the number of mnemonics, which are indexed from 0.
+     * 
+     * @return The number of mnemonics.
+     */
+    public int getNumOfMnemonics() {
+        return _names.length;
+    }
+
+    /**
+     * Get the name of a mnemonic.
+     * 
+     * @param mnemonic The index of the mnemonic.
+     * @return The name of the mnemonic.
+     */
+    public String getMnemonic(int mnemonic) {
+        return new String(_names[mnemonic], StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Check if a mnemonic is a pseudo instruction, which expands to other
+     * instructions.
+     * 
+     * @param mnemonic The index of the mnemonic.
+     * @return True if the mnemonic is a pseudo instruction.
+     */
+    public boolean isPseudo(int mnemonic) {
+        return mnemonic >= _numOfCore;
+    }
+
+    /**
+     * Get the mnemonics in the instruction set.
+     * 
+     * @return The mnemonics.
+     */
+    public String[] getMnemonics() {
+        String[] names = _mnemonics.keySet().toArray(new String[0]);
+        Arrays.sort(names);
+        return names;
+    }
+}
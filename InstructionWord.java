@@ -0,0 +1,272 @@
+package main;
+
+/**
+ * Decodes the fields of encoded MIPS words, for passes that work on the
+ * assembled program instead of the source. Register use is returned as a bit
+ * mask of register numbers, with HI, LO and memory as extra bits, so
+ * dependencies between two words are a couple of ands.
+ */
+public final class InstructionWord {
+    /** Bit of the HI register in a register mask. */
+    public static final int HI = 32;
+    /** Bit of the LO register in a register mask. */
+    public static final int LO = 33;
+    /** Bit of memory in a register mask, read by loads and written by stores. */
+    public static final int MEMORY = 34;
+    /** Register mask of every register, for words that can't be decoded. */
+    public static final long ALL = (1L << (MEMORY + 1)) - 1;
+    /** The word that does nothing, sll $zero, $zero, 0. */
+    public static final int NOP = 0;
+
+    static final int SPECIAL = 0;
+    static final int J = 2;
+    static final int JAL = 3;
+    static final int BEQ = 4;
+    static final int BNE = 5;
+    static final int ADDI = 8;
+    static final int ADDIU = 9;
+    static final int SLTI = 0xa;
+    static final int ORI = 0xd;
+    static final int LUI = 0xf;
+    static final int LW = 0x23;
+    static final int SW = 0x2b;
+    static final int FUNCT_JR = 8;
+    static final int FUNCT_JALR = 9;
+    static final int FUNCT_MFHI = 0x10;
+    static final int FUNCT_MFLO = 0x12;
+    static final int FUNCT_MULT = 0x18;
+
+    /**
+     * Private constructor, only static helpers.
+     */
+    private InstructionWord() {
+    }
+
+    /**
+     * Get the operation code.
+     * 
+     * @param word The encoded word.
+     * @return The operation code.
+     */
+    public static int opCode(int word) {
+        return word >>> 26;
+    }
+
+    /**
+     * Get the rs register.
+     * 
+     * @param word The encoded word.
+     * @return The rs register number.
+     */
+    public static int rs(int word) {
+        return (word >>> 21) & 0x1f;
+    }
+
+    /**
+     * Get the rt register.
+     * 
+     * @param word The encoded word.
+     * @return The rt register number.
+     */
+    public static int rt(int word) {
+        return (word >>> 16) & 0x1f;
+    }
+
+    /**
+     * Get the rd register.
+     * 
+     * @param word The encoded word.
+     * @return The rd register number.
+     */
+    public static int rd(int word) {
+        return (word >>> 11) & 0x1f;
+    }
+
+    /**
+     * Get the function code of an R-format word.
+     * 
+     * @param word The encoded word.
+     * @return The function code.
+     */
+    public static int funcCode(int word) {
+        return word & 0x3f;
+    }
+
+    /**
+     * Get the registers a word reads.
+     * 
+     * @param word The encoded word.
+     * @return The register mask.
+     */
+    public static long reads(int word) {
+        switch (opCode(word)) {
+            case SPECIAL:
+                switch (funcCode(word)) {
+                    case FUNCT_JR:
+                    case FUNCT_JALR:
+                        return bit(rs(word));
+                    case FUNCT_MFHI:
+                        return 1L << HI;
+                    case FUNCT_MFLO:
+                        return 1L << LO;
+                    default:
+                        return bit(rs(word)) | bit(rt(word));
+                }
+            case J:
+            case JAL:
+            case LUI:
+                return 0;
+            case BEQ:
+            case BNE:
+                return bit(rs(word)) | bit(rt(word));
+            case ADDI:
+            case ADDIU:
+            case SLTI:
+            case ORI:
+                return bit(rs(word));
+            case LW:
+                return bit(rs(word)) | 1L << MEMORY;
+            case SW:
+                return bit(rs(word)) | bit(rt(word));
+            default:
+                return ALL;
+        }
+    }
+
+    /**
+     * Get the registers a word writes. Writes to $zero are dropped.
+     * 
+     * @param word The encoded word.
+     * @return The register mask.
+     */
+    public static long writes(int word) {
+        switch (opCode(word)) {
+            case SPECIAL:
+                switch (funcCode(word)) {
+                    case FUNCT_JR:
+                        return 0;
+                    case FUNCT_MULT:
+                        return 1L << HI | 1L << LO;
+                    default:
+                        return bit(rd(word));
+                }
+            case J:
+            case BEQ:
+            case BNE:
+                return 0;
+            case JAL:
+                return 1L << 31;
+            case ADDI:
+            case ADDIU:
+            case SLTI:
+            case ORI:
+            case LUI:
+            case LW:
+                return bit(rt(word));
+            case SW:
+                return 1L << MEMORY;
+            default:
+                return ALL;
+        }
+    }
+
+    /**
+     * Determine if two words depend on each other, so their order can't be
+     * swapped: one writes what the other reads or writes.
+     * 
+     * @param first The word that comes first.
+     * @param second The word that comes second.
+     * @return True if the words depend on each other.
+     */
+    public static boolean dependsOn(int first, int second) {
+        long firstWrites = writes(first);
+        return (firstWrites & (reads(second) | writes(second))) != 0
+                || (reads(first) & writes(second)) != 0;
+    }
+
+    /**
+     * Determine if a word loads from memory.
+     * 
+     * @param word The encoded word.
+     * @return True for a load.
+     */
+    public static boolean isLoad(int word) {
+        return opCode(word) == LW;
+    }
+
+    /**
+     * Determine if a word is a jump or branch, which has a delay slot.
+     * 
+     * @param word The encoded word.
+     * @return True for a jump or branch.
+     */
+    public static boolean isControlTransfer(int word) {
+        int opCode = opCode(word);
+        return opCode == J || opCode == JAL || opCode == BEQ || opCode == BNE
+                || opCode == SPECIAL
+                        && (funcCode(word) == FUNCT_JR || funcCode(word) == FUNCT_JALR);
+    }
+
+    /**
+     * Determine if a word has a label target, a jump or branch that doesn't
+     * go through a register.
+     * 
+     * @param word The encoded word.
+     * @return True if the word has a label target.
+     */
+    public static boolean hasTarget(int word) {
+        int opCode = opCode(word);
+        return opCode == J || opCode == JAL || opCode == BEQ || opCode == BNE;
+    }
+
+    /**
+     * Get the label target of a jump or branch.
+     * 
+     * @param word The encoded word, which must have a label target.
+     * @param pc The address of the word.
+     * @return The address of the label.
+     */
+    public static int getTarget(int word, int pc) {
+        int opCode = opCode(word);
+        if (opCode == J || opCode == JAL) {
+            return ((pc + 4) & 0xf0000000) | (word & 0x3ffffff) << 2;
+        }
+        return pc + 4 + ((short) word << 2);
+    }
+
+    /**
+     * Encode a jump or branch again with another label target.
+     * 
+     * @param word The encoded word, which must have a label target.
+     * @param pc The address of the word.
+     * @param target The address of the label.
+     * @return The encoded word.
+     * @throws IllegalArgumentException When the label is out of reach.
+     */
+    public static int setTarget(int word, int pc, int target) {
+        int opCode = opCode(word);
+        if (opCode == J || opCode == JAL) {
+            if (((target ^ (pc + 4)) & 0xf0000000) != 0) {
+                throw new IllegalArgumentException(
+                        String.format("The jump at %08x is out of reach of %08x!", pc, target));
+            }
+            return (word & 0xfc000000) | ((target >>> 2) & 0x3ffffff);
+        }
+        int offset = (target - (pc + 4)) >> 2;
+        if (offset != (short) offset) {
+            throw new IllegalArgumentException(
+                    String.format("The branch at %08x is out of reach of %08x!", pc, target));
+        }
+        return (word & 0xffff0000) | (offset & 0xffff);
+    }
+
+    /**
+     * Get the mask bit of a general purpose register, none for $zero.
+     * 
+     * @param reg The register number.
+     * @return The register mask.
+     */
+    private static long bit(int reg) {
+        return (1L << reg) & ~1L;
+    }
+}
@@ -0,0 +1,426 @@
+package main;
+
+import java.util.Arrays;
+
+/**
+ * Runs assembled programs by executing the encoded words directly. The state
+ * is a register file of 32 ints plus HI and LO, and the words are decoded from
+ * their opcode and function fields in a single switch, so the loop does no
+ * allocation and no lookups. The program is loaded at address 0 and its words
+ * are kept apart from the data memory.
+ * <p>
+ * Programs start with $sp at {@link #STACK_TOP} and $ra at
+ * {@link #HALT_ADDRESS}, so returning from the entry point stops the run.
+ * Jumps and branches take effect right away, the way the assembler lays out
+ * the words, unless delay slots are turned on for words that went through the
+ * -O passes, in which case the word after every jump or branch runs first.
+ * <p>
+ * With a compile threshold set, the run is tiered: the interpreter counts how
+ * often each basic block is entered, and a block entered that many times is
+ * translated into a hidden class by {@link BlockCompiler}. The translated
+ * blocks are kept in a dispatch cache indexed by address, and run one after
+ * the other for as long as the next block is in the cache. Everything else,
+ * and the last words of a run that has almost used up its budget, is still
+ * interpreted.
+ */
+public class Interpreter {
+    /** Address that stops the run when jumped to, $ra starts out there. */
+    public static final int HALT_ADDRESS = 0xfffffff0;
+    /** Address of the top word of the stack, $sp starts out there. */
+    public static final int STACK_TOP = 0x7ffffffc;
+    /** Entries of a basic block after which it is translated, in tiered runs. */
+    public static final int DEFAULT_COMPILE_THRESHOLD = 1000;
+    /** Number of the stack pointer register. */
+    static final int SP = 29;
+    /** Number of the return address register. */
+    static final int RA = 31;
+    /**
+     * Index in the register array, after HI and LO, that a failing translated
+     * block leaves the index of the failing word in.
+     */
+    static final int FAILED = InstructionWord.LO + 1;
+    /** Target of a word that doesn't jump, an address no word can be at. */
+    private static final int NO_JUMP = 1;
+
+    private final int[] _code;
+    private final Memory _memory;
+    // the registers, then HI and LO
+    private final int[] _regs = new int[FAILED + 1];
+    private int _pc = 0;
+    private int _next = 4;
+    private boolean _inSlot = false;
+    private boolean _delaySlots = false;
+    private int _compileThreshold = 0;
+    private ExecutionListener _listener = null;
+    private BlockCompiler _compiler = null;
+    private int[] _entries = null;
+    private CompiledBlock[] _blocks = null;
+    private int[] _blockLengths = null;
+    private boolean _halted = false;
+    private long _executed = 0;
+
+    /**
+     * Constructor that accepts the encoded words of the program and the data
+     * memory. The program starts at address 0.
+     * 
+     * @param code The encoded words, loaded at address 0.
+     * @param memory The data memory.
+     */
+    public Interpreter(int[] code, Memory memory) {
+        _code = code;
+        _memory = memory;
+        reset(0);
+    }
+
+    /**
+     * Set whether every jump and branch has a delay slot, as it does in words
+     * that went through the -O passes.
+     * 
+     * @param delaySlots Whether the word after a jump or branch runs first.
+     */
+    public void setDelaySlots(boolean delaySlots) {
+        _delaySlots = delaySlots;
+        setCompileThreshold(_compileThreshold);
+    }
+
+    /**
+     * Set a listener that is told about every word run, for profiling.
+     * Translated blocks are not run while there is a listener.
+     * 
+     * @param listener The listener, or null for none.
+     */
+    public void setListener(ExecutionListener listener) {
+        _listener = listener;
+    }
+
+    /**
+     * Set how many times a basic block is entered before it is translated to
+     * bytecode. Blocks translated before are dropped.
+     * 
+     * @param compileThreshold The number of entries, or 0 to only interpret.
+     */
+    public void setCompileThreshold(int compileThreshold) {
+        _compileThreshold = compileThreshold;
+        if (compileThreshold > 0) {
+            _compiler = new BlockCompiler(_code, _delaySlots);
+            _entries = new int[_code.length];
+            _blocks = new CompiledBlock[_code.length];
+            _blockLengths = new int[_code.length];
+        }
+        else {
+            _compiler = null;
+            _entries = null;
+            _blocks = null;
+            _blockLengths = null;
+        }
+    }
+
+    /**
+     * Clear the registers and get ready to run from an entry point. The data
+     * memory and the translated blocks are left as they are.
+     * 
+     * @param entry The address of the first word to run.
+     */
+    public void reset(int entry) {
+        Arrays.fill(_regs, 0);
+        _regs[SP] = STACK_TOP;
+        _regs[RA] = HALT_ADDRESS;
+        _pc = entry;
+        _next = entry + 4;
+        _inSlot = false;
+        _halted = false;
+        _executed = 0;
+    }
+
+    /**
+     * Run until the program halts or the given number of words has been run.
+     * Calling it again goes on from where the last call stopped.
+     * 
+     * @param maxInstructions The most words to run.
+     * @return The number of words run.
+     * @throws IllegalStateException When the program runs an unknown word,
+     *         jumps outside the program, overflows in addi, or accesses
+     *         memory it has no word at. The state is left at the failing
+     *         word.
+     */
+    public long run(long maxInstructions) {
+        final int[] code = _code;
+        final int[] r = _regs;
+        final Memory memory = _memory;
+        final boolean delaySlots = _delaySlots;
+        final ExecutionListener listener = _listener;
+        // a listener has to see every word
+        final CompiledBlock[] blocks = listener == null ? _blocks : null;
+        // the return address is after the delay slot when there is one
+        final int link = delaySlots ? 4 : 0;
+        int pc = _pc;
+        int next = _next;
+        boolean inSlot = _inSlot;
+        long count = 0;
+        try {
+            while (count < maxInstructions) {
+                int index = pc >>> 2;
+                if (index >= code.length) {
+                    if (pc == HALT_ADDRESS) {
+                        _halted = true;
+                        break;
+                    }
+                    throw new IllegalStateException(
+                            String.format("There is no word to run at %08x!", pc));
+                }
+                int word = code[index];
+                int rs = (word >>> 21) & 0x1f;
+                int rt = (word >>> 16) & 0x1f;
+                int rd = (word >>> 11) & 0x1f;
+                int jump = NO_JUMP;
+                // what lw or sw accesses, before rt is written
+                int address = listener == null ? 0 : r[rs] + (short) word;
+                switch (word >>> 26) {
+                    case InstructionWord.SPECIAL:
+                        switch (word & 0x3f) {
+                            case 0: // sll
+                                r[rd] = r[rt] << ((word >>> 6) & 0x1f);
+                                break;
+                            case InstructionWord.FUNCT_JR:
+                                jump = r[rs];
+                                break;
+                            case InstructionWord.FUNCT_JALR:
+                                jump = r[rs];
+                                r[rd] = next + link;
+                                break;
+                            case InstructionWord.FUNCT_MFHI:
+                                r[rd] = r[InstructionWord.HI];
+                                break;
+                            case InstructionWord.FUNCT_MFLO:
+                                r[rd] = r[InstructionWord.LO];
+                                break;
+                            case InstructionWord.FUNCT_MULT:
+                                long product = (long) r[rs] * r[rt];
+                                r[InstructionWord.HI] = (int) (product >>> 32);
+                                r[InstructionWord.LO] = (int) product;
+                                break;
+                            default:
+                                throw unknown(word, pc);
+                        }
+                        break;
+                    case InstructionWord.J:
+                        jump = (next & 0xf0000000) | (word & 0x3ffffff) << 2;
+                        break;
+                    case InstructionWord.JAL:
+                        jump = (next & 0xf0000000) | (word & 0x3ffffff) << 2;
+                        r[RA] = next + link;
+                        break;
+                    case InstructionWord.BEQ:
+                        // a branch not taken goes on after its delay slot
+                        jump = r[rs] == r[rt] ? pc + 4 + ((short) word << 2) : next + link;
+                        break;
+                    case InstructionWord.BNE:
+                        jump = r[rs] != r[rt] ? pc + 4 + ((short) word << 2) : next + link;
+                        break;
+                    case InstructionWord.ADDI: {
+                        int a = r[rs];
+                        int sum = a + (short) word;
+                        if (((a ^ sum) & ((short) word ^ sum)) < 0) {
+                            throw overflow(pc);
+                        }
+                        r[rt] = sum;
+                        break;
+                    }
+                    case InstructionWord.ADDIU:
+                        r[rt] = r[rs] + (short) word;
+                        break;
+                    case InstructionWord.SLTI:
+                        r[rt] = r[rs] < (short) word ? 1 : 0;
+                        break;
+                    case InstructionWord.ORI:
+                        r[rt] = r[rs] | (word & 0xffff);
+                        break;
+                    case InstructionWord.LUI:
+                        r[rt] = word << 16;
+                        break;
+                    case InstructionWord.LW:
+                        r[rt] = memory.loadWord(r[rs] + (short) word);
+                        break;
+                    case InstructionWord.SW:
+                        memory.storeWord(r[rs] + (short) word, r[rt]);
+                        break;
+                    default:
+                        throw unknown(word, pc);
+                }
+                r[0] = 0;
+                count++;
+                if (listener != null) {
+                    listener.executed(pc, word, address, jump != NO_JUMP && jump != next + link);
+                }
+                // whether the next word starts a block, the one after a jump
+                // or branch, or after its delay slot
+                boolean entry;
+                if (delaySlots) {
+                    entry = inSlot;
+                    inSlot = jump != NO_JUMP;
+                    pc = next;
+                    next = inSlot ? jump : next + 4;
+                }
+                else {
+                    entry = jump != NO_JUMP;
+                    pc = entry ? jump : next;
+                    next = pc + 4;
+                }
+                if (!entry || inSlot || blocks == null) {
+                    continue;
+                }
+                // run translated blocks for as long as the next one is there
+                int block = pc >>> 2;
+                while (block < blocks.length) {
+                    if (blocks[block] == null) {
+                        if (++_entries[block] != _compileThreshold) {
+                            break;
+                        }
+                        _blockLengths[block] = _compiler.measure(block);
+                        if (_blockLengths[block] == 0) {
+                            break;
+                        }
+                        blocks[block] = _compiler.compile(block, _blockLengths[block]);
+                        if (blocks[block] == null) {
+                            break;
+                        }
+                    }
+                    if (maxInstructions - count < _blockLengths[block]) {
+                        break;
+                    }
+                    try {
+                        pc = blocks[block].run(r, memory);
+                    }
+                    catch (RuntimeException ex) {
+                        pc = (block + r[FAILED]) << 2;
+                        next = pc + 4;
+                        count += r[FAILED];
+                        throw ex instanceof ArithmeticException ? overflow(pc) : ex;
+                    }
+                    next = pc + 4;
+                    count += _blockLengths[block];
+                    block = pc >>> 2;
+                }
+            }
+            // the last word allowed may have returned to the halt address
+            if (pc == HALT_ADDRESS) {
+                _halted = true;
+            }
+        }
+        finally {
+            _pc = pc;
+            _next = next;
+            _inSlot = inSlot;
+            _executed += count;
+        }
+        return count;
+    }
+
+    /**
+     * Determine if the program has returned to {@link #HALT_ADDRESS}.
+     * 
+     * @return True if the program halted.
+     */
+    public boolean isHalted() {
+        return _halted;
+    }
+
+    /**
+     * Get the number of words run since the last reset.
+     * 
+     * @return The number of words run.
+     */
+    public long getExecuted() {
+        return _executed;
+    }
+
+    /**
+     * Get the address of the next word to run.
+     * 
+     * @return The address.
+     */
+    public int getPc() {
+        return _pc;
+    }
+
+    /**
+     * Get the value of a register.
+     * 
+     * @param reg The register number.
+     * @return The value.
+     */
+    public int getRegister(int reg) {
+        return _regs[reg];
+    }
+
+    /**
+     * Set the value of a register, such as an argument before the run.
+     * Writes to $zero are dropped.
+     * 
+     * @param reg The register number.
+     * @param value The value.
+     */
+    public void setRegister(int reg, int value) {
+        if (reg != 0) {
+            _regs[reg] = value;
+        }
+    }
+
+    /**
+     * Get the value of the HI register.
+     * 
+     * @return The value.
+     */
+    public int getHi() {
+        return _regs[InstructionWord.HI];
+    }
+
+    /**
+     * Get the value of the LO register.
+     * 
+     * @return The value.
+     */
+    public int getLo() {
+        return _regs[InstructionWord.LO];
+    }
+
+    /**
+     * Get the data memory.
+     * 
+     * @return The memory.
+     */
+    public Memory getMemory() {
+        return _memory;
+    }
+
+    /**
+     * Get the number of blocks translated to bytecode.
+     * 
+     * @return The number of blocks.
+     */
+    public int getCompiledBlocks() {
+        return _compiler == null ? 0 : _compiler.getCompiled();
+    }
+
+    /**
+     * Get the error for an addi that overflows.
+     * 
+     * @param pc The address of the addi.
+     * @return The error.
+     */
+    private static IllegalStateException overflow(int pc) {
+        return new IllegalStateException(String.format("The addi at %08x overflows!", pc));
+    }
+
+    /**
+     * Get the error for a word that can't be run.
+     * 
+     * @param word The encoded word.
+     * @param pc The address of the word.
+     * @return The error.
+     */
+    private static IllegalStateException unknown(int word, int pc) {
+        return new IllegalStateException(
+                String.format("Unknown instruction %08x at %08x!", word, pc));
+    }
+}
@@ -0,0 +1,160 @@
+package main;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Benchmark of the {@link Interpreter} on the recursive fact function of
+ * sample.txt, called over and over from a loop, so the number is simulated
+ * instructions per second on calls, returns, stack traffic and mult. The
+ * program is run as assembled and after the -O passes, with delay slots,
+ * both interpreted and tiered, with the hot blocks translated to bytecode.
+ */
+public class InterpreterBenchmark {
+    private static final int DEFAULT_CALLS = 1000000;
+    private static final int DEFAULT_ITERATIONS = 10;
+    private static final int ARGUMENT = 12;
+    private static final int FACT = 479001600;
+    private static final String PROGRAM = String.join("\n",
+            "main:   addi $sp, $sp, -4",
+            "        sw   $ra, 0($sp)",
+            "        li   $s0, %d",
+            "again:  li   $a0, %d",
+            "        jal  fact",
+            "        addi $s0, $s0, -1",
+            "        slti $t0, $s0, 1",
+            "        beq  $t0, $zero, again",
+            "        lw   $ra, 0($sp)",
+            "        addi $sp, $sp, 4",
+            "        jr   $ra",
+            "fact:   addi $sp, $sp, -8",
+            "        sw   $ra, 4($sp)",
+            "        sw   $a0, 0($sp)",
+            "        slti $t0, $a0, 1",
+            "        beq  $t0, $zero, loop",
+            "        addi $v0, $zero, 1",
+            "        addi $sp, $sp, 8",
+            "        jr   $ra",
+            "loop:   addi $a0, $a0, -1",
+            "        jal  fact",
+            "        lw   $a0, 0($sp)",
+            "        lw   $ra, 4($sp)",
+            "        addi $sp, $sp, 8",
+            "        mul  $v0, $a0, $v0",
+            "        jr   $ra",
+            "");
+
+    /**
+     * Main method. Accepts optionally the number of calls to fact per run and
+     * the number of timed iterations, in that order.
+     * 
+     * @param args The command line arguments.
+     * @throws Exception When invalid arguments are passed.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length > 2) {
+            throw new Exception(
+                    "Invalid arguments! You can provide the number of calls and the number of iterations");
+        }
+        int calls = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_CALLS;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+        Logger.getLogger(Assembler.class.getName()).setLevel(Level.WARNING);
+
+        Assembler assembler = new Assembler();
+        String text = String.format(PROGRAM, calls, ARGUMENT);
+        AssemblyContext plain = assembler
+                .assemble(ByteBuffer.wrap(text.getBytes(StandardCharsets.ISO_8859_1)));
+        AssemblyContext optimized = assembler
+                .assemble(ByteBuffer.wrap(text.getBytes(StandardCharsets.ISO_8859_1)));
+        new InstructionScheduler().schedule(optimized);
+        new DelaySlotFiller().fill(optimized);
+
+        time("interpreter", plain.getWords(), false, 0, iterations);
+        time("interpreter-O", optimized.getWords(), true, 0, iterations);
+        time("tiered", plain.getWords(), false, Interpreter.DEFAULT_COMPILE_THRESHOLD, iterations);
+        time("tiered-O", optimized.getWords(), true, Interpreter.DEFAULT_COMPILE_THRESHOLD,
+                iterations);
+        profile("profile", plain.getWords(), false, iterations);
+        profile("profile-O", optimized.getWords(), true, iterations);
+    }
+
+    /**
+     * Warm up and time runs of a program, then print the average time per run
+     * and per simulated instruction, and the simulated instructions per
+     * second.
+     * 
+     * @param name The name of the run.
+     * @param code The encoded words of the program.
+     * @param delaySlots Whether the words have delay slots.
+     * @param compileThreshold The entries before a block is translated, or 0
+     *        to only interpret.
+     * @param iterations The number of timed iterations.
+     */
+    private static void time(String name, int[] code, boolean delaySlots, int compileThreshold,
+            int iterations) {
+        Interpreter interpreter = new Interpreter(code, new PagedMemory());
+        interpreter.setDelaySlots(delaySlots);
+        interpreter.setCompileThreshold(compileThreshold);
+        for (int i = 0; i < iterations; i++) {
+            run(interpreter);
+        }
+        long instructions = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            instructions += run(interpreter);
+        }
+        long nanos = System.nanoTime() - start;
+        System.out.println(String.format("%-14s %10.3f ms/op %8.3f ns/instruction %8.1f MIPS",
+                name, nanos / 1e6 / iterations, (double) nanos / instructions,
+                instructions * 1e3 / nanos));
+    }
+
+    /**
+     * Warm up and time runs of a program through the {@link PipelineModel},
+     * then print the simulated cycles per second and the CPI.
+     * 
+     * @param name The name of the run.
+     * @param code The encoded words of the program.
+     * @param delaySlots Whether the words have delay slots.
+     * @param iterations The number of timed iterations.
+     */
+    private static void profile(String name, int[] code, boolean delaySlots, int iterations) {
+        Interpreter interpreter = new Interpreter(code, new PagedMemory());
+        interpreter.setDelaySlots(delaySlots);
+        interpreter.setCompileThreshold(0);
+        PipelineModel model = null;
+        long nanos = 0;
+        for (int i = 0; i < 2 * iterations; i++) {
+            model = new PipelineModel(code.length, new CacheModel(8192, 2, 32),
+                    new CacheModel(8192, 2, 32), PipelineModel.DEFAULT_MISS_PENALTY, delaySlots);
+            interpreter.setListener(model);
+            long start = System.nanoTime();
+            run(interpreter);
+            if (i >= iterations) {
+                nanos += System.nanoTime() - start;
+            }
+        }
+        System.out.println(String.format("%-14s %10.3f ms/op %8.3f CPI %11.1f M cycles/s", name,
+                nanos / 1e6 / iterations, model.getCpi(),
+                model.getCycles() * 1e3 * iterations / nanos));
+    }
+
+    /**
+     * Run the program once from the start.
+     * 
+     * @param interpreter The interpreter holding the program.
+     * @return The number of simulated instructions.
+     * @throws IllegalStateException When fact returns the wrong value.
+     */
+    private static long run(Interpreter interpreter) {
+        interpreter.reset(0);
+        long instructions = interpreter.run(Long.MAX_VALUE);
+        if (!interpreter.isHalted() || interpreter.getRegister(2) != FACT) {
+            throw new IllegalStateException(
+                    String.format("fact(%d) returned %d!", ARGUMENT, interpreter.getRegister(2)));
+        }
+        return instructions;
+    }
+}
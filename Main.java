@@ -1,18 +1,20 @@
 package main;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntUnaryOperator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -27,34 +29,256 @@ import java.util.logging.Logger;
  */
 public class Main {
     private static final Logger LOGGER = Logger.getLogger(Main.class.getName());
-    private static final Map<String, Integer> _labelMap = new HashMap<String, Integer>();
-    private static final Map<String, List<MipsInstruction>> _pseudoInsMap =
-            new HashMap<String, List<MipsInstruction>>();
-    private static final Map<String, List<MipsInstruction>> _coreInsMap =
-            new HashMap<String, List<MipsInstruction>>();
+    private static final int WATCH_SETTLE_MILLIS = 10;
+    private static final long DEFAULT_CACHE_MEGABYTES = 256;
+    private static final long RUN_LIMIT = 1L << 32;
+    private static final String DEFAULT_CACHE = "8192:2:32";
+    private static final Assembler _assembler = new Assembler();
 
     /**
-     * Main method. Accepts 1 and only 1 argument, the input file name.
+     * Main method. Accepts 1 and only 1 input file name, optionally preceded by
+     * the --single-pass or --parallel flag. With the --batch flag any number of source files,
+     * directories, globs and @manifests are accepted instead, assembled by
+     * --jobs=N threads at once and written next to each source or to the
+     * --out=DIR directory. --format=hex|bin|elf|ihex|logisim|mif|coe selects the
+     * output format. --metrics=json|prometheus prints the counters and phase
+     * timings of the run when it is done. With --daemon=SOCKET no input is
+     * accepted, requests are served on the Unix domain socket instead. With
+     * --watch the input is assembled again every time it is saved.
+     * --cache=DIR reuses outputs of identical sources across runs, keeping at
+     * most --cache-size=MB megabytes of them. -O schedules every basic block
+     * around load and multiply latency and fills the delay slots of jumps and
+     * branches. --run executes the assembled program from its first word once
+     * it is written, until it returns, and logs the registers it ends with.
+     * With --jit the hot basic blocks of the run are translated to bytecode.
+     * --profile runs it through a timing model of a 5-stage pipeline with
+     * --icache=SIZE:WAYS:LINE and --dcache=SIZE:WAYS:LINE caches and prints
+     * the cycles, CPI, miss rates and stalls of every source line. --batch
+     * with --run runs every source on its own virtual thread instead of
+     * writing it, within --max-instructions=N and --max-pages=N, yielding
+     * every --slice=N instructions, tiered with --jit, and prints how each
+     * run ended.
      * 
      * @param args The command line arguments.
      * @throws Exception When an invalid number of arguments are passed. 1 and
-     *         only 1 accepted.
+     *         only 1 input file accepted outside of batch mode.
      */
     public static void main(String[] args) throws Exception {
-        if (args.length != 1 || args[0] == null) {
+        boolean singlePass = false;
+        boolean parallel = false;
+        boolean batch = false;
+        boolean watch = false;
+        boolean optimize = false;
+        boolean run = false;
+        boolean jit = false;
+        boolean profile = false;
+        String icache = DEFAULT_CACHE;
+        String dcache = DEFAULT_CACHE;
+        long maxInstructions = SimulationRunner.DEFAULT_MAX_INSTRUCTIONS;
+        int maxPages = SimulationRunner.DEFAULT_MAX_PAGES;
+        int slice = SimulationRunner.DEFAULT_SLICE;
+        int jobs = Runtime.getRuntime().availableProcessors();
+        Path outDir = null;
+        OutputFormat format = OutputFormat.HEX;
+        String metrics = null;
+        Path socketPath = null;
+        Path cacheDir = null;
+        long cacheMegabytes = DEFAULT_CACHE_MEGABYTES;
+        List<String> inputs = new ArrayList<>();
+        for (String arg : args) {
+            if ("--single-pass".equals(arg)) {
+                singlePass = true;
+            }
+            else if ("--parallel".equals(arg)) {
+                parallel = true;
+            }
+            else if ("--batch".equals(arg)) {
+                batch = true;
+            }
+            else if ("--watch".equals(arg)) {
+                watch = true;
+            }
+            else if ("-O".equals(arg)) {
+                optimize = true;
+            }
+            else if ("--run".equals(arg)) {
+                run = true;
+            }
+            else if ("--jit".equals(arg)) {
+                jit = true;
+            }
+            else if ("--profile".equals(arg)) {
+                run = true;
+                profile = true;
+            }
+            else if (arg.startsWith("--icache=")) {
+                icache = arg.substring("--icache=".length());
+            }
+            else if (arg.startsWith("--dcache=")) {
+                dcache = arg.substring("--dcache=".length());
+            }
+            else if (arg.startsWith("--max-instructions=")) {
+                maxInstructions = Long.parseLong(arg.substring("--max-instructions=".length()));
+            }
+            else if (arg.startsWith("--max-pages=")) {
+                maxPages = Integer.parseInt(arg.substring("--max-pages=".length()));
+            }
+            else if (arg.startsWith("--slice=")) {
+                slice = Integer.parseInt(arg.substring("--slice=".length()));
+            }
+            else if (arg.startsWith("--jobs=")) {
+                jobs = Integer.parseInt(arg.substring("--jobs=".length()));
+            }
+            else if (arg.startsWith("--out=")) {
+                outDir = Paths.get(arg.substring("--out=".length()));
+            }
+            else if (arg.startsWith("--format=")) {
+                format = OutputFormat.getByName(arg.substring("--format=".length()));
+            }
+            else if (arg.startsWith("--cache=")) {
+                cacheDir = Paths.get(arg.substring("--cache=".length()));
+            }
+            else if (arg.startsWith("--cache-size=")) {
+                cacheMegabytes = Long.parseLong(arg.substring("--cache-size=".length()));
+            }
+            else if (arg.startsWith("--daemon=")) {
+                socketPath = Paths.get(arg.substring("--daemon=".length()));
+            }
+            else if (arg.startsWith("--metrics=")) {
+                metrics = arg.substring("--metrics=".length());
+                if (!"json".equals(metrics) && !"prometheus".equals(metrics)) {
+                    throw new Exception(
+                            String.format("Invalid arguments! Unknown metrics format %s", metrics));
+                }
+            }
+            else if (arg.startsWith("-")) {
+                throw new Exception(String.format("Invalid arguments! Unknown option %s", arg));
+            }
+            else {
+                inputs.add(arg);
+            }
+        }
+        if (socketPath != null) {
+            if (!inputs.isEmpty() || batch) {
+                throw new Exception("Invalid arguments! The daemon does not accept inputs");
+            }
+            _assembler.getMetrics().register();
+            final AssemblerDaemon daemon = new AssemblerDaemon(_assembler, socketPath, jobs);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    daemon.close();
+                }
+                catch (IOException ex) {
+                    LOGGER.log(Level.WARNING, "Failed to close the daemon socket", ex);
+                }
+            }));
+            daemon.serve();
+            return;
+        }
+        if (batch) {
+            if (inputs.isEmpty()) {
+                throw new Exception(
+                        "Invalid arguments! You need to provide at least one input in batch mode");
+            }
+            if (run && (outDir != null || cacheDir != null || profile)) {
+                throw new Exception(
+                        "Invalid arguments! No --out, --cache or --profile with --batch --run");
+            }
+            if (run) {
+                SimulationRunner runner = new SimulationRunner(_assembler, jobs, optimize, jit,
+                        maxInstructions, maxPages, slice);
+                boolean failed = false;
+                for (SimulationRunner.Result result : runner
+                        .run(new BatchAssembler(_assembler, jobs, null, format)
+                                .collectSources(inputs))) {
+                    System.out.println(String.format("%s %s %d %d%s", result.getSource().getFile(),
+                            result.getStatus(), result.getInstructions(), result.getPages(),
+                            result.getMessage() == null ? formatRegisters(result::getRegister)
+                                    : " " + result.getMessage()));
+                    failed |= result.getStatus() != SimulationRunner.Status.HALTED;
+                }
+                printMetrics(metrics);
+                if (failed) {
+                    System.exit(1);
+                }
+                return;
+            }
+            BatchAssembler batchAssembler = new BatchAssembler(_assembler, jobs, outDir, format,
+                    cacheDir == null ? null
+                            : new BuildCache(cacheDir, cacheMegabytes << 20,
+                                    _assembler.getInstructionSet()),
+                    optimize);
+            int failures = batchAssembler.assemble(batchAssembler.collectSources(inputs));
+            printMetrics(metrics);
+            if (failures > 0) {
+                System.exit(1);
+            }
+            return;
+        }
+        if (inputs.size() != 1) {
             throw new Exception(
                     "Invalid arguments! You need to provide just the name of the input file");
         }
-        BufferedReader inStream = null;
+        String fileName = inputs.get(0);
+        // hex output keeps its original name
+        File outFile = new File(
+                "result" + (format == OutputFormat.HEX ? ".txt" : format.getExtension()));
         try {
-            buildCoreInstructionMap();
-            buildPseudoInstructionMap();
-            inStream = new BufferedReader(new FileReader(new File(args[0])));
-            processLabels(inStream);
-            inStream.close();
-            // System.exit(0);
-            inStream = new BufferedReader(new FileReader(new File(args[0])));
-            processInstructions(inStream);
+            if (watch) {
+                watch(new File(fileName), format, outFile, optimize);
+                return;
+            }
+            BuildCache cache = null;
+            String key = null;
+            if (cacheDir != null) {
+                cache = new BuildCache(cacheDir, cacheMegabytes << 20,
+                        _assembler.getInstructionSet());
+                key = cache.key(new File(fileName), format, optimize);
+                // a program to run needs its words, not just the output
+                if (!run && cache.copyTo(key, outFile)) {
+                    LOGGER.info("DONE! (from the build cache)");
+                    return;
+                }
+            }
+            AssemblyContext context;
+            if (singlePass) {
+                context = _assembler.assembleSinglePass(new File(fileName));
+            }
+            else if (parallel) {
+                context = new ParallelEncoder(_assembler).assemble(new File(fileName));
+            }
+            else {
+                context = _assembler.assemble(new File(fileName));
+            }
+            if (optimize) {
+                InstructionScheduler scheduler = new InstructionScheduler();
+                scheduler.schedule(context);
+                DelaySlotFiller filler = new DelaySlotFiller();
+                filler.fill(context);
+                LOGGER.info(String.format(
+                        "Scheduled %d blocks, an estimated %d cycles saved; filled %d of %d delay slots",
+                        scheduler.getBlocks(), scheduler.getCyclesSaved(), filler.getFilled(),
+                        filler.getSlots()));
+            }
+            long writeStart = System.nanoTime();
+            format.write(context, outFile);
+            _assembler.getMetrics().addNanos(AssemblerMetrics.WRITE, System.nanoTime() - writeStart);
+            if (cache != null) {
+                cache.publish(key, outFile);
+            }
+            printMetrics(metrics);
+            if (run) {
+                PipelineModel model = null;
+                if (profile) {
+                    model = new PipelineModel(context.getNumOfWords(), CacheModel.parse(icache),
+                            CacheModel.parse(dcache), PipelineModel.DEFAULT_MISS_PENALTY, optimize);
+                }
+                run(context, optimize, jit, model);
+                if (model != null) {
+                    model.writeReport(System.out, context.getLines(),
+                            Files.readAllLines(Paths.get(fileName), StandardCharsets.ISO_8859_1));
+                }
+            }
             LOGGER.info("DONE!");
         }
         catch (FileNotFoundException ex) {
@@ -74,270 +298,120 @@ public class Main {
             LOGGER.log(Level.SEVERE, ex.getMessage() + " Exiting program.");
             System.exit(0);
         }
-        finally {
-            if (inStream != null) {
-                inStream.close();
-            }
-        }
-    }
-
-    /**
-     * Build a map containing core instructions, where the key is the command,
-     * and the value is a mips instruction containing the arguments, a
-     * skeleton instruction, the op code, and function code if it has one.
-     */
-    private static void buildCoreInstructionMap() {
-        // add immediate instruction
-        _coreInsMap.put("addi", new ArrayList<>());
-        _coreInsMap.get("addi").add(new MipsInstruction("addi", (short) 3,
-                new Object[] { "%s", "%s", "%d" }, "addi %s, %s, %d", 8, 0, false));
-        MipsInstruction ins = _coreInsMap.get("addi").get(0);
-        ins.setHasSource(true);
-        ins.setHasConstant(true);
-        ins.setHasDestination(true);
-
-        // load word instruction
-        _coreInsMap.put("lw", new ArrayList<>());
-        _coreInsMap.get("lw").add(new MipsInstruction("lw", (short) 3,
-                new Object[] { "%s", "%d", "%s" }, "lw %s, %d(%s)", 0x23, 0, false));
-        ins = _coreInsMap.get("lw").get(0);
-        ins.setHasSource(true);
-        ins.setHasOffset(true);
-        ins.setHasDestination(true);
-
-        // load word instruction
-        _coreInsMap.put("sw", new ArrayList<>());
-        _coreInsMap.get("sw").add(new MipsInstruction("sw", (short) 3,
-                new Object[] { "%s", "%d", "%s" }, "sw %s, %d(%s)", 0x2b, 0, false));
-        ins = _coreInsMap.get("sw").get(0);
-        ins.setHasSource(true);
-        ins.setHasOffset(true);
-        ins.setHasDestination(true);
-
-        // jump and link instruction
-        _coreInsMap.put("jal", new ArrayList<>());
-        _coreInsMap.get("jal").add(new MipsInstruction("jal", (short) 1, new Object[] { "%s" },
-                "jal %s", 3, 0, false));
-        ins = _coreInsMap.get("jal").get(0);
-        ins.setHasJumpLabel(true);
-
-        // jump register instruction
-        _coreInsMap.put("jr", new ArrayList<>());
-        _coreInsMap.get("jr").add(
-                new MipsInstruction("jr", (short) 1, new Object[] { "%s" }, "jr %s", 0, 8, true));
-        ins = _coreInsMap.get("jr").get(0);
-        ins.setHasJumpRegister(true);
-
-        // set less than immediate instruction
-        _coreInsMap.put("slti", new ArrayList<>());
-        _coreInsMap.get("slti").add(new MipsInstruction("slti", (short) 3,
-                new Object[] { "%s, %s, %d" }, "slti %s, %s, %d", 0xa, 0, false));
-        ins = _coreInsMap.get("slti").get(0);
-        ins.setHasSource(true);
-        ins.setHasConstant(true);
-        ins.setHasDestination(true);
-
-        // branch on equal instruction
-        _coreInsMap.put("beq", new ArrayList<>());
-        _coreInsMap.get("beq").add(new MipsInstruction("beq", (short) 3,
-                new Object[] { "%s, %s, %s" }, "beq %s, %s, %s", 4, 0, false));
-        ins = _coreInsMap.get("beq").get(0);
-        ins.setHasSource(true);
-        ins.setHasJumpLabel(true);
-        ins.setHasDestination(true);
-
-        // load upper immediate instruction, part of the li psuedo instruction
-        _coreInsMap.put("lui", new ArrayList<>());
-        _coreInsMap.get("lui").add(new MipsInstruction("lui", (short) 2,
-                new String[] { "%s", "%s" }, "lui %s, %s", 0xf, 0, false));
-        ins = _coreInsMap.get("lui").get(0);
-        ins.setHasDestination(true);
-        ins.setHasConstant(true);
-
-        // or immediate instruction, part of the li psuedo instruction
-        _coreInsMap.put("ori", new ArrayList<>());
-        _coreInsMap.get("ori").add(new MipsInstruction("ori", (short) 2,
-                new String[] { "%s", "%s", "%d" }, "ori %s, %s, %s", 0xd, 0, false));
-        ins = _coreInsMap.get("ori").get(0);
-        ins.setHasConstant(true);
-        ins.setHasDestination(true);
-        ins.setHasSource(true);
-
-        // multiply instruction, part of the mul psuedo instruction
-        _coreInsMap.put("mult", new ArrayList<>());
-        _coreInsMap.get("mult").add(new MipsInstruction("mult", (short) 2,
-                new String[] { "%s", "%s" }, "mult %s, %s", 0, 0x18, true));
-        ins = _coreInsMap.get("mult").get(0);
-        ins.setHasSource(true);
-        ins.setHasSource2(true);
-
-        // move from lo, part of the mul psuedo instruction
-        _coreInsMap.put("mflo", new ArrayList<>());
-        _coreInsMap.get("mflo").add(new MipsInstruction("mflo", (short) 1, new String[] { "%s" },
-                "mflo %s", 0, 0x12, true));
-        ins = _coreInsMap.get("mflo").get(0);
-        ins.setHasDestination(true);
     }
 
     /**
-     * Read through the file and process each instruction, this time ignoring
-     * labels.
+     * Assemble the input file every time it changes, until the program is
+     * stopped. Only the lines that changed are encoded again. An error in the
+     * source is logged and the output is left as it was until the next save.
      * 
-     * @param inStream A buffered input stream used to read instructions from a
-     *        text file.
-     * @throws IOException When an error occurs during reading or writing of a
-     *         file.
-     * @throws IllegalArgumentException When an instruction is not found or the
-     *         syntax is incorrect.
+     * @param inFile The file containing the MIPS instructions.
+     * @param format The output format.
+     * @param outFile The file to write the result to.
+     * @param optimize Whether to schedule the words and fill the delay slots
+     *        of jumps and branches.
+     * @throws IOException When the directory of the input can't be watched.
+     * @throws InterruptedException When interrupted while waiting for a change.
      */
-    private static void processInstructions(BufferedReader inStream)
-            throws IOException, IllegalArgumentException {
-        LOGGER.info("Starting process instructions");
-        BufferedWriter bw = null;
-        try {
-            String line = inStream.readLine();
-            File file = new File("result.txt");
-            file.delete();
-            bw = new BufferedWriter(new FileWriter(file));
-            String instruction = "";
-            List<MipsInstruction> inst = null;
-            // while not e.o.f
-            while (line != null) {
-                line = line.trim();
-                // see if the line is a label by itself, if so continue reading
-                if (line.equals("") || line.matches(".+[:]+")) {
-                    line = inStream.readLine();
-                    continue;
-                }
-                // gets instruction if label in on the same line - ex: loop:
-                // addi $s1, $s0, $s3
-                else if (line.contains(":")) {
-                    instruction = line.substring(line.indexOf(':') + 1).trim();
-                }
-                else {
-                    instruction = line;
-                }
-                String instructionArg = instruction.split(" ")[0];
-                String mipsCode =
-                        instruction.substring(line.indexOf(' ') + 1).replaceAll("\\s+", "");
-
-                if (_pseudoInsMap.containsKey(instructionArg)) {
-                    // set variable equal to instruction
-                    inst = _pseudoInsMap.get(instructionArg);
-                }
-                else if (_coreInsMap.containsKey(instructionArg)) {
-                    inst = _coreInsMap.get(instructionArg);
+    private static void watch(File inFile, OutputFormat format, File outFile, boolean optimize)
+            throws IOException, InterruptedException {
+        IncrementalAssembler incremental = new IncrementalAssembler(_assembler);
+        Path dir = inFile.getAbsoluteFile().toPath().getParent();
+        Path name = inFile.toPath().getFileName();
+        try (WatchService watcher = dir.getFileSystem().newWatchService()) {
+            dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            while (true) {
+                long start = System.nanoTime();
+                try {
+                    AssemblyContext context = incremental.assemble(inFile);
+                    if (optimize) {
+                        new InstructionScheduler().schedule(context);
+                        new DelaySlotFiller().fill(context);
+                    }
+                    format.write(context, outFile);
+                    LOGGER.info(String.format("Assembled %s in %.3f ms (%d lines encoded, %d cached)",
+                            inFile, (System.nanoTime() - start) / 1e6,
+                            incremental.getEncodedLines(), incremental.getCachedLines()));
                 }
-                else {
-                    throw new IllegalArgumentException(
-                            "The instruction was not found or is not implemented in this project!");
+                catch (IOException | IllegalArgumentException ex) {
+                    LOGGER.log(Level.SEVERE, ex.getMessage());
                 }
-
-                ArrayList<String> split = new ArrayList<String>();
-                // split the arguments on a comma
-                split.addAll(Arrays.asList(mipsCode.split(",")));
-
-                for (MipsInstruction instr : inst) {
-                    // if the arguments list size doesn't match the expected
-                    // number of params
-                    if (split.size() != instr.getNumOfParams()) {
-                        Iterator<String> argIterator = split.iterator();
-                        ArrayList<String> additionalArgs = new ArrayList<>();
-                        while (argIterator.hasNext()) {
-                            String argument = argIterator.next();
-                            additionalArgs.clear();
-                            if (argument.contains("(")) {
-                                argIterator.remove();
-                                String offSet = argument.substring(0, argument.indexOf("("));
-                                String src = argument.substring(argument.indexOf("(") + 1,
-                                        argument.indexOf(")"));
-                                additionalArgs.add(offSet);
-                                additionalArgs.add(src);
-                            }
-                        }
-                        if (additionalArgs.size() > 0) {
-                            split.addAll(additionalArgs);
+                boolean changed = false;
+                while (!changed) {
+                    WatchKey key = watcher.take();
+                    // a save can take several events, wait until they stop
+                    while (key != null) {
+                        for (WatchEvent<?> event : key.pollEvents()) {
+                            changed |= name.equals(event.context());
                         }
-                        // the move and mul instructions only have 2 params, but
-                        // uses 3 behind the scenes via the addi and mult/mflo
-                        // instructions
-                        if (split.size() != instr.getNumOfParams() && !instructionArg.equals("move")
-                                && !instructionArg.equals("mul")) {
-                            throw new IllegalArgumentException(
-                                    String.format("Error processing line: %s", line));
-                        }
-                    }
-                    String[] arr = new String[split.size()];
-                    split.toArray(arr);
-                    instr.setParms(arr);
-                    LOGGER.info("Converting instruction to hex");
-                    if (instr.hasJumpLabel()) {
-                        // if the instruction has a jump label, retrieve the
-                        // label from the map
-                        int argIndex = 0;
-                        if (instructionArg.equals("beq")) {
-                            argIndex = 2;
-                        }
-                        bw.write(instr.convertInstructionToHex(_labelMap.get(split.get(argIndex)))
-                                + "\n");
-                    }
-                    else {
-                        bw.write(instr.convertInstructionToHex(0) + "\n");
+                        key.reset();
+                        key = watcher.poll(WATCH_SETTLE_MILLIS, TimeUnit.MILLISECONDS);
                     }
                 }
-                line = inStream.readLine();
-            }
-        }
-        finally {
-            if (bw != null) {
-                bw.close();
             }
         }
     }
 
     /**
-     * Build a map such that the key is a psuedo instruction, and the value
-     * contains the instructions necessary to complete the task.
+     * Run an assembled program from its first word until it returns, and log
+     * how long it took and the registers it ended with.
+     * 
+     * @param context The context of the job, holding the encoded words.
+     * @param delaySlots Whether the words have delay slots, as they do after
+     *        the -O passes.
+     * @param jit Whether to translate the hot basic blocks to bytecode.
+     * @param listener The listener told about every word run, or null for
+     *        none.
+     * @throws IllegalStateException When the program fails.
      */
-    private static void buildPseudoInstructionMap() {
-        // move instruction
-        _pseudoInsMap.put("move", new ArrayList<>());
-        _pseudoInsMap.get("move").add(_coreInsMap.get("addi").get(0));
-
-        // load immediate instruction
-        _pseudoInsMap.put("li", new ArrayList<>());
-        _pseudoInsMap.get("li").add(_coreInsMap.get("lui").get(0));
-        _pseudoInsMap.get("li").add(_coreInsMap.get("ori").get(0));
+    private static void run(AssemblyContext context, boolean delaySlots, boolean jit,
+            ExecutionListener listener) {
+        Interpreter interpreter = new Interpreter(context.getWords(), new PagedMemory());
+        interpreter.setDelaySlots(delaySlots);
+        interpreter.setCompileThreshold(jit ? Interpreter.DEFAULT_COMPILE_THRESHOLD : 0);
+        interpreter.setListener(listener);
+        long start = System.nanoTime();
+        long instructions = interpreter.run(RUN_LIMIT);
+        long nanos = System.nanoTime() - start;
+        if (!interpreter.isHalted()) {
+            LOGGER.warning(String.format("Stopped after %d instructions at %08x", instructions,
+                    interpreter.getPc()));
+        }
+        LOGGER.info(String.format("Ran %d instructions in %.3f ms (%.1f MIPS, %d blocks compiled):%s",
+                instructions, nanos / 1e6, instructions * 1e3 / Math.max(nanos, 1),
+                interpreter.getCompiledBlocks(), formatRegisters(interpreter::getRegister)));
+    }
 
-        // multiply instruction
-        _pseudoInsMap.put("mul", new ArrayList<>());
-        _pseudoInsMap.get("mul").add(_coreInsMap.get("mult").get(0));
-        _pseudoInsMap.get("mul").add(_coreInsMap.get("mflo").get(0));
+    /**
+     * Format the registers that are not zero, each as a space and name=value.
+     * 
+     * @param registers Gets the value of a register by number.
+     * @return The registers.
+     */
+    private static String formatRegisters(IntUnaryOperator registers) {
+        StringBuilder text = new StringBuilder();
+        for (int reg = 1; reg < 32; reg++) {
+            if (registers.applyAsInt(reg) != 0) {
+                text.append(String.format(" %s=%d", RegistersEnum.getByNumber(reg).getRegName(),
+                        registers.applyAsInt(reg)));
+            }
+        }
+        return text.toString();
     }
 
     /**
-     * Read through the file line by line and store any labels in a HashMap,
-     * where the key is the label, and the value is the memory location (in
-     * decimal) assigned to the instruction.
+     * Print the metrics of the assembler to standard output.
      * 
-     * @param inStream A buffered reader used to read the contents of the file.
-     * @throws IOException When an error occurs during file reading.
+     * @param metrics The metrics format, json or prometheus, or null to not
+     *        print them.
      */
-    private static void processLabels(BufferedReader inStream) throws IOException {
-        String line = inStream.readLine().trim();
-        int prgmCtr = 0;
-        while (line != null) {
-            line = line.trim();
-            final int lblInd = line.indexOf(":");
-            // if the line contains a semi-colon, it has a label
-            if (lblInd > 0) {
-                // store label, without beginning or ending whitespace
-                _labelMap.put(line.substring(0, lblInd).trim(), prgmCtr);
-            }
-            // read next line
-            line = inStream.readLine();
-            // increment program counter
-            prgmCtr += 4;
+    private static void printMetrics(String metrics) {
+        if ("json".equals(metrics)) {
+            System.out.println(_assembler.getMetrics().toJson());
+        }
+        else if ("prometheus".equals(metrics)) {
+            System.out.print(_assembler.getMetrics().toPrometheus());
         }
     }
 
@@ -346,57 +420,151 @@ public class Main {
      */
     public enum RegistersEnum {
 
-        ZERO("$zero", Long.toBinaryString(0L)),
-        V0("$v0", Long.toBinaryString(2L)),
-        V1("$v1", Long.toBinaryString(3L)),
-        A0("$a0", Long.toBinaryString(4L)),
-        A1("$a1", Long.toBinaryString(5L)),
-        A2("$a2", Long.toBinaryString(6L)),
-        A3("$a3", Long.toBinaryString(7L)),
-        T0("$t0", Long.toBinaryString(8L)),
-        T1("$t1", Long.toBinaryString(9L)),
-        T2("$t2", Long.toBinaryString(10L)),
-        T3("$t3", Long.toBinaryString(11L)),
-        T4("$t4", Long.toBinaryString(12L)),
-        T5("$t5", Long.toBinaryString(13L)),
-        T6("$t6", Long.toBinaryString(14L)),
-        T7("$t7", Long.toBinaryString(15L)),
-        S0("$s0", Long.toBinaryString(16L)),
-        S1("$s1", Long.toBinaryString(17L)),
-        S2("$s2", Long.toBinaryString(18L)),
-        S3("$s3", Long.toBinaryString(19L)),
-        S4("$s4", Long.toBinaryString(20L)),
-        S5("$s5", Long.toBinaryString(21L)),
-        S6("$s6", Long.toBinaryString(22L)),
-        S7("$s7", Long.toBinaryString(23L)),
-        T8("$t8", Long.toBinaryString(24L)),
-        T9("$t9", Long.toBinaryString(25L)),
-        GP("$gp", Long.toBinaryString(28L)),
-        SP("$sp", Long.toBinaryString(29L)),
-        FP("$fp", Long.toBinaryString(30L)),
-        RA("$ra", Long.toBinaryString(31L));
+        ZERO("$zero", 0),
+        AT("$at", 1),
+        V0("$v0", 2),
+        V1("$v1", 3),
+        A0("$a0", 4),
+        A1("$a1", 5),
+        A2("$a2", 6),
+        A3("$a3", 7),
+        T0("$t0", 8),
+        T1("$t1", 9),
+        T2("$t2", 10),
+        T3("$t3", 11),
+        T4("$t4", 12),
+        T5("$t5", 13),
+        T6("$t6", 14),
+        T7("$t7", 15),
+        S0("$s0", 16),
+        S1("$s1", 17),
+        S2("$s2", 18),
+        S3("$s3", 19),
+        S4("$s4", 20),
+        S5("$s5", 21),
+        S6("$s6", 22),
+        S7("$s7", 23),
+        T8("$t8", 24),
+        T9("$t9", 25),
+        K0("$k0", 26),
+        K1("$k1", 27),
+        GP("$gp", 28),
+        SP("$sp", 29),
+        FP("$fp", 30),
+        RA("$ra", 31);
+
+        private static final RegistersEnum[] BY_NUMBER = values();
 
         private final String _regName;
-        private final String _regNum;
+        private final int _regNum;
 
-        RegistersEnum(String regName, String regNum) {
+        RegistersEnum(String regName, int regNum) {
             _regName = regName;
             _regNum = regNum;
         }
 
         /**
-         * Get a register number in a binary string based on the provided name.
+         * Get a register number based on the provided name, e.g. $sp or $29.
          * 
          * @param name The register name to lookup.
-         * @return The register number.
+         * @return The register number, or -1 if there is no such register.
+         */
+        public static int getByName(String name) {
+            int length = name.length();
+            if (length < 2 || length > 5 || name.charAt(0) != '$') {
+                return -1;
+            }
+            return resolve(length - 1, name.charAt(1), length > 2 ? name.charAt(2) : 0,
+                    length > 3 ? name.charAt(3) : 0, length > 4 ? name.charAt(4) : 0);
+        }
+
+        /**
+         * Get a register number based on a name held in a byte array, without
+         * building a String.
+         * 
+         * @param bytes The bytes holding the register name.
+         * @param start The position of the first byte.
+         * @param end The position after the last byte.
+         * @return The register number, or -1 if there is no such register.
+         */
+        public static int getNumber(byte[] bytes, int start, int end) {
+            int length = end - start;
+            if (length < 2 || length > 5 || bytes[start] != '$') {
+                return -1;
+            }
+            return resolve(length - 1, bytes[start + 1], length > 2 ? bytes[start + 2] : 0,
+                    length > 3 ? bytes[start + 3] : 0, length > 4 ? bytes[start + 4] : 0);
+        }
+
+        /**
+         * Get the register with the given number.
+         * 
+         * @param number The register number, 0 to 31.
+         * @return The register.
+         */
+        public static RegistersEnum getByNumber(int number) {
+            return BY_NUMBER[number];
+        }
+
+        /**
+         * Resolve the characters of a register name after the $ with a switch
+         * on the characters, covering both names and numbers.
+         * 
+         * @param length The number of characters after the $.
+         * @param c1 The first character.
+         * @param c2 The second character, or 0.
+         * @param c3 The third character, or 0.
+         * @param c4 The fourth character, or 0.
+         * @return The register number, or -1 if there is no such register.
          */
-        public static String getByName(String name) {
-            for (RegistersEnum reg : values()) {
-                if (reg.getRegName().equals(name)) {
-                    return reg.getRegNum();
+        private static int resolve(int length, int c1, int c2, int c3, int c4) {
+            if (c1 >= '0' && c1 <= '9') {
+                // numeric form, $0 to $31
+                if (length == 1) {
+                    return c1 - '0';
                 }
+                if (length == 2 && c1 != '0' && c2 >= '0' && c2 <= '9') {
+                    int number = (c1 - '0') * 10 + c2 - '0';
+                    return number < 32 ? number : -1;
+                }
+                return -1;
+            }
+            if (length == 4) {
+                return c1 == 'z' && c2 == 'e' && c3 == 'r' && c4 == 'o' ? 0 : -1;
+            }
+            if (length != 2) {
+                return -1;
+            }
+            final int digit = c2 - '0';
+            switch (c1) {
+                case 'a':
+                    if (c2 == 't') {
+                        return 1;
+                    }
+                    return digit >= 0 && digit <= 3 ? 4 + digit : -1;
+                case 'v':
+                    return digit >= 0 && digit <= 1 ? 2 + digit : -1;
+                case 't':
+                    if (digit >= 0 && digit <= 7) {
+                        return 8 + digit;
+                    }
+                    return digit >= 8 && digit <= 9 ? 16 + digit : -1;
+                case 's':
+                    if (c2 == 'p') {
+                        return 29;
+                    }
+                    return digit >= 0 && digit <= 7 ? 16 + digit : -1;
+                case 'k':
+                    return digit >= 0 && digit <= 1 ? 26 + digit : -1;
+                case 'g':
+                    return c2 == 'p' ? 28 : -1;
+                case 'f':
+                    return c2 == 'p' ? 30 : -1;
+                case 'r':
+                    return c2 == 'a' ? 31 : -1;
+                default:
+                    return -1;
             }
-            return "0";
         }
 
         /**
@@ -409,11 +577,11 @@ public class Main {
         }
 
         /**
-         * Get the register number in a binary string
+         * Get the register number.
          * 
          * @return The register number.
          */
-        public String getRegNum() {
+        public int getRegNum() {
             return _regNum;
         }
     }
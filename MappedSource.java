@@ -0,0 +1,325 @@
+package main;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Memory-mapped view of a source file that is scanned as ASCII bytes. The
+ * source is walked one line at a time, and the current line is exposed as a
+ * trimmed slice of the mapping, so no String is built for a line unless the
+ * caller asks for part of it.
+ */
+public class MappedSource implements Closeable {
+    private final RandomAccessFile _file;
+    private final ByteBuffer _buffer;
+    private final int _begin;
+    private final int _limit;
+    private int _nextLine = 0;
+    private int _lineStart = 0;
+    private int _lineEnd = 0;
+    private int _lineNumber = 0;
+
+    /**
+     * Constructor that maps the given file.
+     * 
+     * @param file The source file to map.
+     * @throws IOException When the file can't be opened or mapped.
+     */
+    public MappedSource(File file) throws IOException {
+        _file = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = _file.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(
+                        String.format("The file %s is too large to map (%d bytes)", file, size));
+            }
+            _buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            _begin = 0;
+            _limit = (int) size;
+        }
+        catch (IOException ex) {
+            _file.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Constructor for a source that is already in memory, such as text sent
+     * by a client. The source is read from position 0 to the limit of the
+     * buffer.
+     * 
+     * @param buffer The bytes of the source.
+     */
+    public MappedSource(ByteBuffer buffer) {
+        _file = null;
+        _buffer = buffer;
+        _begin = 0;
+        _limit = buffer.limit();
+    }
+
+    /**
+     * Constructor for a view of part of another mapped source. The view has
+     * its own position but shares the mapping, so views can be read by
+     * different threads at once.
+     * 
+     * @param parent The mapped source to view.
+     * @param begin The position of the first line of the view.
+     * @param limit The position after the last line of the view.
+     */
+    private MappedSource(MappedSource parent, int begin, int limit) {
+        _file = null;
+        _buffer = parent._buffer;
+        _begin = begin;
+        _limit = limit;
+        _nextLine = begin;
+    }
+
+    /**
+     * Create a view of part of the source, which must start and end on line
+     * boundaries.
+     * 
+     * @param begin The position of the first line of the view.
+     * @param limit The position after the last line of the view.
+     * @return The view.
+     */
+    public MappedSource slice(int begin, int limit) {
+        return new MappedSource(this, begin, limit);
+    }
+
+    /**
+     * Get the position where the next line starts.
+     * 
+     * @return The position of the next line.
+     */
+    public int getNextLineStart() {
+        return _nextLine;
+    }
+
+    /**
+     * Get the position after the last byte of the source.
+     * 
+     * @return The end of the source.
+     */
+    public int getLimit() {
+        return _limit;
+    }
+
+    /**
+     * Move to the next line of the source, dropping any # comment.
+     * 
+     * @return True if there was another line, false at the end of the file.
+     */
+    public boolean nextLine() {
+        if (_nextLine >= _limit) {
+            return false;
+        }
+        int start = _nextLine;
+        int end = start;
+        int comment = -1;
+        byte b;
+        while (end < _limit && (b = _buffer.get(end)) != '\n') {
+            if (b == '#' && comment < 0) {
+                comment = end;
+            }
+            end++;
+        }
+        _nextLine = end + 1;
+        // a comment runs from # to the end of the line
+        if (comment >= 0) {
+            end = comment;
+        }
+        // trim the line the same way String.trim() does
+        while (start < end && isWhitespace(_buffer.get(start))) {
+            start++;
+        }
+        while (end > start && isWhitespace(_buffer.get(end - 1))) {
+            end--;
+        }
+        _lineStart = start;
+        _lineEnd = end;
+        _lineNumber++;
+        return true;
+    }
+
+    /**
+     * Go back to the start of the source so it can be read again without
+     * reopening the file.
+     */
+    public void rewind() {
+        _nextLine = _begin;
+        _lineStart = _begin;
+        _lineEnd = _begin;
+        _lineNumber = 0;
+    }
+
+    /**
+     * Get the position of the first byte of the trimmed current line.
+     * 
+     * @return The start of the current line.
+     */
+    public int getLineStart() {
+        return _lineStart;
+    }
+
+    /**
+     * Get the position after the last byte of the trimmed current line.
+     * 
+     * @return The end of the current line.
+     */
+    public int getLineEnd() {
+        return _lineEnd;
+    }
+
+    /**
+     * Get the 1 based number of the current line, counted from the start of
+     * the view for a view.
+     * 
+     * @return The current line number.
+     */
+    public int getLineNumber() {
+        return _lineNumber;
+    }
+
+    /**
+     * Get a byte of the source.
+     * 
+     * @param pos The position of the byte.
+     * @return The byte.
+     */
+    public byte byteAt(int pos) {
+        return _buffer.get(pos);
+    }
+
+    /**
+     * Copy part of the source into a byte array.
+     * 
+     * @param start The position of the first byte to copy.
+     * @param dst The array to copy into, starting at index 0.
+     * @param length The number of bytes to copy.
+     */
+    public void getBytes(int start, byte[] dst, int length) {
+        _buffer.get(start, dst, 0, length);
+    }
+
+    /**
+     * Find the first occurrence of a byte in the current line.
+     * 
+     * @param b The byte to look for.
+     * @return The position of the byte, or -1 if the line doesn't contain it.
+     */
+    public int indexOf(byte b) {
+        for (int i = _lineStart; i < _lineEnd; i++) {
+            if (_buffer.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the position of the label separator in the current line.
+     * 
+     * @return The position of the ':' ending the label, or -1 if the line
+     *         doesn't start with a label.
+     */
+    public int getLabelEnd() {
+        int lblInd = indexOf((byte) ':');
+        return lblInd > _lineStart ? lblInd : -1;
+    }
+
+    /**
+     * Get the position of the instruction in the current line, skipping a
+     * label if the instruction shares the line with one.
+     * 
+     * @return The start of the instruction, or -1 if the line is blank or only
+     *         a label.
+     */
+    public int getInstructionStart() {
+        int length = _lineEnd - _lineStart;
+        // blank, or a label by itself, e.g. "loop:"
+        if (length == 0 || (length > 1 && _buffer.get(_lineEnd - 1) == ':')) {
+            return -1;
+        }
+        int colon = indexOf((byte) ':');
+        if (colon < 0) {
+            return _lineStart;
+        }
+        int start = colon + 1;
+        while (start < _lineEnd && isWhitespace(_buffer.get(start))) {
+            start++;
+        }
+        return start < _lineEnd ? start : -1;
+    }
+
+    /**
+     * Get the position after the mnemonic starting at the given position.
+     * 
+     * @param instructionStart The start of the instruction.
+     * @return The end of the mnemonic.
+     */
+    public int getMnemonicEnd(int instructionStart) {
+        int end = instructionStart;
+        while (end < _lineEnd && !isWhitespace(_buffer.get(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Build a trimmed String from part of the source.
+     * 
+     * @param start The position of the first byte.
+     * @param end The position after the last byte.
+     * @return The bytes as a String.
+     */
+    public String getString(int start, int end) {
+        while (start < end && isWhitespace(_buffer.get(start))) {
+            start++;
+        }
+        while (end > start && isWhitespace(_buffer.get(end - 1))) {
+            end--;
+        }
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = _buffer.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Get the current line as a String.
+     * 
+     * @return The trimmed current line.
+     */
+    public String getLine() {
+        return getString(_lineStart, _lineEnd);
+    }
+
+    /**
+     * Close the mapped file. Closing a view does nothing.
+     * 
+     * @throws IOException When the file can't be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (_file != null) {
+            _file.close();
+        }
+    }
+
+    /**
+     * Determine if a byte is whitespace, matching String.trim().
+     * 
+     * @param b The byte to test.
+     * @return True if the byte is whitespace or a control character.
+     */
+    private static boolean isWhitespace(byte b) {
+        return (b & 0xff) <= ' ';
+    }
+}
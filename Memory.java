@@ -0,0 +1,28 @@
+package main;
+
+/**
+ * Data memory of a program run by the {@link Interpreter}, addressed in bytes
+ * and read and written a word at a time. The words of the program itself are
+ * kept apart, so stores never change the code being run.
+ */
+public interface Memory {
+    /**
+     * Load a word.
+     * 
+     * @param address The address of the word.
+     * @return The word.
+     * @throws IllegalStateException When the address is not aligned or not
+     *         backed by memory.
+     */
+    int loadWord(int address);
+
+    /**
+     * Store a word.
+     * 
+     * @param address The address of the word.
+     * @param value The word.
+     * @throws IllegalStateException When the address is not aligned or not
+     *         backed by memory.
+     */
+    void storeWord(int address, int value);
+}
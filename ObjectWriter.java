@@ -0,0 +1,229 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes encoded words as machine code, either as raw big-endian words or as
+ * a minimal ELF32 relocatable object holding a .text section and a symbol
+ * table of the labels. The words are put straight into a direct buffer and
+ * written with a FileChannel, so the output can be mmapped by other tools.
+ */
+public final class ObjectWriter {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int ELF_HEADER_SIZE = 52;
+    private static final int SECTION_HEADER_SIZE = 40;
+    private static final int SYMBOL_SIZE = 16;
+    private static final short EM_MIPS = 8;
+    private static final int SHT_PROGBITS = 1;
+    private static final int SHT_SYMTAB = 2;
+    private static final int SHT_STRTAB = 3;
+    private static final int SHF_ALLOC_EXECINSTR = 0x6;
+    private static final String SECTION_NAMES = "\0.text\0.symtab\0.strtab\0.shstrtab\0";
+
+    /**
+     * Private constructor, only static methods.
+     */
+    private ObjectWriter() {
+    }
+
+    /**
+     * Write the encoded words as raw big-endian 32 bit words.
+     * 
+     * @param context The context holding the encoded words.
+     * @param outFile The file to write to.
+     * @throws IOException When an error occurs during writing of the file.
+     */
+    public static void writeBinary(AssemblyContext context, File outFile) throws IOException {
+        try (FileChannel channel = open(outFile)) {
+            writeWords(context, channel, ByteBuffer.allocateDirect(BUFFER_SIZE));
+        }
+    }
+
+    /**
+     * Write the encoded words as an ELF32 big-endian MIPS relocatable object.
+     * The words go in .text, and every label becomes a local symbol in .symtab
+     * whose value is its address in .text.
+     * 
+     * @param context The context holding the encoded words and labels.
+     * @param outFile The file to write to.
+     * @throws IOException When an error occurs during writing of the file.
+     */
+    public static void writeElf(AssemblyContext context, File outFile) throws IOException {
+        List<Map.Entry<String, Integer>> labels = new ArrayList<>(context.getLabelMap().entrySet());
+        labels.sort(Map.Entry.comparingByValue());
+
+        // string table, starting with the empty name
+        ByteBuffer strtab = ByteBuffer.allocate(strtabSize(labels));
+        strtab.put((byte) 0);
+        ByteBuffer symtab = ByteBuffer.allocate((labels.size() + 1) * SYMBOL_SIZE);
+        symtab.position(SYMBOL_SIZE);
+        for (Map.Entry<String, Integer> label : labels) {
+            symtab.putInt(strtab.position()); // st_name
+            symtab.putInt(label.getValue()); // st_value
+            symtab.putInt(0); // st_size
+            symtab.put((byte) 0); // st_info, STB_LOCAL and STT_NOTYPE
+            symtab.put((byte) 0); // st_other
+            symtab.putShort((short) 1); // st_shndx, .text
+            strtab.put(label.getKey().getBytes(StandardCharsets.UTF_8));
+            strtab.put((byte) 0);
+        }
+        byte[] shstrtab = SECTION_NAMES.getBytes(StandardCharsets.US_ASCII);
+
+        int textOffset = ELF_HEADER_SIZE;
+        int textSize = context.getNumOfWords() * 4;
+        int symtabOffset = textOffset + textSize;
+        int strtabOffset = symtabOffset + symtab.capacity();
+        int shstrtabOffset = strtabOffset + strtab.capacity();
+        int shoff = align(shstrtabOffset + shstrtab.length);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.BIG_ENDIAN);
+        try (FileChannel channel = open(outFile)) {
+            // ELF header
+            buffer.put(new byte[] { 0x7f, 'E', 'L', 'F', 1, 2, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0 });
+            buffer.putShort((short) 1); // e_type, ET_REL
+            buffer.putShort(EM_MIPS); // e_machine
+            buffer.putInt(1); // e_version
+            buffer.putInt(0); // e_entry
+            buffer.putInt(0); // e_phoff
+            buffer.putInt(shoff); // e_shoff
+            buffer.putInt(0); // e_flags
+            buffer.putShort((short) ELF_HEADER_SIZE); // e_ehsize
+            buffer.putShort((short) 0); // e_phentsize
+            buffer.putShort((short) 0); // e_phnum
+            buffer.putShort((short) SECTION_HEADER_SIZE); // e_shentsize
+            buffer.putShort((short) 5); // e_shnum
+            buffer.putShort((short) 4); // e_shstrndx
+
+            writeWords(context, channel, buffer);
+            writeBytes(channel, symtab.flip());
+            writeBytes(channel, strtab.flip());
+            writeBytes(channel, ByteBuffer.wrap(shstrtab));
+
+            // section headers, null, .text, .symtab, .strtab, .shstrtab
+            buffer.clear();
+            buffer.put(new byte[shoff - (shstrtabOffset + shstrtab.length)]);
+            buffer.put(new byte[SECTION_HEADER_SIZE]);
+            putSectionHeader(buffer, 1, SHT_PROGBITS, SHF_ALLOC_EXECINSTR, textOffset, textSize, 0,
+                    0, 4, 0);
+            putSectionHeader(buffer, 7, SHT_SYMTAB, 0, symtabOffset, symtab.capacity(), 3,
+                    labels.size() + 1, 4, SYMBOL_SIZE);
+            putSectionHeader(buffer, 15, SHT_STRTAB, 0, strtabOffset, strtab.capacity(), 0, 0, 1,
+                    0);
+            putSectionHeader(buffer, 23, SHT_STRTAB, 0, shstrtabOffset, shstrtab.length, 0, 0, 1,
+                    0);
+            buffer.flip();
+            writeBytes(channel, buffer);
+        }
+    }
+
+    /**
+     * Put the encoded words into the buffer, writing it to the channel every
+     * time it fills up and once more at the end.
+     * 
+     * @param context The context holding the encoded words.
+     * @param channel The channel to write to.
+     * @param buffer The buffer, which may already hold bytes to write first.
+     * @throws IOException When an error occurs during writing.
+     */
+    private static void writeWords(AssemblyContext context, FileChannel channel,
+            ByteBuffer buffer) throws IOException {
+        int numOfWords = context.getNumOfWords();
+        for (int i = 0; i < numOfWords; i++) {
+            if (buffer.remaining() < 4) {
+                buffer.flip();
+                writeBytes(channel, buffer);
+                buffer.clear();
+            }
+            buffer.putInt(context.getWord(i));
+        }
+        buffer.flip();
+        writeBytes(channel, buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Put an ELF32 section header into the buffer.
+     * 
+     * @param buffer The buffer.
+     * @param name The offset of the section name in .shstrtab.
+     * @param type The section type.
+     * @param flags The section flags.
+     * @param offset The file offset of the section.
+     * @param size The size of the section.
+     * @param link The index of the linked section.
+     * @param info The extra section information.
+     * @param addralign The alignment of the section.
+     * @param entsize The size of each entry, for tables.
+     */
+    private static void putSectionHeader(ByteBuffer buffer, int name, int type, int flags,
+            int offset, int size, int link, int info, int addralign, int entsize) {
+        buffer.putInt(name);
+        buffer.putInt(type);
+        buffer.putInt(flags);
+        buffer.putInt(0); // sh_addr
+        buffer.putInt(offset);
+        buffer.putInt(size);
+        buffer.putInt(link);
+        buffer.putInt(info);
+        buffer.putInt(addralign);
+        buffer.putInt(entsize);
+    }
+
+    /**
+     * Write every remaining byte of a buffer to the channel.
+     * 
+     * @param channel The channel to write to.
+     * @param buffer The buffer.
+     * @throws IOException When an error occurs during writing.
+     */
+    private static void writeBytes(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Open a file for writing, replacing any existing contents.
+     * 
+     * @param outFile The file.
+     * @return The channel.
+     * @throws IOException When the file can't be opened.
+     */
+    private static FileChannel open(File outFile) throws IOException {
+        return FileChannel.open(outFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Get the size of the string table for the labels.
+     * 
+     * @param labels The labels.
+     * @return The size, including the empty name and every terminator.
+     */
+    private static int strtabSize(List<Map.Entry<String, Integer>> labels) {
+        int size = 1;
+        for (Map.Entry<String, Integer> label : labels) {
+            size += label.getKey().getBytes(StandardCharsets.UTF_8).length + 1;
+        }
+        return size;
+    }
+
+    /**
+     * Round an offset up to a multiple of 4.
+     * 
+     * @param offset The offset.
+     * @return The aligned offset.
+     */
+    private static int align(int offset) {
+        return (offset + 3) & ~3;
+    }
+}
@@ -0,0 +1,238 @@
+package main;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Cursor based parser for a single instruction. The instruction is copied into
+ * a reusable byte window and its mnemonic and operands are parsed straight
+ * into an {@link Operands} record, so once the window has grown to the longest
+ * line no allocation is made per line.
+ */
+public final class OperandParser {
+    private byte[] _window = new byte[128];
+    private int _pos = 0;
+    private int _end = 0;
+
+    /**
+     * Load an instruction from the source into the window.
+     * 
+     * @param source The mapped source.
+     * @param start The position of the first byte of the instruction.
+     * @param end The position after the last byte of the instruction.
+     */
+    public void load(MappedSource source, int start, int end) {
+        int length = end - start;
+        if (length > _window.length) {
+            _window = new byte[Math.max(length, _window.length * 2)];
+        }
+        source.getBytes(start, _window, length);
+        _pos = 0;
+        _end = length;
+    }
+
+    /**
+     * Parse the mnemonic at the start of the window.
+     * 
+     * @param instructionSet The instruction set to resolve the mnemonic in.
+     * @return The index of the mnemonic.
+     * @throws IllegalArgumentException When the instruction is not found.
+     */
+    public int parseMnemonic(InstructionSet instructionSet) {
+        skipWhitespace();
+        int start = _pos;
+        while (_pos < _end && !isWhitespace(_window[_pos])) {
+            _pos++;
+        }
+        return instructionSet.resolve(_window, start, _pos);
+    }
+
+    /**
+     * Parse the operands following the mnemonic, in the order given by the
+     * operand syntax of the instruction.
+     * 
+     * @param syntax The operand syntax, one of the InstructionSet constants.
+     * @param ops The operand record to fill.
+     * @throws IllegalArgumentException When the operands don't match the
+     *         syntax.
+     */
+    public void parseOperands(int syntax, Operands ops) {
+        ops.clear();
+        switch (syntax) {
+            case InstructionSet.REG_REG_IMM:
+                ops.setSlot(0, parseRegister());
+                expect(',');
+                ops.setSlot(1, parseRegister());
+                expect(',');
+                ops.setSlot(2, parseImmediate());
+                break;
+            case InstructionSet.REG_OFFSET_BASE:
+                ops.setSlot(0, parseRegister());
+                expect(',');
+                ops.setSlot(2, parseImmediate());
+                expect('(');
+                ops.setSlot(1, parseRegister());
+                expect(')');
+                break;
+            case InstructionSet.LABEL:
+                parseLabel(ops);
+                break;
+            case InstructionSet.REG:
+                ops.setSlot(0, parseRegister());
+                break;
+            case InstructionSet.REG_REG_LABEL:
+                ops.setSlot(0, parseRegister());
+                expect(',');
+                ops.setSlot(1, parseRegister());
+                expect(',');
+                parseLabel(ops);
+                break;
+            case InstructionSet.REG_IMM:
+                ops.setSlot(0, parseRegister());
+                expect(',');
+                ops.setSlot(1, parseImmediate());
+                break;
+            case InstructionSet.REG_REG:
+                ops.setSlot(0, parseRegister());
+                expect(',');
+                ops.setSlot(1, parseRegister());
+                break;
+            default:
+                ops.setSlot(0, parseRegister());
+                expect(',');
+                ops.setSlot(1, parseRegister());
+                expect(',');
+                ops.setSlot(2, parseRegister());
+                break;
+        }
+        skipWhitespace();
+        if (_pos != _end) {
+            throw error();
+        }
+    }
+
+    /**
+     * Parse a register operand, e.g. $sp.
+     * 
+     * @return The register number.
+     */
+    private int parseRegister() {
+        skipWhitespace();
+        int start = _pos;
+        while (_pos < _end && isOperandByte(_window[_pos])) {
+            _pos++;
+        }
+        int reg = Main.RegistersEnum.getNumber(_window, start, _pos);
+        if (reg < 0) {
+            throw error();
+        }
+        return reg;
+    }
+
+    /**
+     * Parse an immediate operand, in decimal or 0x prefixed hex, with an
+     * optional sign. A value up to 0xffffffff is taken as its 32 bit pattern,
+     * a negative one must be at least -2147483648.
+     * 
+     * @return The immediate value, as 32 bits.
+     */
+    private int parseImmediate() {
+        skipWhitespace();
+        boolean negative = false;
+        if (_pos < _end && (_window[_pos] == '-' || _window[_pos] == '+')) {
+            negative = _window[_pos] == '-';
+            _pos++;
+        }
+        int radix = 10;
+        if (_pos + 1 < _end && _window[_pos] == '0'
+                && (_window[_pos + 1] == 'x' || _window[_pos + 1] == 'X')) {
+            radix = 16;
+            _pos += 2;
+        }
+        int start = _pos;
+        long value = 0;
+        while (_pos < _end) {
+            int digit = Character.digit(_window[_pos], radix);
+            if (digit < 0) {
+                break;
+            }
+            value = value * radix + digit;
+            if (value > 0xffffffffL) {
+                throw error();
+            }
+            _pos++;
+        }
+        if (_pos == start || (negative && value > 0x80000000L)) {
+            throw error();
+        }
+        return (int) (negative ? -value : value);
+    }
+
+    /**
+     * Parse a label operand into the operand record.
+     * 
+     * @param ops The operand record.
+     */
+    private void parseLabel(Operands ops) {
+        skipWhitespace();
+        int start = _pos;
+        while (_pos < _end && isOperandByte(_window[_pos])) {
+            _pos++;
+        }
+        if (_pos == start) {
+            throw error();
+        }
+        ops.setLabel(_window, start, _pos);
+    }
+
+    /**
+     * Skip whitespace and then the expected separator.
+     * 
+     * @param separator The separator.
+     */
+    private void expect(char separator) {
+        skipWhitespace();
+        if (_pos >= _end || _window[_pos] != separator) {
+            throw error();
+        }
+        _pos++;
+    }
+
+    /**
+     * Move the cursor past any whitespace.
+     */
+    private void skipWhitespace() {
+        while (_pos < _end && isWhitespace(_window[_pos])) {
+            _pos++;
+        }
+    }
+
+    /**
+     * Build the exception thrown for a syntax error.
+     * 
+     * @return The exception.
+     */
+    private IllegalArgumentException error() {
+        return new IllegalArgumentException(String.format("Error processing line: %s",
+                new String(_window, 0, _end, StandardCharsets.ISO_8859_1)));
+    }
+
+    /**
+     * Determine if a byte is whitespace.
+     * 
+     * @param b The byte to test.
+     * @return True if the byte is whitespace or a control character.
+     */
+    private static boolean isWhitespace(byte b) {
+        return (b & 0xff) <= ' ';
+    }
+
+    /**
+     * Determine if a byte can be part of a register or label operand.
+     * 
+     * @param b The byte to test.
+     * @return True if the byte isn't whitespace or a separator.
+     */
+    private static boolean isOperandByte(byte b) {
+        return (b & 0xff) > ' ' && b != ',' && b != '(' && b != ')';
+    }
+}
@@ -0,0 +1,106 @@
+package main;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reusable record of the parsed operands of one instruction. Registers and
+ * immediates are stored in the operand slots read by the encoders, and a label
+ * operand is stored as a range of the parser window, so parsing a line doesn't
+ * allocate.
+ */
+public final class Operands {
+    private final int[] _slots = new int[InstructionEncoder.NUM_OF_SLOTS];
+    private byte[] _window;
+    private int _labelStart = -1;
+    private int _labelEnd = -1;
+
+    /**
+     * Get the operand slots. The NONE slot always holds 0.
+     * 
+     * @return The operand slots.
+     */
+    public int[] getSlots() {
+        return _slots;
+    }
+
+    /**
+     * Set an operand slot.
+     * 
+     * @param slot The slot to set.
+     * @param value The register number or immediate.
+     */
+    public void setSlot(int slot, int value) {
+        _slots[slot] = value;
+    }
+
+    /**
+     * Clear the label and the NONE slot before a new line is parsed.
+     */
+    public void clear() {
+        _slots[InstructionEncoder.NONE] = 0;
+        _labelStart = -1;
+        _labelEnd = -1;
+    }
+
+    /**
+     * Set the label operand.
+     * 
+     * @param window The parser window holding the label.
+     * @param start The position of the first byte of the label.
+     * @param end The position after the last byte of the label.
+     */
+    public void setLabel(byte[] window, int start, int end) {
+        _window = window;
+        _labelStart = start;
+        _labelEnd = end;
+    }
+
+    /**
+     * Determine if the instruction has a label operand.
+     * 
+     * @return True if the instruction has a label operand.
+     */
+    public boolean hasLabel() {
+        return _labelStart >= 0;
+    }
+
+    /**
+     * Get the window holding the label operand.
+     * 
+     * @return The window.
+     */
+    public byte[] getLabelWindow() {
+        return _window;
+    }
+
+    /**
+     * Get the position of the first byte of the label operand.
+     * 
+     * @return The start of the label, or -1 if there is none.
+     */
+    public int getLabelStart() {
+        return _labelStart;
+    }
+
+    /**
+     * Get the position after the last byte of the label operand.
+     * 
+     * @return The end of the label, or -1 if there is none.
+     */
+    public int getLabelEnd() {
+        return _labelEnd;
+    }
+
+    /**
+     * Get the label operand as a String.
+     * 
+     * @return The label, or null if the instruction doesn't have one.
+     */
+    public String getLabel() {
+        if (_labelStart < 0) {
+            return null;
+        }
+        return new String(_window, _labelStart, _labelEnd - _labelStart,
+                StandardCharsets.ISO_8859_1);
+    }
+}
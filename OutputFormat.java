@@ -0,0 +1,109 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The formats the encoded words can be written in.
+ */
+public enum OutputFormat {
+    /** One 8 digit hex word per line. */
+    HEX("hex", ".hex"),
+    /** Raw big-endian 32 bit words. */
+    BIN("bin", ".bin"),
+    /** ELF32 big-endian MIPS relocatable object. */
+    ELF("elf", ".o"),
+    /** Intel HEX records. */
+    IHEX("ihex", ".ihex"),
+    /** Logisim "v2.0 raw" ROM image. */
+    LOGISIM("logisim", ".rom"),
+    /** Altera memory initialization file. */
+    MIF("mif", ".mif"),
+    /** Xilinx coefficient file. */
+    COE("coe", ".coe");
+
+    private final String _name;
+    private final String _extension;
+
+    OutputFormat(String name, String extension) {
+        _name = name;
+        _extension = extension;
+    }
+
+    /**
+     * Create an emitter for a text image format.
+     * 
+     * @return The emitter, or null when the format is not a text image.
+     */
+    private ImageEmitter newEmitter() {
+        switch (this) {
+            case HEX:
+                return new ImageEmitter.FixedHex();
+            case IHEX:
+                return new ImageEmitter.IntelHex();
+            case LOGISIM:
+                return new ImageEmitter.LogisimRaw();
+            case MIF:
+                return new ImageEmitter.Mif();
+            case COE:
+                return new ImageEmitter.Coe();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Get a format based on its name, as given on the command line.
+     * 
+     * @param name The format name.
+     * @return The format.
+     * @throws IllegalArgumentException When there is no such format.
+     */
+    public static OutputFormat getByName(String name) {
+        for (OutputFormat format : values()) {
+            if (format._name.equals(name)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unknown output format %s!", name));
+    }
+
+    /**
+     * Get the name of the format, as given on the command line.
+     * 
+     * @return The format name.
+     */
+    public String getName() {
+        return _name;
+    }
+
+    /**
+     * Get the file extension of the format.
+     * 
+     * @return The file extension, including the dot.
+     */
+    public String getExtension() {
+        return _extension;
+    }
+
+    /**
+     * Write the encoded words in this format.
+     * 
+     * @param context The context holding the encoded words and labels.
+     * @param outFile The file to write to.
+     * @throws IOException When an error occurs during writing of the file.
+     */
+    public void write(AssemblyContext context, File outFile) throws IOException {
+        switch (this) {
+            case BIN:
+                ObjectWriter.writeBinary(context, outFile);
+                break;
+            case ELF:
+                ObjectWriter.writeElf(context, outFile);
+                break;
+            default:
+                newEmitter().emit(context, outFile);
+                break;
+        }
+    }
+}
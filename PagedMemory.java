@@ -0,0 +1,313 @@
+package main;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Memory covering the whole 32 bit address space, such as the stack near the
+ * top and data near the code at the bottom. A two-level table maps the upper
+ * 10 bits of an address to a table and the next 10 bits to a 4 KB page of
+ * direct memory, big-endian like MIPS, which is only allocated when it is
+ * first stored to. Loads from a page that was never stored to read 0. The
+ * last page accessed is cached, so a run of accesses to the same page skips
+ * the tables, the way a TLB does.
+ * <p>
+ * Every page stored to since the last snapshot or restore is marked dirty.
+ * {@link #snapshot()} copies the pages into a {@link Snapshot}, and
+ * {@link #restore(Snapshot)} puts back only the dirty pages, so many runs can
+ * start from the same state without building the memory again. A snapshot
+ * never changes and can be restored into any number of memories.
+ * <p>
+ * {@link #setMaxPages(int)} caps how many pages can be allocated, so a run
+ * that stores all over the address space fails instead of using up the
+ * memory of the JVM.
+ */
+public class PagedMemory implements Memory {
+    /** Bits of the offset in a page. */
+    public static final int PAGE_BITS = 12;
+    /** Bytes in a page. */
+    public static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int TABLE_BITS = 10;
+    private static final int TABLE_SIZE = 1 << TABLE_BITS;
+    private static final int OFFSET_MASK = PAGE_SIZE - 1;
+    /** Page number of an empty cache, page numbers only have 20 bits. */
+    private static final int NO_PAGE = -1;
+
+    /**
+     * The contents of the pages of a memory at one point.
+     */
+    public static final class Snapshot {
+        private final int[] _pages;
+        private final byte[][] _contents;
+
+        /**
+         * Constructor that accepts the pages.
+         * 
+         * @param pages The page numbers, in order.
+         * @param contents The bytes of each page.
+         */
+        private Snapshot(int[] pages, byte[][] contents) {
+            _pages = pages;
+            _contents = contents;
+        }
+
+        /**
+         * Get the number of pages held.
+         * 
+         * @return The number of pages.
+         */
+        public int getPages() {
+            return _pages.length;
+        }
+
+        /**
+         * Determine if another snapshot holds the same pages with the same
+         * bytes.
+         * 
+         * @param other The other object.
+         * @return True if the memories were the same.
+         */
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Snapshot && Arrays.equals(_pages, ((Snapshot) other)._pages)
+                    && Arrays.deepEquals(_contents, ((Snapshot) other)._contents);
+        }
+
+        /**
+         * Get a hash code of the pages and their bytes.
+         * 
+         * @return The hash code.
+         */
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(_pages) + Arrays.deepHashCode(_contents);
+        }
+
+        /**
+         * Get the bytes of a page.
+         * 
+         * @param page The page number.
+         * @return The bytes, or null if the page wasn't allocated.
+         */
+        private byte[] find(int page) {
+            int i = Arrays.binarySearch(_pages, page);
+            return i >= 0 ? _contents[i] : null;
+        }
+    }
+
+    private final ByteBuffer[][] _tables = new ByteBuffer[TABLE_SIZE][];
+    private final boolean[][] _dirtyTables = new boolean[TABLE_SIZE][];
+    private int[] _dirty = new int[16];
+    private int _numOfDirty = 0;
+    private int _numOfPages = 0;
+    private int _maxPages = Integer.MAX_VALUE;
+    private int _lastPage = NO_PAGE;
+    private ByteBuffer _lastBuffer = null;
+    private boolean _lastDirty = false;
+    private Snapshot _base = null;
+
+    @Override
+    public int loadWord(int address) {
+        int page = address >>> PAGE_BITS;
+        if (page != _lastPage) {
+            ByteBuffer buffer = findPage(page);
+            if (buffer == null) {
+                checkAligned(address);
+                return 0;
+            }
+            _lastPage = page;
+            _lastBuffer = buffer;
+            _lastDirty = _dirtyTables[page >>> TABLE_BITS][page & (TABLE_SIZE - 1)];
+        }
+        checkAligned(address);
+        return _lastBuffer.getInt(address & OFFSET_MASK);
+    }
+
+    @Override
+    public void storeWord(int address, int value) {
+        checkAligned(address);
+        int page = address >>> PAGE_BITS;
+        if (page != _lastPage || !_lastDirty) {
+            touch(page);
+        }
+        _lastBuffer.putInt(address & OFFSET_MASK, value);
+    }
+
+    /**
+     * Get the number of pages allocated.
+     * 
+     * @return The number of pages.
+     */
+    public int getPages() {
+        return _numOfPages;
+    }
+
+    /**
+     * Set the most pages that can be allocated. Pages allocated already are
+     * kept.
+     * 
+     * @param maxPages The most pages.
+     */
+    public void setMaxPages(int maxPages) {
+        _maxPages = maxPages;
+    }
+
+    /**
+     * Get the number of pages stored to since the last snapshot or restore.
+     * 
+     * @return The number of dirty pages.
+     */
+    public int getDirtyPages() {
+        return _numOfDirty;
+    }
+
+    /**
+     * Copy every page, and start marking dirty pages from here.
+     * 
+     * @return The snapshot.
+     */
+    public Snapshot snapshot() {
+        int[] pages = new int[_numOfPages];
+        byte[][] contents = new byte[_numOfPages][];
+        int n = 0;
+        for (int table = 0; table < TABLE_SIZE; table++) {
+            if (_tables[table] == null) {
+                continue;
+            }
+            for (int i = 0; i < TABLE_SIZE; i++) {
+                ByteBuffer buffer = _tables[table][i];
+                if (buffer != null) {
+                    pages[n] = table << TABLE_BITS | i;
+                    contents[n] = new byte[PAGE_SIZE];
+                    buffer.get(0, contents[n]);
+                    n++;
+                }
+            }
+        }
+        clearDirty();
+        _base = new Snapshot(pages, contents);
+        return _base;
+    }
+
+    /**
+     * Put the memory back the way it was when a snapshot was taken. When the
+     * snapshot is the last one taken or restored here only the dirty pages
+     * are copied, otherwise every page is.
+     * 
+     * @param snapshot The snapshot.
+     */
+    public void restore(Snapshot snapshot) {
+        if (snapshot == _base) {
+            for (int i = 0; i < _numOfDirty; i++) {
+                restorePage(snapshot, _dirty[i]);
+            }
+        }
+        else {
+            for (int table = 0; table < TABLE_SIZE; table++) {
+                if (_tables[table] != null) {
+                    Arrays.fill(_tables[table], null);
+                }
+            }
+            _numOfPages = 0;
+            for (int i = 0; i < snapshot._pages.length; i++) {
+                restorePage(snapshot, snapshot._pages[i]);
+            }
+        }
+        clearDirty();
+        _base = snapshot;
+    }
+
+    /**
+     * Put a page back the way it is in a snapshot, dropping it if the
+     * snapshot doesn't have it.
+     * 
+     * @param snapshot The snapshot.
+     * @param page The page number.
+     */
+    private void restorePage(Snapshot snapshot, int page) {
+        byte[] contents = snapshot.find(page);
+        if (contents != null) {
+            touch(page);
+            _lastBuffer.put(0, contents);
+        }
+        else if (findPage(page) != null) {
+            _tables[page >>> TABLE_BITS][page & (TABLE_SIZE - 1)] = null;
+            _numOfPages--;
+        }
+    }
+
+    /**
+     * Forget which pages are dirty.
+     */
+    private void clearDirty() {
+        for (int i = 0; i < _numOfDirty; i++) {
+            int page = _dirty[i];
+            _dirtyTables[page >>> TABLE_BITS][page & (TABLE_SIZE - 1)] = false;
+        }
+        _numOfDirty = 0;
+        _lastPage = NO_PAGE;
+        _lastBuffer = null;
+        _lastDirty = false;
+    }
+
+    /**
+     * Get a page, if it was allocated.
+     * 
+     * @param page The page number.
+     * @return The page, or null.
+     */
+    private ByteBuffer findPage(int page) {
+        ByteBuffer[] table = _tables[page >>> TABLE_BITS];
+        return table == null ? null : table[page & (TABLE_SIZE - 1)];
+    }
+
+    /**
+     * Get a page ready to be stored to: allocate it if needed, mark it dirty
+     * and cache it.
+     * 
+     * @param page The page number.
+     * @throws IllegalStateException When allocating it would go over the most
+     *         pages.
+     */
+    private void touch(int page) {
+        int table = page >>> TABLE_BITS;
+        int i = page & (TABLE_SIZE - 1);
+        if (_tables[table] == null) {
+            _tables[table] = new ByteBuffer[TABLE_SIZE];
+            _dirtyTables[table] = new boolean[TABLE_SIZE];
+        }
+        ByteBuffer buffer = _tables[table][i];
+        if (buffer == null) {
+            if (_numOfPages >= _maxPages) {
+                throw new IllegalStateException(String.format(
+                        "No page left for %08x, all %d are in use!", page << PAGE_BITS, _maxPages));
+            }
+            buffer = ByteBuffer.allocateDirect(PAGE_SIZE);
+            _tables[table][i] = buffer;
+            _numOfPages++;
+        }
+        if (!_dirtyTables[table][i]) {
+            _dirtyTables[table][i] = true;
+            if (_numOfDirty == _dirty.length) {
+                _dirty = Arrays.copyOf(_dirty, _numOfDirty * 2);
+            }
+            _dirty[_numOfDirty++] = page;
+        }
+        _lastPage = page;
+        _lastBuffer = buffer;
+        _lastDirty = true;
+    }
+
+    /**
+     * Check that an address is word aligned.
+     * 
+     * @param address The address.
+     * @throws IllegalStateException When it isn't.
+     */
+    private static void checkAligned(int address) {
+        if ((address & 3) != 0) {
+            throw new IllegalStateException(
+                    String.format("The word at %08x is not aligned!", address));
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Assembles a single large source on a fork/join pool. Once the labels have
+ * been collected the encoding of each line only depends on the line and the
+ * labels, so the source is split into chunks at line boundaries during the
+ * label pass and the chunks are encoded in parallel. The words of the chunks
+ * are joined in order, so the result is the same as the sequential path.
+ */
+public class ParallelEncoder {
+    /** Default number of lines per chunk. */
+    public static final int DEFAULT_CHUNK_LINES = 1 << 16;
+
+    private final Assembler _assembler;
+    private final ForkJoinPool _pool;
+    private final int _chunkLines;
+
+    /**
+     * Constructor that uses the common pool and the default chunk size.
+     * 
+     * @param assembler The assembler to encode with.
+     */
+    public ParallelEncoder(Assembler assembler) {
+        this(assembler, ForkJoinPool.commonPool(), DEFAULT_CHUNK_LINES);
+    }
+
+    /**
+     * Constructor that accepts the pool and the chunk size.
+     * 
+     * @param assembler The assembler to encode with.
+     * @param pool The pool to encode the chunks on.
+     * @param chunkLines The number of lines per chunk.
+     */
+    public ParallelEncoder(Assembler assembler, ForkJoinPool pool, int chunkLines) {
+        if (chunkLines < 1) {
+            throw new IllegalArgumentException("The number of lines per chunk must be at least 1!");
+        }
+        _assembler = assembler;
+        _pool = pool;
+        _chunkLines = chunkLines;
+    }
+
+    /**
+     * Assemble the input file, encoding its chunks in parallel.
+     * 
+     * @param inFile The file containing the MIPS instructions.
+     * @return The context holding the labels and encoded words.
+     * @throws IOException When an error occurs during reading of the file.
+     * @throws IllegalArgumentException When an instruction is not found or the
+     *         syntax is incorrect.
+     */
+    public AssemblyContext assemble(File inFile) throws IOException {
+        AssemblyContext context = new AssemblyContext();
+        MappedSource source = null;
+        try {
+            long start = System.nanoTime();
+            source = new MappedSource(inFile);
+            long read = System.nanoTime();
+            List<int[]> boundaries = new ArrayList<>();
+            _assembler.processLabels(source, context, _chunkLines, boundaries);
+            boundaries.add(new int[] { source.getLimit(), 0 });
+            long labels = System.nanoTime();
+            AssemblyContext[] parts = _pool
+                    .invoke(new ChunkTask(source, context, boundaries, 0, boundaries.size() - 1));
+            for (AssemblyContext part : parts) {
+                context.addWords(part);
+            }
+            AssemblerMetrics metrics = _assembler.getMetrics();
+            metrics.addNanos(AssemblerMetrics.READ, read - start);
+            metrics.addNanos(AssemblerMetrics.LABELS, labels - read);
+            metrics.addNanos(AssemblerMetrics.ENCODE, System.nanoTime() - labels);
+            metrics.addJob(context);
+        }
+        finally {
+            if (source != null) {
+                source.close();
+            }
+        }
+        return context;
+    }
+
+    /**
+     * Task that encodes a range of chunks, splitting the range in half until a
+     * single chunk is left.
+     */
+    private class ChunkTask extends RecursiveTask<AssemblyContext[]> {
+        private static final long serialVersionUID = 1L;
+        private final MappedSource _source;
+        private final AssemblyContext _job;
+        private final List<int[]> _boundaries;
+        private final int _first;
+        private final int _last;
+
+        /**
+         * Constructor that accepts the range of chunks to encode.
+         * 
+         * @param source The mapped source.
+         * @param job The context of the job, holding the labels.
+         * @param boundaries The chunk boundaries, as {position, memory
+         *        location} pairs, followed by the end of the source.
+         * @param first The index of the first chunk.
+         * @param last The index after the last chunk.
+         */
+        ChunkTask(MappedSource source, AssemblyContext job, List<int[]> boundaries, int first,
+                int last) {
+            _source = source;
+            _job = job;
+            _boundaries = boundaries;
+            _first = first;
+            _last = last;
+        }
+
+        /**
+         * Encode the chunks.
+         * 
+         * @return The contexts holding the words of each chunk, in order.
+         */
+        @Override
+        protected AssemblyContext[] compute() {
+            if (_last - _first == 1) {
+                int[] start = _boundaries.get(_first);
+                AssemblyContext part = new AssemblyContext(_job);
+                _assembler.processInstructions(
+                        _source.slice(start[0], _boundaries.get(_last)[0]), part, start[1]);
+                return new AssemblyContext[] { part };
+            }
+            int middle = (_first + _last) >>> 1;
+            ChunkTask left = new ChunkTask(_source, _job, _boundaries, _first, middle);
+            ChunkTask right = new ChunkTask(_source, _job, _boundaries, middle, _last);
+            left.fork();
+            AssemblyContext[] rightParts = right.compute();
+            AssemblyContext[] leftParts = left.join();
+            AssemblyContext[] parts = new AssemblyContext[leftParts.length + rightParts.length];
+            System.arraycopy(leftParts, 0, parts, 0, leftParts.length);
+            System.arraycopy(rightParts, 0, parts, leftParts.length, rightParts.length);
+            return parts;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Benchmark of each phase of the assembler on its own, so a regression in one
+ * phase shows up in its own number: the label pass, the instruction pass,
+ * register lookup, instruction encoding, and the symbol table against a
+ * HashMap of Strings. The source is generated by
+ * {@link ProgramGenerator} from a seed, so every run measures the same input.
+ */
+public class PhaseBenchmark {
+    private static final int DEFAULT_LINES = 100000;
+    private static final int DEFAULT_ITERATIONS = 10;
+    private static final int LOOKUPS = 1 << 20;
+    private static final int LABELS = 1 << 18;
+
+    /**
+     * A phase to benchmark.
+     */
+    private interface Phase {
+        /**
+         * Run the phase once.
+         * 
+         * @return A value computed by the phase, so the JIT can't drop the
+         *         work.
+         * @throws IOException When an error occurs during reading of a file.
+         */
+        long run() throws IOException;
+    }
+
+    /**
+     * Main method. Accepts optionally the number of generated lines, the
+     * number of timed iterations and the seed, in that order.
+     * 
+     * @param args The command line arguments.
+     * @throws Exception When invalid arguments are passed.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length > 3) {
+            throw new Exception(
+                    "Invalid arguments! You can provide the number of lines, the number of iterations and the seed");
+        }
+        long lines = args.length > 0 ? Long.parseLong(args[0]) : DEFAULT_LINES;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+        Logger.getLogger(Assembler.class.getName()).setLevel(Level.WARNING);
+
+        File inFile = File.createTempFile("phase", ".s");
+        inFile.deleteOnExit();
+        new ProgramGenerator(InstructionSet.MIPS, seed).generate(inFile, lines);
+        final Assembler assembler = new Assembler();
+        final InstructionSet instructionSet = assembler.getInstructionSet();
+
+        try (final MappedSource source = new MappedSource(inFile)) {
+            final AssemblyContext labels = new AssemblyContext();
+            assembler.processLabels(source, labels);
+            final byte[][] registers = registerNames(seed);
+            final InstructionEncoder[] encoders = encoders(instructionSet);
+            final int[][] operands = operands(seed);
+
+            time("labels", () -> {
+                source.rewind();
+                AssemblyContext context = new AssemblyContext();
+                assembler.processLabels(source, context);
+                return context.getLabelMap().size();
+            }, lines, iterations);
+            time("instructions", () -> {
+                source.rewind();
+                AssemblyContext context = new AssemblyContext(labels);
+                assembler.processInstructions(source, context, 0);
+                return context.getNumOfWords();
+            }, lines, iterations);
+            time("registers", () -> {
+                long sum = 0;
+                for (int i = 0; i < LOOKUPS; i++) {
+                    byte[] name = registers[i & (registers.length - 1)];
+                    sum += Main.RegistersEnum.getNumber(name, 0, name.length);
+                }
+                return sum;
+            }, LOOKUPS, iterations);
+            time("encode", () -> {
+                long sum = 0;
+                for (int i = 0; i < LOOKUPS; i++) {
+                    InstructionEncoder encoder = encoders[i % encoders.length];
+                    sum += encoder.encode(operands[i & (operands.length - 1)])
+                            | encoder.encodeTarget(i << 2, i << 2);
+                }
+                return sum;
+            }, LOOKUPS, iterations);
+
+            // the symbol table against the HashMap it replaced, which built a
+            // String for every definition and every reference
+            final byte[][] labelNames = labelNames();
+            time("symbols", () -> {
+                SymbolTable symbols = new SymbolTable();
+                for (int i = 0; i < labelNames.length; i++) {
+                    symbols.define(labelNames[i], 0, labelNames[i].length, i << 2);
+                }
+                long sum = 0;
+                for (int i = 0; i < labelNames.length; i++) {
+                    byte[] name = labelNames[(i * 7) & (labelNames.length - 1)];
+                    sum += symbols.find(name, 0, name.length, 0);
+                }
+                return sum;
+            }, LABELS, iterations);
+            time("hashmap", () -> {
+                Map<String, Integer> labelMap = new HashMap<>();
+                for (int i = 0; i < labelNames.length; i++) {
+                    labelMap.put(new String(labelNames[i], StandardCharsets.ISO_8859_1), i << 2);
+                }
+                long sum = 0;
+                for (int i = 0; i < labelNames.length; i++) {
+                    byte[] name = labelNames[(i * 7) & (labelNames.length - 1)];
+                    sum += labelMap.get(new String(name, StandardCharsets.ISO_8859_1));
+                }
+                return sum;
+            }, LABELS, iterations);
+        }
+    }
+
+    /**
+     * Warm up and time a phase, then print the average time per run and per
+     * item, and the allocation per run.
+     * 
+     * @param name The name of the phase.
+     * @param phase The phase.
+     * @param items The number of lines or lookups handled by one run.
+     * @param iterations The number of timed iterations.
+     * @throws IOException When an error occurs during reading of a file.
+     */
+    private static void time(String name, Phase phase, long items, int iterations)
+            throws IOException {
+        long check = 0;
+        for (int i = 0; i < iterations; i++) {
+            check += phase.run();
+        }
+        long startBytes = AssemblerBenchmark.allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            check += phase.run();
+        }
+        long nanos = System.nanoTime() - start;
+        long bytes = AssemblerBenchmark.allocatedBytes() - startBytes;
+        System.out.println(String.format("%-12s %10.3f ms/op %8.2f ns/item %12d bytes/op (%d)",
+                name, nanos / 1e6 / iterations, (double) nanos / iterations / items,
+                bytes / iterations, check));
+    }
+
+    /**
+     * Get a random sequence of register names, by name and by number.
+     * 
+     * @param seed The seed.
+     * @return The register names, a power of 2 of them.
+     */
+    private static byte[][] registerNames(long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        byte[][] names = new byte[1024][];
+        for (int i = 0; i < names.length; i++) {
+            int number = random.nextInt(32);
+            String name = random.nextInt(8) == 0 ? "$" + number
+                    : Main.RegistersEnum.getByNumber(number).getRegName();
+            names[i] = name.getBytes(StandardCharsets.ISO_8859_1);
+        }
+        return names;
+    }
+
+    /**
+     * Get label names in the style of generated code.
+     * 
+     * @return The label names, a power of 2 of them.
+     */
+    private static byte[][] labelNames() {
+        byte[][] names = new byte[LABELS][];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = ("func_" + (i >>> 6) + "_bb" + (i & 63)).getBytes(StandardCharsets.ISO_8859_1);
+        }
+        return names;
+    }
+
+    /**
+     * Get every encoder used by the instruction set.
+     * 
+     * @param instructionSet The instruction set.
+     * @return The encoders.
+     */
+    private static InstructionEncoder[] encoders(InstructionSet instructionSet) {
+        List<InstructionEncoder> encoders = new ArrayList<>();
+        for (String name : instructionSet.getMnemonics()) {
+            for (int step : instructionSet.getSteps(instructionSet.resolve(name))) {
+                encoders.add(instructionSet.getEncoder(step));
+            }
+        }
+        return encoders.toArray(new InstructionEncoder[0]);
+    }
+
+    /**
+     * Get random operand slots.
+     * 
+     * @param seed The seed.
+     * @return The operand slots, a power of 2 of them.
+     */
+    private static int[][] operands(long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        int[][] operands = new int[1024][];
+        for (int i = 0; i < operands.length; i++) {
+            // immediates in range of both the signed and the unsigned encoders
+            operands[i] = new int[] { random.nextInt(32), random.nextInt(32),
+                random.nextInt(0, 32768), 0 };
+        }
+        return operands;
+    }
+}
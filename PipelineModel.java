@@ -0,0 +1,242 @@
+package main;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Cycle-level timing model of a classic IF/ID/EX/MEM/WB pipeline, fed every
+ * word the {@link Interpreter} runs. Results are forwarded, so a word only
+ * waits on the one before it for the cycle between a lw and a use of the
+ * loaded register, and mflo and mfhi wait for mult to finish. A taken branch
+ * is resolved in EX and a jump in ID, and the words fetched behind them are
+ * thrown away, one fewer when there is a delay slot. Instruction fetch and
+ * lw and sw go through an I-cache and a D-cache, and a miss stalls the
+ * pipeline.
+ * <p>
+ * Every stall cycle is charged to the word that caused it: the word waiting
+ * for its operand, the jump or branch, or the word that missed. The report
+ * sums them up by source line.
+ */
+public class PipelineModel implements ExecutionListener {
+    /** Cycles a cache miss stalls the pipeline by default. */
+    public static final int DEFAULT_MISS_PENALTY = 10;
+    /** Words thrown away behind a taken branch, resolved in EX. */
+    static final int BRANCH_PENALTY = 2;
+    /** Words thrown away behind a jump, resolved in ID. */
+    static final int JUMP_PENALTY = 1;
+    /** Stalls waiting for a loaded register. */
+    public static final int LOAD_USE = 0;
+    /** Stalls waiting for mult. */
+    public static final int MULT = 1;
+    /** Words thrown away behind taken jumps and branches. */
+    public static final int BRANCH = 2;
+    /** Stalls on I-cache misses. */
+    public static final int ICACHE = 3;
+    /** Stalls on D-cache misses. */
+    public static final int DCACHE = 4;
+    private static final String[] STALL_NAMES = { "load-use", "mult", "branch", "icache",
+            "dcache" };
+    /** Cycles to drain the last word from ID through WB. */
+    private static final int DRAIN = 4;
+    private static final long MEMORY = 1L << InstructionWord.MEMORY;
+
+    private final CacheModel _icache;
+    private final CacheModel _dcache;
+    private final int _missPenalty;
+    private final int _slotDiscount;
+    // cycle each register can be read in ID, and the stall to charge until then
+    private final long[] _ready = new long[InstructionWord.MEMORY];
+    private final int[] _readyKind = new int[InstructionWord.MEMORY];
+    private final long[] _counts;
+    private final long[][] _stalls;
+    private final long[] _totalStalls = new long[STALL_NAMES.length];
+    private long _cycle = 0;
+    private long _instructions = 0;
+
+    /**
+     * Constructor that accepts the size of the program and the caches.
+     * 
+     * @param numOfWords The number of words in the program.
+     * @param icache The instruction cache.
+     * @param dcache The data cache.
+     * @param missPenalty The cycles a cache miss stalls the pipeline.
+     * @param delaySlots Whether every jump and branch has a delay slot.
+     */
+    public PipelineModel(int numOfWords, CacheModel icache, CacheModel dcache, int missPenalty,
+            boolean delaySlots) {
+        _icache = icache;
+        _dcache = dcache;
+        _missPenalty = missPenalty;
+        _slotDiscount = delaySlots ? 1 : 0;
+        _counts = new long[numOfWords];
+        _stalls = new long[STALL_NAMES.length][numOfWords];
+    }
+
+    @Override
+    public void executed(int pc, int word, int address, boolean taken) {
+        int index = pc >>> 2;
+        _instructions++;
+        _counts[index]++;
+        long issue = _cycle + 1;
+        if (!_icache.access(pc)) {
+            issue += stall(ICACHE, index, _missPenalty);
+        }
+        long ready = 0;
+        int kind = LOAD_USE;
+        for (long regs = InstructionWord.reads(word) & ~MEMORY; regs != 0; regs &= regs - 1) {
+            int reg = Long.numberOfTrailingZeros(regs);
+            if (_ready[reg] > ready) {
+                ready = _ready[reg];
+                kind = _readyKind[reg];
+            }
+        }
+        if (ready > issue) {
+            issue += stall(kind, index, ready - issue);
+        }
+
+        long writes = InstructionWord.writes(word);
+        int latency = 1;
+        kind = LOAD_USE;
+        if (InstructionWord.isLoad(word)) {
+            latency = InstructionScheduler.LOAD_LATENCY;
+        }
+        else if ((writes & (1L << InstructionWord.LO)) != 0) {
+            latency = InstructionScheduler.MULT_LATENCY;
+            kind = MULT;
+        }
+        for (long regs = writes & ~MEMORY; regs != 0; regs &= regs - 1) {
+            int reg = Long.numberOfTrailingZeros(regs);
+            _ready[reg] = issue + latency;
+            _readyKind[reg] = kind;
+        }
+        if (((InstructionWord.reads(word) | writes) & MEMORY) != 0 && !_dcache.access(address)) {
+            issue += stall(DCACHE, index, _missPenalty);
+        }
+        if (taken) {
+            int opCode = InstructionWord.opCode(word);
+            int penalty = (opCode == InstructionWord.BEQ || opCode == InstructionWord.BNE
+                    ? BRANCH_PENALTY : JUMP_PENALTY) - _slotDiscount;
+            if (penalty > 0) {
+                issue += stall(BRANCH, index, penalty);
+            }
+        }
+        _cycle = issue;
+    }
+
+    /**
+     * Get the number of cycles, including filling and draining the pipeline.
+     * 
+     * @return The number of cycles.
+     */
+    public long getCycles() {
+        return _instructions == 0 ? 0 : _cycle + DRAIN;
+    }
+
+    /**
+     * Get the number of words run.
+     * 
+     * @return The number of words.
+     */
+    public long getInstructions() {
+        return _instructions;
+    }
+
+    /**
+     * Get the cycles per instruction.
+     * 
+     * @return The CPI, 0 when nothing ran.
+     */
+    public double getCpi() {
+        return _instructions == 0 ? 0 : (double) getCycles() / _instructions;
+    }
+
+    /**
+     * Get the stall cycles of one kind.
+     * 
+     * @param kind LOAD_USE, MULT, BRANCH, ICACHE or DCACHE.
+     * @return The number of stall cycles.
+     */
+    public long getStalls(int kind) {
+        return _totalStalls[kind];
+    }
+
+    /**
+     * Write the report: the cycles and CPI, the stalls of each kind, the miss
+     * rates, and the words run and stalls of each source line.
+     * 
+     * @param out The stream to write to.
+     * @param lines The source line of each word, 0 if unknown.
+     * @param source The lines of the source, or null to leave them out.
+     */
+    public void writeReport(PrintStream out, int[] lines, List<String> source) {
+        out.println(String.format("Cycles: %d, instructions: %d, CPI: %.3f", getCycles(),
+                _instructions, getCpi()));
+        StringBuilder stalls = new StringBuilder("Stalls:");
+        for (int kind = 0; kind < STALL_NAMES.length; kind++) {
+            stalls.append(String.format(" %s %d", STALL_NAMES[kind], _totalStalls[kind]));
+        }
+        out.println(stalls);
+        writeCache(out, "I-cache", _icache);
+        writeCache(out, "D-cache", _dcache);
+
+        // words run, then each kind of stall, by line
+        TreeMap<Integer, long[]> byLine = new TreeMap<>();
+        for (int i = 0; i < _counts.length; i++) {
+            if (_counts[i] == 0) {
+                continue;
+            }
+            long[] sums = byLine.computeIfAbsent(i < lines.length ? lines[i] : 0,
+                    line -> new long[1 + STALL_NAMES.length]);
+            sums[0] += _counts[i];
+            for (int kind = 0; kind < STALL_NAMES.length; kind++) {
+                sums[1 + kind] += _stalls[kind][i];
+            }
+        }
+        StringBuilder header = new StringBuilder(String.format("%6s %12s", "line", "count"));
+        for (String name : STALL_NAMES) {
+            header.append(String.format(" %10s", name));
+        }
+        out.println(header);
+        for (Map.Entry<Integer, long[]> entry : byLine.entrySet()) {
+            int line = entry.getKey();
+            long[] sums = entry.getValue();
+            StringBuilder row = new StringBuilder(
+                    String.format("%6s %12d", line == 0 ? "?" : Integer.toString(line), sums[0]));
+            for (int kind = 0; kind < STALL_NAMES.length; kind++) {
+                row.append(String.format(" %10d", sums[1 + kind]));
+            }
+            if (source != null && line > 0 && line <= source.size()) {
+                row.append("  ").append(source.get(line - 1).trim());
+            }
+            out.println(row);
+        }
+    }
+
+    /**
+     * Charge stall cycles to a word.
+     * 
+     * @param kind The kind of stall.
+     * @param index The index of the word.
+     * @param cycles The number of cycles.
+     * @return The number of cycles.
+     */
+    private long stall(int kind, int index, long cycles) {
+        _stalls[kind][index] += cycles;
+        _totalStalls[kind] += cycles;
+        return cycles;
+    }
+
+    /**
+     * Write the geometry and miss rate of a cache.
+     * 
+     * @param out The stream to write to.
+     * @param name The name of the cache.
+     * @param cache The cache.
+     */
+    private static void writeCache(PrintStream out, String name, CacheModel cache) {
+        out.println(String.format("%s (%s): %d accesses, %d misses (%.2f%%)", name, cache,
+                cache.getAccesses(), cache.getMisses(), cache.getMissRate() * 100));
+    }
+}
@@ -0,0 +1,304 @@
+package main;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Generates synthetic MIPS sources of any size for benchmarking. The same seed
+ * always gives the same source. Mnemonics are drawn from a weighted mix of
+ * the instruction set, operands are generated from the syntax of each
+ * mnemonic, and labels, blank lines, comments and uneven spacing are mixed in
+ * the way hand written sources have them. Every label that is referenced is
+ * also defined, so the sources always assemble.
+ */
+public class ProgramGenerator {
+    private static final int LABEL_EVERY = 16;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final String[] INDENTS = { "", "    ", "\t", "        ", "  " };
+    private static final int[] COMMON_REGISTERS = { 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 16,
+        17, 18, 19, 29, 31 };
+    private static final int[] BASE_REGISTERS = { 29, 28, 30, 4, 5, 16, 17 };
+
+    private final String[] _names;
+    private final int[] _syntax;
+    // the immediates the first word of each mnemonic accepts
+    private final int[] _minImmediates;
+    private final int[] _maxImmediates;
+    private final int[] _cumulativeWeights;
+    private final int _totalWeight;
+    private final SplittableRandom _random;
+
+    /**
+     * Constructor that uses the default mnemonic mix.
+     * 
+     * @param instructionSet The instruction set to draw mnemonics from.
+     * @param seed The seed of the generator.
+     */
+    public ProgramGenerator(InstructionSet instructionSet, long seed) {
+        this(instructionSet, defaultMix(instructionSet), seed);
+    }
+
+    /**
+     * Constructor that accepts the mnemonic mix.
+     * 
+     * @param instructionSet The instruction set to draw mnemonics from.
+     * @param mix The relative weight of each mnemonic. Mnemonics with a weight
+     *        of 0 are never generated.
+     * @param seed The seed of the generator.
+     * @throws IllegalArgumentException When a mnemonic is not in the
+     *         instruction set or the weights are all 0.
+     */
+    public ProgramGenerator(InstructionSet instructionSet, Map<String, Integer> mix, long seed) {
+        _names = new String[mix.size()];
+        _syntax = new int[mix.size()];
+        _minImmediates = new int[mix.size()];
+        _maxImmediates = new int[mix.size()];
+        _cumulativeWeights = new int[mix.size()];
+        int total = 0;
+        int i = 0;
+        for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+            if (entry.getValue() < 0) {
+                throw new IllegalArgumentException(
+                        String.format("The weight of %s can't be negative!", entry.getKey()));
+            }
+            _names[i] = entry.getKey();
+            int mnemonic = instructionSet.resolve(entry.getKey());
+            _syntax[i] = instructionSet.getSyntax(mnemonic);
+            InstructionEncoder first = instructionSet
+                    .getEncoder(instructionSet.getSteps(mnemonic)[0]);
+            _minImmediates[i] = first.getMinImmediate();
+            _maxImmediates[i] = first.getMaxImmediate();
+            total += entry.getValue();
+            _cumulativeWeights[i] = total;
+            i++;
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("The mnemonic mix is empty!");
+        }
+        _totalWeight = total;
+        _random = new SplittableRandom(seed);
+    }
+
+    /**
+     * Main method. Accepts the output file name and the number of lines,
+     * optionally followed by --seed=N and --mix=name:weight,... options.
+     * 
+     * @param args The command line arguments.
+     * @throws Exception When invalid arguments are passed.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            throw new Exception("Invalid arguments! You need to provide the output file and "
+                    + "the number of lines, optionally followed by --seed=N and --mix=name:weight,...");
+        }
+        long seed = 1;
+        Map<String, Integer> mix = defaultMix(InstructionSet.MIPS);
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].startsWith("--seed=")) {
+                seed = Long.parseLong(args[i].substring("--seed=".length()));
+            }
+            else if (args[i].startsWith("--mix=")) {
+                mix = parseMix(args[i].substring("--mix=".length()));
+            }
+            else {
+                throw new Exception(String.format("Invalid arguments! Unknown option %s", args[i]));
+            }
+        }
+        new ProgramGenerator(InstructionSet.MIPS, mix, seed).generate(new File(args[0]),
+                Long.parseLong(args[1]));
+    }
+
+    /**
+     * Get the default mnemonic mix, which roughly follows the instruction
+     * frequencies of compiled code. Mnemonics without a known frequency get a
+     * weight of 1 so every mnemonic is covered.
+     * 
+     * @param instructionSet The instruction set.
+     * @return The weight of each mnemonic.
+     */
+    public static Map<String, Integer> defaultMix(InstructionSet instructionSet) {
+        Map<String, Integer> known = new LinkedHashMap<>();
+        known.put("addi", 20);
+        known.put("lw", 16);
+        known.put("sw", 10);
+        known.put("move", 8);
+        known.put("li", 6);
+        known.put("beq", 6);
+        known.put("slti", 4);
+        known.put("ori", 3);
+        known.put("jal", 3);
+        known.put("jr", 2);
+        known.put("lui", 2);
+        known.put("mul", 2);
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        for (String name : instructionSet.getMnemonics()) {
+            mix.put(name, known.getOrDefault(name, 1));
+        }
+        return mix;
+    }
+
+    /**
+     * Parse a mnemonic mix given as name:weight pairs separated by commas.
+     * 
+     * @param spec The mix, e.g. addi:10,lw:5,beq:2.
+     * @return The weight of each mnemonic.
+     * @throws IllegalArgumentException When the mix can't be parsed.
+     */
+    public static Map<String, Integer> parseMix(String spec) {
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        for (String pair : spec.split(",")) {
+            int colon = pair.indexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException(
+                        String.format("Invalid mnemonic weight %s!", pair));
+            }
+            mix.put(pair.substring(0, colon).trim(),
+                    Integer.parseInt(pair.substring(colon + 1).trim()));
+        }
+        return mix;
+    }
+
+    /**
+     * Generate a source to a file.
+     * 
+     * @param outFile The file to write the source to.
+     * @param lines The number of lines to generate.
+     * @throws IOException When an error occurs during writing of the file.
+     */
+    public void generate(File outFile, long lines) throws IOException {
+        try (Writer writer = new BufferedWriter(new FileWriter(outFile), BUFFER_SIZE)) {
+            generate(writer, lines);
+        }
+    }
+
+    /**
+     * Generate a source. A label is defined every 16 lines, and branches and
+     * jumps target any of them.
+     * 
+     * @param out The writer to write the source to.
+     * @param lines The number of lines to generate.
+     * @throws IOException When an error occurs during writing.
+     */
+    public void generate(Writer out, long lines) throws IOException {
+        long numOfLabels = Math.max(1, lines / LABEL_EVERY);
+        StringBuilder line = new StringBuilder(64);
+        for (long i = 0; i < lines; i++) {
+            line.setLength(0);
+            if (i % LABEL_EVERY == 0 && i / LABEL_EVERY < numOfLabels) {
+                line.append('L').append(i / LABEL_EVERY);
+                // some labels are on a line of their own
+                if (_random.nextInt(4) == 0) {
+                    out.append(line.append(":\n"));
+                    continue;
+                }
+                line.append(_random.nextBoolean() ? ": " : " :");
+            }
+            int roll = _random.nextInt(100);
+            if (roll < 3) {
+                // blank line
+                out.append(line.append('\n'));
+                continue;
+            }
+            line.append(INDENTS[_random.nextInt(INDENTS.length)]);
+            if (roll < 8) {
+                out.append(line.append("# ").append(Long.toHexString(_random.nextLong()))
+                        .append('\n'));
+                continue;
+            }
+            appendInstruction(line, numOfLabels);
+            if (roll >= 92) {
+                line.append("    # ").append(i);
+            }
+            out.append(line.append('\n'));
+        }
+    }
+
+    /**
+     * Append a random instruction with operands that match its syntax.
+     * 
+     * @param line The line to append to.
+     * @param numOfLabels The number of labels that can be targeted.
+     * @throws IllegalArgumentException When the syntax of a mnemonic is not
+     *         known to the generator.
+     */
+    private void appendInstruction(StringBuilder line, long numOfLabels) {
+        int pick = _random.nextInt(_totalWeight);
+        int index = 0;
+        while (_cumulativeWeights[index] <= pick) {
+            index++;
+        }
+        line.append(_names[index]).append(_random.nextInt(8) == 0 ? "     " : " ");
+        switch (_syntax[index]) {
+            case InstructionSet.REG_REG_IMM:
+                appendRegister(line).append(", ");
+                appendRegister(line).append(", ")
+                        .append(_random.nextInt(_minImmediates[index], _maxImmediates[index] + 1));
+                break;
+            case InstructionSet.REG_OFFSET_BASE:
+                appendRegister(line).append(", ").append(_random.nextInt(64) * 4)
+                        .append(_random.nextInt(8) == 0 ? "  ($" : "($")
+                        .append(Main.RegistersEnum
+                                .getByNumber(BASE_REGISTERS[_random.nextInt(BASE_REGISTERS.length)])
+                                .getRegName().substring(1))
+                        .append(')');
+                break;
+            case InstructionSet.LABEL:
+                line.append('L').append(_random.nextLong(numOfLabels));
+                break;
+            case InstructionSet.REG:
+                appendRegister(line);
+                break;
+            case InstructionSet.REG_REG_LABEL:
+                appendRegister(line).append(", ");
+                appendRegister(line).append(", L").append(_random.nextLong(numOfLabels));
+                break;
+            case InstructionSet.REG_IMM:
+                appendRegister(line).append(", ");
+                if (_maxImmediates[index] != Integer.MAX_VALUE) {
+                    line.append(_random.nextInt(_minImmediates[index], _maxImmediates[index] + 1));
+                }
+                else if (_random.nextBoolean()) {
+                    line.append(_random.nextInt(-32768, 32768));
+                }
+                else {
+                    line.append("0x").append(Integer.toHexString(_random.nextInt()));
+                }
+                break;
+            case InstructionSet.REG_REG:
+                appendRegister(line).append(", ");
+                appendRegister(line);
+                break;
+            case InstructionSet.REG_REG_REG:
+                appendRegister(line).append(", ");
+                appendRegister(line).append(", ");
+                appendRegister(line);
+                break;
+            default:
+                throw new IllegalArgumentException(
+                        String.format("The syntax of %s is not known to the generator!",
+                                _names[index]));
+        }
+    }
+
+    /**
+     * Append a random register, mostly the commonly used ones and sometimes by
+     * number.
+     * 
+     * @param line The line to append to.
+     * @return The line.
+     */
+    private StringBuilder appendRegister(StringBuilder line) {
+        if (_random.nextInt(16) == 0) {
+            return line.append('$').append(_random.nextInt(32));
+        }
+        return line.append(Main.RegistersEnum
+                .getByNumber(COMMON_REGISTERS[_random.nextInt(COMMON_REGISTERS.length)])
+                .getRegName());
+    }
+}
@@ -0,0 +1,283 @@
+package main;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Assembles and runs many programs in one JVM. Every source is assembled the
+ * way Main does, then run on its own virtual thread, when the JVM has them,
+ * with its own {@link Interpreter} and {@link PagedMemory}, so no run can see
+ * another. A run is given a budget of instructions and of memory pages, and
+ * gives up its thread every slice of instructions, so a long run can't hold a
+ * carrier thread while others wait. At most the configured number of
+ * programs are held in memory at once.
+ */
+public class SimulationRunner {
+    private static final Logger LOGGER = Logger.getLogger(SimulationRunner.class.getName());
+    /** Most instructions a program runs by default. */
+    public static final long DEFAULT_MAX_INSTRUCTIONS = 10000000;
+    /** Most memory pages a program allocates by default, 1 MB. */
+    public static final int DEFAULT_MAX_PAGES = 256;
+    /** Instructions run between yields by default. */
+    public static final int DEFAULT_SLICE = 10000;
+
+    /**
+     * How a run ended.
+     */
+    public enum Status {
+        /** Returned from its entry point. */
+        HALTED,
+        /** Used up its instructions. */
+        TIMED_OUT,
+        /** Failed while running, or used up its pages. */
+        FAULTED,
+        /** Failed to assemble. */
+        INVALID
+    }
+
+    /**
+     * The outcome of running one source.
+     */
+    public static class Result {
+        private final BatchAssembler.Source _source;
+        private final Status _status;
+        private final long _instructions;
+        private final int _pages;
+        private final int[] _registers;
+        private final String _message;
+
+        /**
+         * Constructor that accepts the outcome.
+         * 
+         * @param source The source run.
+         * @param status How the run ended.
+         * @param instructions The number of instructions run.
+         * @param pages The number of memory pages allocated.
+         * @param registers The 32 registers the run ended with.
+         * @param message Why the run failed, or null.
+         */
+        Result(BatchAssembler.Source source, Status status, long instructions, int pages,
+                int[] registers, String message) {
+            _source = source;
+            _status = status;
+            _instructions = instructions;
+            _pages = pages;
+            _registers = registers;
+            _message = message;
+        }
+
+        /**
+         * Get the source run.
+         * 
+         * @return The source.
+         */
+        public BatchAssembler.Source getSource() {
+            return _source;
+        }
+
+        /**
+         * Get how the run ended.
+         * 
+         * @return The status.
+         */
+        public Status getStatus() {
+            return _status;
+        }
+
+        /**
+         * Get the number of instructions run.
+         * 
+         * @return The number of instructions.
+         */
+        public long getInstructions() {
+            return _instructions;
+        }
+
+        /**
+         * Get the number of memory pages allocated.
+         * 
+         * @return The number of pages.
+         */
+        public int getPages() {
+            return _pages;
+        }
+
+        /**
+         * Get a register the run ended with.
+         * 
+         * @param reg The register number, 0 to 31.
+         * @return The value, 0 if the source failed to assemble.
+         */
+        public int getRegister(int reg) {
+            return _registers[reg];
+        }
+
+        /**
+         * Get why the run failed.
+         * 
+         * @return The message, or null if it didn't.
+         */
+        public String getMessage() {
+            return _message;
+        }
+    }
+
+    private final Assembler _assembler;
+    private final int _maxJobs;
+    private final boolean _optimize;
+    private final boolean _jit;
+    private final long _maxInstructions;
+    private final int _maxPages;
+    private final int _slice;
+
+    /**
+     * Constructor that accepts the assembler, the concurrency cap and the
+     * budgets of every run.
+     * 
+     * @param assembler The assembler shared by every job.
+     * @param maxJobs The most programs held at once.
+     * @param optimize Whether to run the -O passes, and so run with delay
+     *        slots.
+     * @param jit Whether to translate the hot basic blocks of every run to
+     *        bytecode.
+     * @param maxInstructions The most instructions a program runs.
+     * @param maxPages The most memory pages a program allocates.
+     * @param slice The instructions run between yields.
+     */
+    public SimulationRunner(Assembler assembler, int maxJobs, boolean optimize, boolean jit,
+            long maxInstructions, int maxPages, int slice) {
+        if (maxJobs < 1) {
+            throw new IllegalArgumentException("The number of jobs must be at least 1!");
+        }
+        if (maxInstructions < 1 || maxPages < 1 || slice < 1) {
+            throw new IllegalArgumentException("The budgets and slice must be at least 1!");
+        }
+        _assembler = assembler;
+        _maxJobs = maxJobs;
+        _optimize = optimize;
+        _jit = jit;
+        _maxInstructions = maxInstructions;
+        _maxPages = maxPages;
+        _slice = slice;
+    }
+
+    /**
+     * Assemble and run every source, then log the totals.
+     * 
+     * @param sources The sources, as returned by BatchAssembler.collectSources.
+     * @return The results, in the order of the sources.
+     * @throws InterruptedException When interrupted while waiting for the runs.
+     */
+    public List<Result> run(List<BatchAssembler.Source> sources) throws InterruptedException {
+        final Semaphore permits = new Semaphore(_maxJobs);
+        List<Future<Result>> futures = new ArrayList<>(sources.size());
+        long start = System.nanoTime();
+        ExecutorService executor = BatchAssembler.newExecutor(_maxJobs);
+        try {
+            for (final BatchAssembler.Source source : sources) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return run(source);
+                    }
+                    finally {
+                        permits.release();
+                    }
+                }));
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        List<Result> results = new ArrayList<>(sources.size());
+        int[] statuses = new int[Status.values().length];
+        long instructions = 0;
+        for (Future<Result> future : futures) {
+            try {
+                Result result = future.get();
+                results.add(result);
+                statuses[result.getStatus().ordinal()]++;
+                instructions += result.getInstructions();
+            }
+            catch (ExecutionException ex) {
+                throw new IllegalStateException(ex.getCause());
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        StringBuilder counts = new StringBuilder();
+        for (Status status : Status.values()) {
+            counts.append(String.format(", %d %s", statuses[status.ordinal()],
+                    status.name().toLowerCase().replace('_', ' ')));
+        }
+        LOGGER.info(String.format(
+                "Ran %d programs%s, %d instructions in %.3f s (%.0f programs/min, %.1f MIPS)",
+                sources.size(), counts, instructions, seconds,
+                sources.size() * 60 / Math.max(seconds, 1e-9),
+                instructions / 1e6 / Math.max(seconds, 1e-9)));
+        return results;
+    }
+
+    /**
+     * Assemble and run a single source within the budgets.
+     * 
+     * @param source The source.
+     * @return The result.
+     * @throws InterruptedException When interrupted between slices.
+     */
+    private Result run(BatchAssembler.Source source) throws InterruptedException {
+        AssemblyContext context;
+        try {
+            context = _assembler.assemble(source.getFile().toFile());
+            if (_optimize) {
+                new InstructionScheduler().schedule(context);
+                new DelaySlotFiller().fill(context);
+            }
+        }
+        catch (IOException | IllegalArgumentException ex) {
+            LOGGER.log(Level.FINE, String.format("Failed to assemble %s: %s", source.getFile(),
+                    ex.getMessage()));
+            return new Result(source, Status.INVALID, 0, 0, new int[32], ex.getMessage());
+        }
+
+        PagedMemory memory = new PagedMemory();
+        memory.setMaxPages(_maxPages);
+        Interpreter interpreter = new Interpreter(context.getWords(), memory);
+        interpreter.setDelaySlots(_optimize);
+        interpreter.setCompileThreshold(_jit ? Interpreter.DEFAULT_COMPILE_THRESHOLD : 0);
+        interpreter.reset(0);
+        Status status = Status.TIMED_OUT;
+        String message = null;
+        try {
+            while (interpreter.getExecuted() < _maxInstructions) {
+                interpreter.run(Math.min(_slice, _maxInstructions - interpreter.getExecuted()));
+                if (interpreter.isHalted()) {
+                    status = Status.HALTED;
+                    break;
+                }
+                // let the other runs on this carrier thread go on
+                Thread.yield();
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        }
+        catch (IllegalStateException ex) {
+            status = Status.FAULTED;
+            message = ex.getMessage();
+        }
+        int[] registers = new int[32];
+        for (int reg = 0; reg < registers.length; reg++) {
+            registers[reg] = interpreter.getRegister(reg);
+        }
+        return new Result(source, status, interpreter.getExecuted(), memory.getPages(), registers,
+                message);
+    }
+}
@@ -0,0 +1,109 @@
+package main;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Check of the instruction budget of {@link SimulationRunner}. A source is
+ * run once to count its instructions, then again with a budget of exactly
+ * that many, which must halt, and of one fewer, which must time out, with
+ * slices of 1 instruction, of the whole budget and the default, as assembled
+ * and with -O, interpreted and tiered. The {@link Interpreter} is also given
+ * an exact budget on its own with every block translated, so the run ends on
+ * a translated block returning to the halt address.
+ */
+public class SimulationRunnerCheck {
+    /**
+     * Main method. Accepts the source file to check, sample.txt if none is
+     * given.
+     * 
+     * @param args The command line arguments.
+     * @throws Exception When interrupted.
+     * @throws IllegalStateException When a run doesn't end as expected.
+     */
+    public static void main(String[] args) throws Exception {
+        Logger.getLogger(Assembler.class.getName()).setLevel(Level.WARNING);
+        Logger.getLogger(SimulationRunner.class.getName()).setLevel(Level.WARNING);
+        Path file = Paths.get(args.length > 0 ? args[0] : "sample.txt");
+        List<BatchAssembler.Source> sources = Arrays
+                .asList(new BatchAssembler.Source(file, file.getFileName()));
+        Assembler assembler = new Assembler();
+        for (boolean optimize : new boolean[] { false, true }) {
+            for (boolean jit : new boolean[] { false, true }) {
+                SimulationRunner.Result full = run(assembler, sources, optimize, jit,
+                        SimulationRunner.DEFAULT_MAX_INSTRUCTIONS, SimulationRunner.DEFAULT_SLICE);
+                expect(full, SimulationRunner.Status.HALTED, full.getInstructions());
+                long budget = full.getInstructions();
+                for (long slice : new long[] { 1, budget, SimulationRunner.DEFAULT_SLICE }) {
+                    expect(run(assembler, sources, optimize, jit, budget, slice),
+                            SimulationRunner.Status.HALTED, budget);
+                    if (budget > 1) {
+                        expect(run(assembler, sources, optimize, jit, budget - 1, slice),
+                                SimulationRunner.Status.TIMED_OUT, budget - 1);
+                    }
+                }
+                System.out.println(String.format("%s%s%s OK, halts in a budget of %d", file,
+                        optimize ? " -O" : "", jit ? " --jit" : "", budget));
+            }
+
+            AssemblyContext context = assembler.assemble(file.toFile());
+            if (optimize) {
+                new InstructionScheduler().schedule(context);
+                new DelaySlotFiller().fill(context);
+            }
+            Interpreter interpreter = new Interpreter(context.getWords(), new PagedMemory());
+            interpreter.setDelaySlots(optimize);
+            interpreter.setCompileThreshold(1);
+            long budget = interpreter.run(SimulationRunner.DEFAULT_MAX_INSTRUCTIONS);
+            // the blocks translated in the first run are kept
+            interpreter.reset(0);
+            interpreter.run(budget);
+            if (!interpreter.isHalted() || interpreter.getCompiledBlocks() == 0) {
+                throw new IllegalStateException(String.format(
+                        "Expected a halt after %d instructions with %d blocks translated!",
+                        budget, interpreter.getCompiledBlocks()));
+            }
+        }
+    }
+
+    /**
+     * Run the source within a budget.
+     * 
+     * @param assembler The assembler.
+     * @param sources The source.
+     * @param optimize Whether to run the -O passes.
+     * @param jit Whether to translate the hot blocks.
+     * @param budget The most instructions.
+     * @param slice The instructions run between yields.
+     * @return The result.
+     * @throws InterruptedException When interrupted.
+     */
+    private static SimulationRunner.Result run(Assembler assembler,
+            List<BatchAssembler.Source> sources, boolean optimize, boolean jit, long budget,
+            long slice) throws InterruptedException {
+        return new SimulationRunner(assembler, 1, optimize, jit, budget,
+                SimulationRunner.DEFAULT_MAX_PAGES, (int) slice).run(sources).get(0);
+    }
+
+    /**
+     * Check how a run ended.
+     * 
+     * @param result The result.
+     * @param status The status expected.
+     * @param instructions The instructions expected to have run.
+     * @throws IllegalStateException When the run ended another way.
+     */
+    private static void expect(SimulationRunner.Result result, SimulationRunner.Status status,
+            long instructions) {
+        if (result.getStatus() != status || result.getInstructions() != instructions) {
+            throw new IllegalStateException(String.format(
+                    "Expected %s after %d instructions, got %s after %d (%s)!", status,
+                    instructions, result.getStatus(), result.getInstructions(),
+                    result.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package main;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Table of label addresses built for millions of labels. Named labels are
+ * kept in an open addressing table of 64 bit hashes and int addresses, with
+ * the label bytes copied into a single arena, so defining or finding a label
+ * allocates nothing and boxes nothing. Local labels, which are numbers such as
+ * 1: that can be defined any number of times, are kept as a sorted list of
+ * addresses per number and referenced as 1f for the next definition or 1b for
+ * the previous one.
+ */
+public final class SymbolTable {
+    /** Returned when a label is not defined. */
+    public static final int NOT_FOUND = Integer.MIN_VALUE;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final int MAX_LOCAL_LABEL = 1 << 16;
+
+    private long[] _hashes = new long[64];
+    private int[] _addresses = new int[64];
+    private int[] _nameStarts = new int[64];
+    private int[] _nameLengths = new int[64];
+    private byte[] _arena = new byte[1024];
+    private int _arenaSize = 0;
+    private int _size = 0;
+    private int[][] _localAddresses = new int[10][];
+    private int[] _localCounts = new int[10];
+
+    /**
+     * Define a label.
+     * 
+     * @param bytes The bytes holding the label.
+     * @param start The position of the first byte.
+     * @param end The position after the last byte.
+     * @param address The address of the label.
+     * @throws IllegalArgumentException When a named label is already defined.
+     */
+    public void define(byte[] bytes, int start, int end, int address) {
+        int local = parseLocal(bytes, start, end);
+        if (local >= 0) {
+            defineLocal(local, address);
+            return;
+        }
+        if ((_size + 1) * 2 > _hashes.length) {
+            grow();
+        }
+        long hash = hash(bytes, start, end);
+        int mask = _hashes.length - 1;
+        int slot = (int) hash & mask;
+        while (_hashes[slot] != 0) {
+            if (_hashes[slot] == hash && nameEquals(slot, bytes, start, end)) {
+                throw new IllegalArgumentException(String.format(
+                        "The label %s is defined more than once!",
+                        new String(bytes, start, end - start, StandardCharsets.ISO_8859_1)));
+            }
+            slot = (slot + 1) & mask;
+        }
+        int length = end - start;
+        if (_arenaSize + length > _arena.length) {
+            _arena = Arrays.copyOf(_arena, Math.max(_arena.length * 2, _arenaSize + length));
+        }
+        System.arraycopy(bytes, start, _arena, _arenaSize, length);
+        _hashes[slot] = hash;
+        _addresses[slot] = address;
+        _nameStarts[slot] = _arenaSize;
+        _nameLengths[slot] = length;
+        _arenaSize += length;
+        _size++;
+    }
+
+    /**
+     * Define a label.
+     * 
+     * @param label The label.
+     * @param address The address of the label.
+     * @throws IllegalArgumentException When a named label is already defined.
+     */
+    public void define(String label, int address) {
+        byte[] bytes = label.getBytes(StandardCharsets.ISO_8859_1);
+        define(bytes, 0, bytes.length, address);
+    }
+
+    /**
+     * Find the address of a label reference.
+     * 
+     * @param bytes The bytes holding the reference.
+     * @param start The position of the first byte.
+     * @param end The position after the last byte.
+     * @param address The address of the referencing instruction, which local
+     *        references are resolved from.
+     * @return The address of the label, or NOT_FOUND.
+     */
+    public int find(byte[] bytes, int start, int end, int address) {
+        int length = end - start;
+        if (length >= 2 && (bytes[end - 1] == 'f' || bytes[end - 1] == 'b')) {
+            int local = parseLocal(bytes, start, end - 1);
+            if (local >= 0) {
+                return findLocal(local, address, bytes[end - 1] == 'f');
+            }
+        }
+        long hash = hash(bytes, start, end);
+        int mask = _hashes.length - 1;
+        int slot = (int) hash & mask;
+        while (_hashes[slot] != 0) {
+            if (_hashes[slot] == hash && nameEquals(slot, bytes, start, end)) {
+                return _addresses[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Find the address of a label reference.
+     * 
+     * @param label The reference.
+     * @param address The address of the referencing instruction, which local
+     *        references are resolved from.
+     * @return The address of the label, or NOT_FOUND.
+     */
+    public int find(String label, int address) {
+        byte[] bytes = label.getBytes(StandardCharsets.ISO_8859_1);
+        return find(bytes, 0, bytes.length, address);
+    }
+
+    /**
+     * Remove every label, keeping the capacity.
+     */
+    public void clear() {
+        Arrays.fill(_hashes, 0);
+        Arrays.fill(_localCounts, 0);
+        _arenaSize = 0;
+        _size = 0;
+    }
+
+    /**
+     * Move every label, e.g. after an optimization pass inserted or moved
+     * words. The mapping must keep addresses in order.
+     * 
+     * @param addresses The mapping from old to new addresses.
+     */
+    public void relocate(IntUnaryOperator addresses) {
+        for (int slot = 0; slot < _hashes.length; slot++) {
+            if (_hashes[slot] != 0) {
+                _addresses[slot] = addresses.applyAsInt(_addresses[slot]);
+            }
+        }
+        for (int local = 0; local < _localAddresses.length; local++) {
+            for (int i = 0; i < _localCounts[local]; i++) {
+                _localAddresses[local][i] = addresses.applyAsInt(_localAddresses[local][i]);
+            }
+        }
+    }
+
+    /**
+     * Get the number of named labels.
+     * 
+     * @return The number of named labels.
+     */
+    public int size() {
+        return _size;
+    }
+
+    /**
+     * Copy the named labels into a map, for writing symbol tables and other
+     * uses off the hot path.
+     * 
+     * @return The labels and their addresses.
+     */
+    public Map<String, Integer> toMap() {
+        Map<String, Integer> map = new LinkedHashMap<>();
+        for (int slot = 0; slot < _hashes.length; slot++) {
+            if (_hashes[slot] != 0) {
+                map.put(new String(_arena, _nameStarts[slot], _nameLengths[slot],
+                        StandardCharsets.ISO_8859_1), _addresses[slot]);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Record a definition of a local label. Definitions are made in address
+     * order, so the list stays sorted.
+     * 
+     * @param local The number of the local label.
+     * @param address The address of the definition.
+     */
+    private void defineLocal(int local, int address) {
+        if (local >= _localAddresses.length) {
+            int length = Math.max(local + 1, _localAddresses.length * 2);
+            _localAddresses = Arrays.copyOf(_localAddresses, length);
+            _localCounts = Arrays.copyOf(_localCounts, length);
+        }
+        int[] addresses = _localAddresses[local];
+        int count = _localCounts[local];
+        if (addresses == null) {
+            addresses = new int[8];
+        }
+        else if (count == addresses.length) {
+            addresses = Arrays.copyOf(addresses, count * 2);
+        }
+        addresses[count] = address;
+        _localAddresses[local] = addresses;
+        _localCounts[local] = count + 1;
+    }
+
+    /**
+     * Find the nearest definition of a local label.
+     * 
+     * @param local The number of the local label.
+     * @param address The address of the reference.
+     * @param forward True for the first definition after the address, false
+     *        for the last definition at or before it.
+     * @return The address of the definition, or NOT_FOUND.
+     */
+    private int findLocal(int local, int address, boolean forward) {
+        if (local >= _localAddresses.length || _localCounts[local] == 0) {
+            return NOT_FOUND;
+        }
+        int[] addresses = _localAddresses[local];
+        // index of the first definition after the address
+        int low = 0;
+        int high = _localCounts[local];
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (addresses[mid] <= address) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        if (forward) {
+            return low < _localCounts[local] ? addresses[low] : NOT_FOUND;
+        }
+        return low > 0 ? addresses[low - 1] : NOT_FOUND;
+    }
+
+    /**
+     * Parse the number of a local label.
+     * 
+     * @param bytes The bytes holding the label.
+     * @param start The position of the first byte.
+     * @param end The position after the last byte.
+     * @return The number, or -1 if the label is not all digits.
+     * @throws IllegalArgumentException When the number is too large.
+     */
+    private static int parseLocal(byte[] bytes, int start, int end) {
+        if (start == end) {
+            return -1;
+        }
+        int number = 0;
+        for (int i = start; i < end; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            number = number * 10 + digit;
+            if (number >= MAX_LOCAL_LABEL) {
+                throw new IllegalArgumentException(String.format(
+                        "The local label %s is too large!",
+                        new String(bytes, start, end - start, StandardCharsets.ISO_8859_1)));
+            }
+        }
+        return number;
+    }
+
+    /**
+     * Double the capacity of the table, placing every label again by its
+     * stored hash.
+     */
+    private void grow() {
+        long[] hashes = _hashes;
+        int[] addresses = _addresses;
+        int[] nameStarts = _nameStarts;
+        int[] nameLengths = _nameLengths;
+        int capacity = hashes.length * 2;
+        _hashes = new long[capacity];
+        _addresses = new int[capacity];
+        _nameStarts = new int[capacity];
+        _nameLengths = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < hashes.length; i++) {
+            if (hashes[i] != 0) {
+                int slot = (int) hashes[i] & mask;
+                while (_hashes[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                _hashes[slot] = hashes[i];
+                _addresses[slot] = addresses[i];
+                _nameStarts[slot] = nameStarts[i];
+                _nameLengths[slot] = nameLengths[i];
+            }
+        }
+    }
+
+    /**
+     * Compare the name in a slot with a label.
+     * 
+     * @param slot The slot.
+     * @param bytes The bytes holding the label.
+     * @param start The position of the first byte.
+     * @param end The position after the last byte.
+     * @return True if the names are the same.
+     */
+    private boolean nameEquals(int slot, byte[] bytes, int start, int end) {
+        int nameStart = _nameStarts[slot];
+        return Arrays.equals(_arena, nameStart, nameStart + _nameLengths[slot], bytes, start, end);
+    }
+
+    /**
+     * Hash a label with 64 bit FNV-1a, mixed so the low bits used for the
+     * slot depend on every byte. The hash is never 0, which marks an empty
+     * slot.
+     * 
+     * @param bytes The bytes holding the label.
+     * @param start The position of the first byte.
+     * @param end The position after the last byte.
+     * @return The hash.
+     */
+    private static long hash(byte[] bytes, int start, int end) {
+        long hash = FNV_OFFSET;
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ (bytes[i] & 0xff)) * FNV_PRIME;
+        }
+        hash ^= hash >>> 32;
+        return hash == 0 ? 1 : hash;
+    }
+}